@@ -0,0 +1,68 @@
+package griddiagrams;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size set of small integers stored as bits, which also keeps track of how many bits are set.
+ * Unlike {@link java.util.BitSet} it can find the nth set bit, so a uniformly random member can be chosen without a separate list.
+ */
+class CountingBitSet {
+    private long[] words = new long[0];
+    private int cardinality;// The number of set bits
+
+    /**
+     * Empties the set and makes room for the indices 0 to size-1.
+     */
+    void clear(int size) {
+        int wordsNeeded = (size + 63) >>> 6;
+        if (words.length < wordsNeeded) {
+            words = new long[Math.max(wordsNeeded, 2 * words.length)];
+        } else {
+            Arrays.fill(words, 0);
+        }
+        cardinality = 0;
+    }
+
+    void set(int index, boolean value) {
+        long mask = 1L << index;
+        int word = index >>> 6;
+        if (((words[word] & mask) != 0) != value) {
+            words[word] ^= mask;
+            cardinality += value ? 1 : -1;
+        }
+    }
+
+    boolean get(int index) {
+        return (words[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * @return The number of set bits. This takes O(1) time.
+     */
+    int cardinality() {
+        return cardinality;
+    }
+
+    /**
+     * Finds the nth set bit (counting from 0) by skipping whole words with {@link Long#bitCount(long)}, which takes O(size/64) time.
+     *
+     * @param n Must be 0 <= n < {@link #cardinality()}.
+     * @return The index of the nth set bit.
+     */
+    int nthSetBit(int n) {
+        if (n < 0 || n >= cardinality) {
+            throw new IllegalArgumentException("Only " + cardinality + " bits are set, so there is no set bit number " + n);
+        }
+        for (int w = 0; ; w++) {
+            int count = Long.bitCount(words[w]);
+            if (n < count) {
+                long word = words[w];
+                for (int k = 0; k < n; k++) {
+                    word &= word - 1;// Clears the lowest set bit
+                }
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+            n -= count;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package griddiagrams;
+
+/**
+ * A binary indexed tree over the integers 0..n-1 supporting point updates and range sums in O(log n).
+ */
+class FenwickTree {
+
+    private final int[] tree;// tree[i] holds the sum of a range of entries ending at index i-1 (1-indexed storage)
+
+    /**
+     * @param n The number of entries. All entries start at 0.
+     */
+    FenwickTree(int n) {
+        tree = new int[n + 1];
+    }
+
+    /**
+     * @param index The entry to change.
+     * @param delta The amount to add to the entry.
+     */
+    void add(int index, int delta) {
+        for (int i = index + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * @return The sum of the entries with indices in [0, end).
+     */
+    int prefixSum(int end) {
+        int sum = 0;
+        for (int i = end; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    /**
+     * @return The sum of the entries with indices in [start, end). This is 0 if end <= start.
+     */
+    int rangeSum(int start, int end) {
+        if (end <= start) {
+            return 0;
+        }
+        return prefixSum(end) - prefixSum(start);
+    }
+}
@@ -4,7 +4,7 @@ import griddiagrams.markovchain.GridMove;
 
 import java.io.*;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Map;
 
 /**
@@ -27,20 +27,58 @@ public class GridDiagram implements Serializable {
     public static final int MOVETYPE_STABILIZATION = 1;
     public static final int MOVETYPE_DESTABILIZATION = 2;
     public static final int MOVETYPE_COMMUTATION = 0;
+    public static final int MOVETYPE_TRANSLATION = 3;
 
     //Move subtypes for commutation and destabilization
     public static final int MOVE_SUBTYPE_COLUMN = 1;
     public static final int MOVE_SUBTYPE_ROW = 2;
 
-    /* The actual grid is stored as a list of rows and a list of columns. Only one of these lists is necessary,
-     *  but using both cuts down on a lot of unnecessary computations.
+    /* The actual grid is stored as four primitive arrays, two indexed by column and two indexed by row.
+     *  Only one pair is necessary, but using both cuts down on a lot of unnecessary computations.
+     *  The arrays may be longer than the grid (spare capacity), so only the first size entries are meaningful.
+     *  The arrays are stored relative to a movable origin so that translations are O(1): logical column j is
+     *  physical column (j + colOffset) % size, and a physical row r is logical row (r - rowOffset) mod size.
      */
-    private ArrayList<Row> rows;
-    private ArrayList<Column> cols;
+    private int[] xCol;// The ith entry is the row holding the X in the ith column.
+    private int[] oCol;// The ith entry is the row holding the O in the ith column.
+    private int[] xRow;// The ith entry is the column holding the X in the ith row.
+    private int[] oRow;// The ith entry is the column holding the O in the ith row.
+    private int rowOffset;// The physical row that is logical row 0.
+    private int colOffset;// The physical column that is logical column 0.
+    /* When order-statistic storage is enabled the four arrays above are null and the grid lives in this tree instead.
+     *  Inserting or removing rows/columns is then O(log n), but every index lookup is O(log n) as well.
+     */
+    private OrderStatisticGrid tree;
     //The size of the grid is stored and updated as necessary.
     private int size;
+    /* The projected writhe is stored and updated by every local move so that it rarely has to be recalculated from scratch.
+     *  Translations and invalid moves only mark it as out of date, and it is recomputed the next time it is needed.
+     */
+    private int writhe;
+    private boolean writheIsCurrent;
+    /* A Zobrist-style hash: the XOR of a random key for every (column, row, X or O) entry of the grid.
+     *  Commutations update it in O(1). Moves that renumber rows or columns only mark it as out of date,
+     *  and it is recomputed the next time it is needed.
+     */
+    private long hash;
+    private boolean hashIsCurrent;
+    /* Which commutations and destabilizations are currently valid, indexed by position in the arrays rather than by row/column,
+     *  so that translations leave most of them alone. They are built the first time they are queried and then kept up to date
+     *  locally by commutations and unit translations. Other moves renumber rows and columns, so they mark them as out of date.
+     */
+    private transient CountingBitSet validRowCommutations;
+    private transient CountingBitSet validColCommutations;
+    private transient CountingBitSet validRowDestabilizations;
+    private transient CountingBitSet validColDestabilizations;
+    private transient boolean validityIsCurrent;
 
 
+    /**
+     * Used by {@link #copy()}, which allocates the arrays itself.
+     */
+    private GridDiagram() {
+    }
+
     /**
      * Takes indices of X's and O's in both rows and columns to create a GridDiagram.
      *
@@ -50,13 +88,14 @@ public class GridDiagram implements Serializable {
      * @param initORow The ith entry corresponds to which column holds the O in the ith row.
      */
     public GridDiagram(ArrayList<Integer> initXCol, ArrayList<Integer> initOCol, ArrayList<Integer> initXRow, ArrayList<Integer> initORow) {
-        rows = new ArrayList<>();
-        cols = new ArrayList<>();
-        for (int i = 0; i < initXCol.size(); i++) {
-            cols.add(new Column(initXCol.get(i), initOCol.get(i)));
-            rows.add(new Row(initXRow.get(i), initORow.get(i)));
-        }
         this.size = initXCol.size();
+        allocate(capacityFor(size));
+        for (int i = 0; i < size; i++) {
+            xCol[i] = initXCol.get(i);
+            oCol[i] = initOCol.get(i);
+            xRow[i] = initXRow.get(i);
+            oRow[i] = initORow.get(i);
+        }
     }
 
     /**
@@ -66,19 +105,14 @@ public class GridDiagram implements Serializable {
      * @param initOCol The ith entry corresponds to which row holds the O in the ith column.
      */
     public GridDiagram(int[] initXCol, int[] initOCol) {
-        int[] initXRow = new int[initXCol.length];
-        int[] initORow = new int[initOCol.length];
-        for (int i = 0; i < initXCol.length; i++) {
-            initXRow[initXCol[i]] = i;
-            initORow[initOCol[i]] = i;
-        }
-        rows = new ArrayList<>();
-        cols = new ArrayList<>();
-        for (int i = 0; i < initXCol.length; i++) {
-            cols.add(new Column(initXCol[i], initOCol[i]));
-            rows.add(new Row(initXRow[i], initORow[i]));
-        }
         this.size = initXCol.length;
+        allocate(capacityFor(size));
+        System.arraycopy(initXCol, 0, xCol, 0, size);
+        System.arraycopy(initOCol, 0, oCol, 0, size);
+        for (int i = 0; i < size; i++) {
+            xRow[initXCol[i]] = i;
+            oRow[initOCol[i]] = i;
+        }
     }
 
     /**
@@ -86,9 +120,13 @@ public class GridDiagram implements Serializable {
      */
     public GridDiagram(String linkname) {
         GridDiagram fromRes = getGridDiagramFromResource(linkname);
-        this.rows = fromRes.rows;
-        this.cols = fromRes.cols;
+        this.xCol = fromRes.xCol;
+        this.oCol = fromRes.oCol;
+        this.xRow = fromRes.xRow;
+        this.oRow = fromRes.oRow;
         this.size = fromRes.size;
+        this.writhe = fromRes.writhe;
+        this.writheIsCurrent = fromRes.writheIsCurrent;
     }
 
     /**
@@ -137,48 +175,121 @@ public class GridDiagram implements Serializable {
      * @return A new GridDiagram object that is a (deep) copy of this one.
      */
     public GridDiagram copy() {
-        //This method uses the technique of serializing and deserializing from http://javatechniques.com/blog/faster-deep-copies-of-java-objects/
-        GridDiagram newGridDiagram = null;
-        try {
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            ObjectOutputStream out = new ObjectOutputStream(bos);
-            out.writeObject(this);
-            out.flush();
-            out.close();
-            ObjectInputStream in = new ObjectInputStream(
-                    new ByteArrayInputStream(bos.toByteArray()));
-            newGridDiagram = (GridDiagram) in.readObject();
-        } catch (IOException | ClassNotFoundException e) {
-            e.printStackTrace();
+        GridDiagram newGridDiagram = new GridDiagram();
+        newGridDiagram.allocate(capacityFor(size));
+        return copyInto(newGridDiagram);
+    }
+
+    /**
+     * Overwrites the given grid diagram with a (deep) copy of this one.
+     * The target's arrays, or its order-statistic storage if both grids use it, are reused whenever they are large enough,
+     * so repeatedly copying into the same target does not allocate.
+     *
+     * @param target The GridDiagram to overwrite. It shares no state with this one afterwards.
+     * @return The target, which is now equal to this grid diagram.
+     */
+    public GridDiagram copyInto(GridDiagram target) {
+        if (target != this) {
+            target.size = size;
+            target.writhe = writhe;
+            target.writheIsCurrent = writheIsCurrent;
+            target.hash = hash;
+            target.hashIsCurrent = hashIsCurrent;
+            target.validityIsCurrent = false;
+            if (tree == null) {
+                if (target.xCol == null || target.xCol.length < size) {
+                    target.allocate(capacityFor(size));
+                }
+                System.arraycopy(xCol, 0, target.xCol, 0, size);
+                System.arraycopy(oCol, 0, target.oCol, 0, size);
+                System.arraycopy(xRow, 0, target.xRow, 0, size);
+                System.arraycopy(oRow, 0, target.oRow, 0, size);
+                target.rowOffset = rowOffset;
+                target.colOffset = colOffset;
+                target.tree = null;
+            } else {
+                if (target.tree == null) {
+                    target.tree = new OrderStatisticGrid();
+                    target.xCol = null;
+                    target.oCol = null;
+                    target.xRow = null;
+                    target.oRow = null;
+                }
+                tree.copyInto(target.tree);
+                target.rowOffset = 0;
+                target.colOffset = 0;
+            }
         }
-        return newGridDiagram;
+        return target;
+    }
+
+    /**
+     * Chooses how the grid is stored.
+     * By default it is stored in arrays, where looking up an entry is O(1) but stabilizations and destabilizations are O(n).
+     * Order-statistic storage makes stabilizations and destabilizations O(log n) at the cost of O(log n) lookups, which pays off for very large grids.
+     * Switching takes O(n) time.
+     *
+     * @param enabled True to use order-statistic storage, false to use arrays.
+     */
+    public void setOrderStatisticStorage(boolean enabled) {
+        if (enabled && tree == null) {
+            normalizeOffsets();
+            tree = new OrderStatisticGrid(xCol, oCol, size);
+            xCol = null;
+            oCol = null;
+            xRow = null;
+            oRow = null;
+        } else if (!enabled && tree != null) {
+            allocate(capacityFor(size));
+            tree.toColumnArrays(xCol, oCol);
+            tree = null;
+            fillRowsFromColumns();
+        }
+    }
+
+    /**
+     * @return True if the grid is held in order-statistic storage. See {@link #setOrderStatisticStorage(boolean)}.
+     */
+    public boolean isOrderStatisticStorage() {
+        return tree != null;
     }
 
     /**
      * Turns this grid diagram into the connect sum of it and another then returns itself
      */
     public GridDiagram concatenate(GridDiagram g2) {
+        hashIsCurrent = false;
+        validityIsCurrent = false;
+        if (tree != null) {// This is rare enough that it is simply done with arrays
+            setOrderStatisticStorage(false);
+            concatenate(g2);
+            setOrderStatisticStorage(true);
+            return this;
+        }
+        normalizeOffsets();
         //Get the coordinates where the grids' vertices will connect
-        int xrow = getCol(size - 1).getXRow();
-        int orow = getCol(size - 1).getORow();
-        int xcol = g2.getRow(0).getXCol();
-        int ocol = g2.getRow(0).getOCol();
-        //we remove the last column of this grid as it is deleted and its entries are merged into the connecting vertices
-        cols.remove(size - 1);
+        int xrow = xCol[size - 1];
+        int orow = oCol[size - 1];
+        int xcol = g2.xRow(0);
+        int ocol = g2.oRow(0);
+        int newSize = size + g2.getSize() - 1;
+        ensureCapacity(newSize);
+        //we overwrite the last column of this grid as it is deleted and its entries are merged into the connecting vertices
         for (int i = 0; i < g2.getSize(); i++) {
-            Column g2Col = g2.getCol(i);
-            Row g2Row = g2.getRow(i);
-            cols.add(new Column(g2Col.getXRow() + size - 1, g2Col.getORow() + size - 1));
+            xCol[size - 1 + i] = g2.xCol(i) + size - 1;
+            oCol[size - 1 + i] = g2.oCol(i) + size - 1;
             if (i > 0) {//we don't want to add the first row to the new grid as its entries are merged into the connecting vertices
-                rows.add(new Row(g2Row.getXCol() + size - 1, g2Col.getORow() + size - 1));
+                xRow[size - 1 + i] = g2.xRow(i) + size - 1;
+                oRow[size - 1 + i] = g2.oRow(i) + size - 1;
             }
         }
         //Now to merge the grids properly
-        getRow(xrow).setXCol(xcol + size - 1);
-        getRow(orow).setOCol(ocol + size - 1);
-        getCol(xcol + size - 1).setXRow(xrow);
-        getCol(ocol + size - 1).setORow(orow);
-        size = size + g2.getSize() - 1;
+        xRow[xrow] = xcol + size - 1;
+        oRow[orow] = ocol + size - 1;
+        xCol[xcol + size - 1] = xrow;
+        oCol[ocol + size - 1] = orow;
+        size = newSize;
+        writheIsCurrent = false;
         return this;
     }
 
@@ -187,14 +298,24 @@ public class GridDiagram implements Serializable {
      * Converts a grid diagram to its mirror image.then returns itself..
      */
     public GridDiagram mirror() {
-        ArrayList<Row> newRows = new ArrayList<>();
-        ArrayList<Column> newCol = new ArrayList<>();
+        hashIsCurrent = false;
+        validityIsCurrent = false;
+        if (tree != null) {// This is rare enough that it is simply done with arrays
+            setOrderStatisticStorage(false);
+            mirror();
+            setOrderStatisticStorage(true);
+            return this;
+        }
+        normalizeOffsets();
+        for (int i = 0, j = size - 1; i < j; i++, j--) {
+            swap(xCol, i, j);
+            swap(oCol, i, j);
+        }
         for (int i = 0; i < size; i++) {
-            newCol.add(getCol(size - 1 - i));
-            newRows.add(new Row(size - getRow(i).getXCol() - 1, size - getRow(i).getOCol() - 1));
+            xRow[i] = size - xRow[i] - 1;
+            oRow[i] = size - oRow[i] - 1;
         }
-        cols = newCol;
-        rows = newRows;
+        writhe = -writhe;// Every crossing changes sign in the mirror image
         return this;
     }
 
@@ -208,28 +329,17 @@ public class GridDiagram implements Serializable {
     }
 
     /**
-     * @param i the column to return, counting from the left starting at 0
-     * @return a Column object representing column i
-     */
-    private Column getCol(int i) {
-        return cols.get(i);
-    }
-
-    /**
-     * @param i the row to return, counting from the top starting at 0
-     * @return a Row object representing row i
+     * This value is kept up to date by commutations, stabilizations and destabilizations, so unlike {@link #calcWrithe()} it usually does not need to look at the whole grid.
+     * After a translation it is recalculated once, in O(n log n) time.
+     *
+     * @return The projected writhe of this grid diagram.
      */
-    public Row getRow(int i) {
-        return rows.get(i);
-    }
-
-
-    private ArrayList<Row> getRows() {
-        return rows;
-    }
-
-    private ArrayList<Column> getCols() {
-        return cols;
+    public int getWrithe() {
+        if (!writheIsCurrent) {
+            writhe = calcWritheAndCrossings()[0];
+            writheIsCurrent = true;
+        }
+        return writhe;
     }
 
     /**
@@ -249,8 +359,8 @@ public class GridDiagram implements Serializable {
     public String toString() {
         StringBuilder str = new StringBuilder(size * (size + 1));
         for (int i = 0; i < size; i++) {
-            int xloc = rows.get(i).getXCol();
-            int oloc = rows.get(i).getOCol();
+            int xloc = xRow(i);
+            int oloc = oRow(i);
             str.append('\n');
             for (int j = 0; j < size; j++) {
                 if (j == xloc) {
@@ -272,12 +382,35 @@ public class GridDiagram implements Serializable {
      * @param rownumber The row to be commuted.
      */
     public void commuteRow(int rownumber) {
+        boolean isValid = isCommuteRowValid(rownumber);
+        if (isValid) {
+            writhe += commuteDeltaWrithe(rownumber, MOVE_SUBTYPE_ROW);
+        }
         int nextrow = (rownumber + 1) % size;
-        Collections.swap(rows, rownumber, nextrow);
-        cols.get(rows.get(rownumber).getXCol()).setXRow(rownumber);
-        cols.get(rows.get(rownumber).getOCol()).setORow(rownumber);
-        cols.get(rows.get(nextrow).getXCol()).setXRow(nextrow);
-        cols.get(rows.get(nextrow).getOCol()).setORow(nextrow);
+        if (hashIsCurrent) {
+            hash ^= rowEntryKeys(rownumber) ^ rowEntryKeys(nextrow);
+        }
+        if (tree != null) {
+            tree.swapRows(rownumber, nextrow);
+        } else {
+            int thisPhysical = physicalRow(rownumber);
+            int nextPhysical = physicalRow(nextrow);
+            swap(xRow, thisPhysical, nextPhysical);
+            swap(oRow, thisPhysical, nextPhysical);
+            xCol[xRow[thisPhysical]] = thisPhysical;
+            oCol[oRow[thisPhysical]] = thisPhysical;
+            xCol[xRow[nextPhysical]] = nextPhysical;
+            oCol[oRow[nextPhysical]] = nextPhysical;
+        }
+        if (hashIsCurrent) {
+            hash ^= rowEntryKeys(rownumber) ^ rowEntryKeys(nextrow);
+        }
+        if (validityIsCurrent) {
+            updateValidityOfRows(rownumber, nextrow);
+        }
+        if (!isValid) {// deltaWrithe assumes the rows were not interleaved
+            writheIsCurrent = false;
+        }
     }
 
     /**
@@ -286,12 +419,35 @@ public class GridDiagram implements Serializable {
      * @param colnumber The column to be commuted.
      */
     public void commuteCol(int colnumber) {
+        boolean isValid = isCommuteColValid(colnumber);
+        if (isValid) {
+            writhe += commuteDeltaWrithe(colnumber, MOVE_SUBTYPE_COLUMN);
+        }
         int nextcol = (colnumber + 1) % size;
-        Collections.swap(cols, colnumber, nextcol);
-        rows.get(cols.get(colnumber).getXRow()).setXCol(colnumber);
-        rows.get(cols.get(colnumber).getORow()).setOCol(colnumber);
-        rows.get(cols.get(nextcol).getXRow()).setXCol(nextcol);
-        rows.get(cols.get(nextcol).getORow()).setOCol(nextcol);
+        if (hashIsCurrent) {
+            hash ^= colEntryKeys(colnumber) ^ colEntryKeys(nextcol);
+        }
+        if (tree != null) {
+            tree.swapCols(colnumber, nextcol);
+        } else {
+            int thisPhysical = physicalCol(colnumber);
+            int nextPhysical = physicalCol(nextcol);
+            swap(xCol, thisPhysical, nextPhysical);
+            swap(oCol, thisPhysical, nextPhysical);
+            xRow[xCol[thisPhysical]] = thisPhysical;
+            oRow[oCol[thisPhysical]] = thisPhysical;
+            xRow[xCol[nextPhysical]] = nextPhysical;
+            oRow[oCol[nextPhysical]] = nextPhysical;
+        }
+        if (hashIsCurrent) {
+            hash ^= colEntryKeys(colnumber) ^ colEntryKeys(nextcol);
+        }
+        if (validityIsCurrent) {
+            updateValidityOfCols(colnumber, nextcol);
+        }
+        if (!isValid) {// deltaWrithe assumes the columns were not interleaved
+            writheIsCurrent = false;
+        }
     }
 
     /**
@@ -301,25 +457,8 @@ public class GridDiagram implements Serializable {
      * @return True if the rows are not interleaved (commutation is a valid move). False if they are interleaved (commutation is not a valid move).
      */
     public boolean isCommuteRowValid(int rownumber) {
-        Row thisRow = rows.get(rownumber);
-        Row nextRow = rows.get((rownumber + 1) % size);
-        int maxThisRow, minThisRow, maxNextRow, minNextRow;
-        if (thisRow.getXCol() > thisRow.getOCol()) {
-            maxThisRow = thisRow.getXCol();
-            minThisRow = thisRow.getOCol();
-        } else {
-            maxThisRow = thisRow.getOCol();
-            minThisRow = thisRow.getXCol();
-        }
-        if (nextRow.getXCol() > nextRow.getOCol()) {
-            maxNextRow = nextRow.getXCol();
-            minNextRow = nextRow.getOCol();
-        } else {
-            maxNextRow = nextRow.getOCol();
-            minNextRow = nextRow.getXCol();
-        }
-        return !((maxThisRow > maxNextRow && maxNextRow > minThisRow && minThisRow > minNextRow)
-                || (maxNextRow > maxThisRow && maxThisRow > minNextRow && minNextRow > minThisRow));
+        int nextrow = (rownumber + 1) % size;
+        return !isInterleaved(rowMin(rownumber), rowMax(rownumber), rowMin(nextrow), rowMax(nextrow));
     }
 
     /**
@@ -329,25 +468,16 @@ public class GridDiagram implements Serializable {
      * @return True if the columns are not interleaved (commutation is a valid move). False if they are interleaved (commutation is not a valid move).
      */
     public boolean isCommuteColValid(int colnumber) {
-        Column thisCol = cols.get(colnumber);
-        Column nextCol = cols.get((colnumber + 1) % size);
-        int maxThisCol, minThisCol, maxNextCol, minNextCol;
-        if (thisCol.getXRow() > thisCol.getORow()) {
-            maxThisCol = thisCol.getXRow();
-            minThisCol = thisCol.getORow();
-        } else {
-            maxThisCol = thisCol.getORow();
-            minThisCol = thisCol.getXRow();
-        }
-        if (nextCol.getXRow() > nextCol.getORow()) {
-            maxNextCol = nextCol.getXRow();
-            minNextCol = nextCol.getORow();
-        } else {
-            maxNextCol = nextCol.getORow();
-            minNextCol = nextCol.getXRow();
-        }
-        return !((maxThisCol > maxNextCol && maxNextCol > minThisCol && minThisCol > minNextCol)
-                || (maxNextCol > maxThisCol && maxThisCol > minNextCol && minNextCol > minThisCol));
+        int nextcol = (colnumber + 1) % size;
+        return !isInterleaved(colMin(colnumber), colMax(colnumber), colMin(nextcol), colMax(nextcol));
+    }
+
+    /**
+     * Checks whether two edges given by their endpoints are interleaved, i.e. exactly one endpoint of one edge lies strictly between the endpoints of the other.
+     */
+    private static boolean isInterleaved(int minThis, int maxThis, int minNext, int maxNext) {
+        return (maxThis > maxNext && maxNext > minThis && minThis > minNext)
+                || (maxNext > maxThis && maxThis > minNext && minNext > minThis);
     }
 
     /**
@@ -382,23 +512,185 @@ public class GridDiagram implements Serializable {
 
     /**
      * Performs a translation (aka cyclic permutation).
+     * This takes O(1) time since only the origin of the arrays moves (O(log n) with order-statistic storage).
+     * Translating can change which edges cross, so the writhe is recalculated the next time it is requested.
      *
      * @param horizontal Number of units to translate to the right.
      * @param vertical   Number of units to translate down.
      */
     public void translate(int horizontal, int vertical) {
-        ArrayList<Row> newRows = new ArrayList<>();
-        ArrayList<Column> newCols = new ArrayList<>();
-        Row oldRow;
-        Column oldCol;
-        for (int i = 0; i < size; i++) {
-            oldRow = rows.get((i - vertical + size) % size);
-            oldCol = cols.get((i - horizontal + size) % size);
-            newRows.add(new Row((oldRow.getXCol() + horizontal) % size, (oldRow.getOCol() + horizontal) % size));
-            newCols.add(new Column((oldCol.getXRow() + vertical) % size, (oldCol.getORow() + vertical) % size));
+        hashIsCurrent = false;
+        int h = Math.floorMod(horizontal, size);
+        int v = Math.floorMod(vertical, size);
+        if (h != 0 || v != 0) {
+            writheIsCurrent = false;
+        }
+        moveOrigin(h, v);
+        if (tree != null) {
+            validityIsCurrent = false;
+            return;
+        }
+        if (validityIsCurrent) {
+            //Only the rows (or columns) with an entry in the line that moved to the other side change their edges.
+            if ((h == 1 || h == size - 1) && v == 0) {
+                int movedCol = h == 1 ? 0 : size - 1;
+                updateValidityOfRow(xCol(movedCol));
+                updateValidityOfRow(oCol(movedCol));
+            } else if ((v == 1 || v == size - 1) && h == 0) {
+                int movedRow = v == 1 ? 0 : size - 1;
+                updateValidityOfCol(xRow(movedRow));
+                updateValidityOfCol(oRow(movedRow));
+            } else if (h != 0 || v != 0) {
+                validityIsCurrent = false;
+            }
         }
-        rows = newRows;
-        cols = newCols;
+    }
+
+    /**
+     * Performs a translation whose change in writhe is already known, e.g. from {@link #deltaWrithe(int, int[])} when it was proposed,
+     * so that the writhe stays up to date without being recalculated. Otherwise the same as {@link #translate(int, int)}.
+     *
+     * @param horizontal  Number of units to translate to the right.
+     * @param vertical    Number of units to translate down.
+     * @param deltaWrithe The change in writhe from this translation.
+     */
+    public void translate(int horizontal, int vertical, int deltaWrithe) {
+        boolean writheWasCurrent = writheIsCurrent;
+        translate(horizontal, vertical);
+        writhe += deltaWrithe;
+        writheIsCurrent = writheWasCurrent;
+    }
+
+    /**
+     * Moves the origin of the arrays (or rotates the tree) for a translation, leaving everything cached about the grid alone.
+     *
+     * @param h Number of units to translate to the right, from 0 to size - 1.
+     * @param v Number of units to translate down, from 0 to size - 1.
+     */
+    private void moveOrigin(int h, int v) {
+        if (tree != null) {
+            tree.translate(h, v);
+        } else {
+            colOffset = Math.floorMod(colOffset - h, size);
+            rowOffset = Math.floorMod(rowOffset - v, size);
+        }
+    }
+
+    /**
+     * Equivalent to {@link #canonicalForm(boolean)} without the symmetries of the square.
+     *
+     * @return A new GridDiagram that is the same for every translation of this grid diagram.
+     */
+    public GridDiagram canonicalForm() {
+        return canonicalForm(false);
+    }
+
+    /**
+     * Chooses a single representative among all translations of this grid diagram, so that equivalent grids can be deduplicated.
+     * <p>
+     * Each column is encoded by the pair (distance from its X down to its O, distance from its X to the X of the next column), both taken cyclically.
+     * This encoding does not change under vertical translation, and horizontal translation rotates it,
+     * so the representative is the translation starting at the lexicographically least rotation of the encoding with its first X in row 0.
+     * The least rotation is found in linear time, so this takes O(n) rather than trying all n^2 translations.
+     *
+     * @param includeSymmetries If true, the representative is also chosen among the reflections and rotations of the grid (the 8 symmetries of the square), so mirror images share a canonical form.
+     * @return A new GridDiagram that is the same for every grid equivalent to this one. This grid diagram is not modified.
+     */
+    public GridDiagram canonicalForm(boolean includeSymmetries) {
+        int[][] grid = getSavableGrid();
+        int[][] best = canonicalTranslation(grid[0], grid[1]);
+        if (includeSymmetries) {
+            int[] transposedX = new int[size];
+            int[] transposedO = new int[size];
+            for (int i = 0; i < size; i++) {
+                transposedX[grid[0][i]] = i;
+                transposedO[grid[1][i]] = i;
+            }
+            for (int[][] base : new int[][][]{grid, {transposedX, transposedO}}) {
+                for (int flips = 0; flips < 4; flips++) {
+                    int[][] candidate = canonicalTranslation(reflect(base[0], (flips & 1) != 0, (flips & 2) != 0), reflect(base[1], (flips & 1) != 0, (flips & 2) != 0));
+                    if (compareGrids(candidate, best) < 0) {
+                        best = candidate;
+                    }
+                }
+            }
+        }
+        return new GridDiagram(best[0], best[1]);
+    }
+
+    /**
+     * @return The column arrays of the canonical translation of the grid with the given column arrays. See {@link #canonicalForm(boolean)}.
+     */
+    private static int[][] canonicalTranslation(int[] xCol, int[] oCol) {
+        int n = xCol.length;
+        long[] encoding = new long[n];
+        for (int j = 0; j < n; j++) {
+            encoding[j] = (long) Math.floorMod(oCol[j] - xCol[j], n) * n + Math.floorMod(xCol[(j + 1) % n] - xCol[j], n);
+        }
+        int start = leastRotation(encoding);
+        int[][] translated = new int[2][n];
+        for (int k = 0; k < n; k++) {
+            translated[0][k] = Math.floorMod(xCol[(start + k) % n] - xCol[start], n);
+            translated[1][k] = Math.floorMod(oCol[(start + k) % n] - xCol[start], n);
+        }
+        return translated;
+    }
+
+    /**
+     * Finds the lexicographically least rotation of a cyclic sequence in linear time using the two-pointer minimum expression algorithm.
+     *
+     * @return The index at which the least rotation starts.
+     */
+    private static int leastRotation(long[] sequence) {
+        int n = sequence.length;
+        int i = 0;
+        int j = 1;
+        int k = 0;
+        while (i < n && j < n && k < n) {
+            long a = sequence[(i + k) % n];
+            long b = sequence[(j + k) % n];
+            if (a == b) {
+                k++;
+            } else {
+                if (a > b) {
+                    i += k + 1;
+                } else {
+                    j += k + 1;
+                }
+                if (i == j) {
+                    j++;
+                }
+                k = 0;
+            }
+        }
+        return Math.min(i, j);
+    }
+
+    /**
+     * @return A copy of the column array with the columns and/or the rows reversed.
+     */
+    private static int[] reflect(int[] colArray, boolean reverseColumns, boolean reverseRows) {
+        int n = colArray.length;
+        int[] reflected = new int[n];
+        for (int j = 0; j < n; j++) {
+            int value = colArray[reverseColumns ? n - 1 - j : j];
+            reflected[j] = reverseRows ? n - 1 - value : value;
+        }
+        return reflected;
+    }
+
+    /**
+     * Orders column array pairs lexicographically, comparing the X arrays first.
+     */
+    private static int compareGrids(int[][] grid1, int[][] grid2) {
+        for (int a = 0; a < 2; a++) {
+            for (int j = 0; j < grid1[a].length; j++) {
+                if (grid1[a][j] != grid2[a][j]) {
+                    return Integer.compare(grid1[a][j], grid2[a][j]);
+                }
+            }
+        }
+        return 0;
     }
 
     /**
@@ -409,64 +701,69 @@ public class GridDiagram implements Serializable {
      * @param type      One of the constants INSERT_XO_ROW, INSERT_OX_ROW, INSERT_XO_COLUMN, or INSERT_OX_COLUMN, which determines the order and direction of the inserted entries.
      */
     public void stabilize(int rowNumber, int colNumber, int type) {
-        Row thisRow;
+        hashIsCurrent = false;
+        validityIsCurrent = false;
+        if (type == INSERT_XO_COLUMN || type == INSERT_OX_COLUMN) {
+            writhe += stabilizeDeltaWrithe(rowNumber, colNumber, type);
+        } else {
+            writhe += stabilizeDeltaWrithe(colNumber, rowNumber, type);
+        }
+        if (tree != null) {
+            tree.stabilize(rowNumber, colNumber, type);
+            size++;
+            return;
+        }
+        normalizeOffsets();
+        ensureCapacity(size + 1);
         for (int i = rowNumber; i < size; i++) {
-            thisRow = rows.get(i);
-            cols.get(thisRow.getXCol()).setXRow(i + 1);
-            cols.get(thisRow.getOCol()).setORow(i + 1);
+            xCol[xRow[i]] = i + 1;
+            oCol[oRow[i]] = i + 1;
         }
-        Row newRow = new Row(-1, -1);
-        rows.add(rowNumber, newRow);
-        Column thisCol;
+        insertEntry(xRow, rowNumber, -1);
+        insertEntry(oRow, rowNumber, -1);
         for (int j = colNumber; j < size; j++) {
-            thisCol = cols.get(j);
-            rows.get(thisCol.getXRow()).setXCol(j + 1);
-            rows.get(thisCol.getORow()).setOCol(j + 1);
-        }
-        Column newCol = new Column(-1, -1);
-        cols.add(colNumber, newCol);
-        //size++;
-        //printToTerminal();
+            xRow[xCol[j]] = j + 1;
+            oRow[oCol[j]] = j + 1;
+        }
+        insertEntry(xCol, colNumber, -1);
+        insertEntry(oCol, colNumber, -1);
+        int shiftedLine;// The existing row/column whose entry is moved into the new row/column.
         switch (type) {
             case INSERT_XO_COLUMN:
-                thisRow = rows.get(rowNumber + 1);
-                thisCol = cols.get(thisRow.getOCol());
-                newCol.setXRow(rowNumber);
-                newCol.setORow(rowNumber + 1);
-                thisCol.setORow(rowNumber);
-                newRow.setXCol(colNumber);
-                newRow.setOCol(thisRow.getOCol());
-                thisRow.setOCol(colNumber);
+                shiftedLine = oRow[rowNumber + 1];
+                xCol[colNumber] = rowNumber;
+                oCol[colNumber] = rowNumber + 1;
+                oCol[shiftedLine] = rowNumber;
+                xRow[rowNumber] = colNumber;
+                oRow[rowNumber] = shiftedLine;
+                oRow[rowNumber + 1] = colNumber;
                 break;
             case INSERT_OX_COLUMN:
-                thisRow = rows.get(rowNumber + 1);
-                thisCol = cols.get(thisRow.getXCol());
-                newCol.setXRow(rowNumber + 1);
-                newCol.setORow(rowNumber);
-                thisCol.setXRow(rowNumber);
-                newRow.setXCol(thisRow.getXCol());
-                newRow.setOCol(colNumber);
-                thisRow.setXCol(colNumber);
+                shiftedLine = xRow[rowNumber + 1];
+                xCol[colNumber] = rowNumber + 1;
+                oCol[colNumber] = rowNumber;
+                xCol[shiftedLine] = rowNumber;
+                xRow[rowNumber] = shiftedLine;
+                oRow[rowNumber] = colNumber;
+                xRow[rowNumber + 1] = colNumber;
                 break;
             case INSERT_XO_ROW:
-                thisCol = cols.get(colNumber + 1);
-                thisRow = rows.get(thisCol.getORow());
-                newRow.setXCol(colNumber);
-                newRow.setOCol(colNumber + 1);
-                thisRow.setOCol(colNumber);
-                newCol.setXRow(rowNumber);
-                newCol.setORow(thisCol.getORow());
-                thisCol.setORow(rowNumber);
+                shiftedLine = oCol[colNumber + 1];
+                xRow[rowNumber] = colNumber;
+                oRow[rowNumber] = colNumber + 1;
+                oRow[shiftedLine] = colNumber;
+                xCol[colNumber] = rowNumber;
+                oCol[colNumber] = shiftedLine;
+                oCol[colNumber + 1] = rowNumber;
                 break;
             case INSERT_OX_ROW:
-                thisCol = cols.get(colNumber + 1);
-                thisRow = rows.get(thisCol.getXRow());
-                newRow.setXCol(colNumber + 1);
-                newRow.setOCol(colNumber);
-                thisRow.setXCol(colNumber);
-                newCol.setXRow(thisCol.getXRow());
-                newCol.setORow(rowNumber);
-                thisCol.setXRow(rowNumber);
+                shiftedLine = xCol[colNumber + 1];
+                xRow[rowNumber] = colNumber + 1;
+                oRow[rowNumber] = colNumber;
+                xRow[shiftedLine] = colNumber;
+                xCol[colNumber] = shiftedLine;
+                oCol[colNumber] = rowNumber;
+                xCol[colNumber + 1] = rowNumber;
                 break;
             default:
                 break;
@@ -481,38 +778,51 @@ public class GridDiagram implements Serializable {
      * @param colnumber The column in which the destabilization will take place.
      */
     public void destabilizeCol(int colnumber) {
-        Column thisCol;
-        Row thisRow;
-
-        thisCol = cols.get(colnumber);
-        int rowX = thisCol.getXRow();
-        int rowO = thisCol.getORow();
+        hashIsCurrent = false;
+        validityIsCurrent = false;
+        boolean isValid = isDestabilizeColValid(colnumber);
+        if (isValid) {
+            writhe += destabilizeDeltaWrithe(colnumber, MOVE_SUBTYPE_COLUMN);
+        }
+        if (tree != null) {
+            tree.destabilizeCol(colnumber);
+            size--;
+            if (!isValid) {
+                writheIsCurrent = false;
+            }
+            return;
+        }
+        normalizeOffsets();
+        int rowX = xCol[colnumber];
+        int rowO = oCol[colnumber];
         int largerRow = Math.max(rowX, rowO);
-        int savedXCol = rows.get(rowO).getXCol();
-        int savedOCol = rows.get(rowX).getOCol();
+        int savedXCol = xRow[rowO];
+        int savedOCol = oRow[rowX];
 
-        thisRow = rows.get(largerRow - 1);
-        thisRow.setXCol(savedXCol);
-        thisRow.setOCol(savedOCol);
-        cols.get(savedXCol).setXRow(largerRow - 1);
-        cols.get(savedOCol).setORow(largerRow - 1);
+        xRow[largerRow - 1] = savedXCol;
+        oRow[largerRow - 1] = savedOCol;
+        xCol[savedXCol] = largerRow - 1;
+        oCol[savedOCol] = largerRow - 1;
 
         for (int j = colnumber + 1; j < size; j++) {
-            thisCol = cols.get(j);
-            rows.get(thisCol.getXRow()).setXCol(j - 1);
-            rows.get(thisCol.getORow()).setOCol(j - 1);
+            xRow[xCol[j]] = j - 1;
+            oRow[oCol[j]] = j - 1;
         }
 
-        cols.remove(colnumber);
+        removeEntry(xCol, colnumber);
+        removeEntry(oCol, colnumber);
 
         for (int i = largerRow + 1; i < size; i++) {
-            thisRow = rows.get(i);
-            cols.get(thisRow.getXCol()).setXRow(i - 1);
-            cols.get(thisRow.getOCol()).setORow(i - 1);
+            xCol[xRow[i]] = i - 1;
+            oCol[oRow[i]] = i - 1;
         }
 
-        rows.remove(largerRow);
+        removeEntry(xRow, largerRow);
+        removeEntry(oRow, largerRow);
         size--;
+        if (!isValid) {
+            writheIsCurrent = false;
+        }
     }
 
     /**
@@ -522,38 +832,51 @@ public class GridDiagram implements Serializable {
      * @param rownumber The row in which the destabilization will take place.
      */
     public void destabilizeRow(int rownumber) {
-        Row thisRow;
-        Column thisCol;
-
-        thisRow = rows.get(rownumber);
-        int colX = thisRow.getXCol();
-        int colO = thisRow.getOCol();
+        hashIsCurrent = false;
+        validityIsCurrent = false;
+        boolean isValid = isDestabilizeRowValid(rownumber);
+        if (isValid) {
+            writhe += destabilizeDeltaWrithe(rownumber, MOVE_SUBTYPE_ROW);
+        }
+        if (tree != null) {
+            tree.destabilizeRow(rownumber);
+            size--;
+            if (!isValid) {
+                writheIsCurrent = false;
+            }
+            return;
+        }
+        normalizeOffsets();
+        int colX = xRow[rownumber];
+        int colO = oRow[rownumber];
         int largercolumn = Math.max(colO, colX);
-        int savedXRow = cols.get(colO).getXRow();
-        int savedORow = cols.get(colX).getORow();
+        int savedXRow = xCol[colO];
+        int savedORow = oCol[colX];
 
-        thisCol = cols.get(largercolumn - 1);
-        thisCol.setXRow(savedXRow);
-        thisCol.setORow(savedORow);
-        rows.get(savedXRow).setXCol(largercolumn - 1);
-        rows.get(savedORow).setOCol(largercolumn - 1);
+        xCol[largercolumn - 1] = savedXRow;
+        oCol[largercolumn - 1] = savedORow;
+        xRow[savedXRow] = largercolumn - 1;
+        oRow[savedORow] = largercolumn - 1;
 
         for (int i = rownumber + 1; i < size; i++) {
-            thisRow = rows.get(i);
-            cols.get(thisRow.getXCol()).setXRow(i - 1);
-            cols.get(thisRow.getOCol()).setORow(i - 1);
+            xCol[xRow[i]] = i - 1;
+            oCol[oRow[i]] = i - 1;
         }
 
-        rows.remove(rownumber);
+        removeEntry(xRow, rownumber);
+        removeEntry(oRow, rownumber);
 
         for (int j = largercolumn + 1; j < size; j++) {
-            thisCol = cols.get(j);
-            rows.get(thisCol.getXRow()).setXCol(j - 1);
-            rows.get(thisCol.getORow()).setOCol(j - 1);
+            xRow[xCol[j]] = j - 1;
+            oRow[oCol[j]] = j - 1;
         }
 
-        cols.remove(largercolumn);
+        removeEntry(xCol, largercolumn);
+        removeEntry(oCol, largercolumn);
         size--;
+        if (!isValid) {
+            writheIsCurrent = false;
+        }
     }
 
     /**
@@ -563,8 +886,7 @@ public class GridDiagram implements Serializable {
      * @return True if the entries in the row are adjacent (valid destabilization). False otherwise.
      */
     public boolean isDestabilizeRowValid(int row) {
-        Row thisRow = rows.get(row);
-        return thisRow.getMaxCol() - thisRow.getMinCol() == 1 && size > 2;
+        return rowLength(row) == 1 && size > 2;
     }
 
     /**
@@ -574,8 +896,147 @@ public class GridDiagram implements Serializable {
      * @return True if the entries in the column are adjacent (valid destabilization). False otherwise.
      */
     public boolean isDestabilizeColValid(int col) {
-        Column thisCol = cols.get(col);
-        return thisCol.getMaxRow() - thisCol.getMinRow() == 1 && size > 2;
+        return colLength(col) == 1 && size > 2;
+    }
+
+    /**
+     * The number of rows (or columns) that can currently be commuted with the next one, i.e. those for which {@link #isCommuteRowValid(int)} (or {@link #isCommuteColValid(int)}) is true.
+     * The valid moves are indexed once in O(n) time and then kept up to date, so after a commutation this takes O(1) time.
+     *
+     * @param subType MOVE_SUBTYPE_ROW or MOVE_SUBTYPE_COLUMN.
+     * @return The number of valid commutations of the given subtype.
+     */
+    public int countValidCommutations(int subType) {
+        return validCommutations(subType).cardinality();
+    }
+
+    /**
+     * Lists the valid commutations of one subtype in increasing order of position in storage, which together with {@link #countValidCommutations(int)} allows a valid commutation to be chosen uniformly at random.
+     *
+     * @param subType MOVE_SUBTYPE_ROW or MOVE_SUBTYPE_COLUMN.
+     * @param n       Must be 0 <= n < countValidCommutations(subType).
+     * @return The row (or column) of the nth valid commutation.
+     */
+    public int getValidCommutation(int subType, int n) {
+        int index = validCommutations(subType).nthSetBit(n);
+        return subType == MOVE_SUBTYPE_ROW ? logicalRow(index) : logicalCol(index);
+    }
+
+    /**
+     * The number of rows (or columns) in which a destabilization is currently valid. See {@link #countValidCommutations(int)}.
+     *
+     * @param subType MOVE_SUBTYPE_ROW or MOVE_SUBTYPE_COLUMN.
+     * @return The number of valid destabilizations of the given subtype.
+     */
+    public int countValidDestabilizations(int subType) {
+        return validDestabilizations(subType).cardinality();
+    }
+
+    /**
+     * See {@link #getValidCommutation(int, int)}.
+     *
+     * @param subType MOVE_SUBTYPE_ROW or MOVE_SUBTYPE_COLUMN.
+     * @param n       Must be 0 <= n < countValidDestabilizations(subType).
+     * @return The row (or column) of the nth valid destabilization.
+     */
+    public int getValidDestabilization(int subType, int n) {
+        int index = validDestabilizations(subType).nthSetBit(n);
+        return subType == MOVE_SUBTYPE_ROW ? logicalRow(index) : logicalCol(index);
+    }
+
+    private CountingBitSet validCommutations(int subType) {
+        ensureValidityIsCurrent();
+        switch (subType) {
+            case MOVE_SUBTYPE_ROW:
+                return validRowCommutations;
+            case MOVE_SUBTYPE_COLUMN:
+                return validColCommutations;
+            default:
+                throw new IllegalArgumentException("subType must be MOVE_SUBTYPE_ROW or MOVE_SUBTYPE_COLUMN");
+        }
+    }
+
+    private CountingBitSet validDestabilizations(int subType) {
+        ensureValidityIsCurrent();
+        switch (subType) {
+            case MOVE_SUBTYPE_ROW:
+                return validRowDestabilizations;
+            case MOVE_SUBTYPE_COLUMN:
+                return validColDestabilizations;
+            default:
+                throw new IllegalArgumentException("subType must be MOVE_SUBTYPE_ROW or MOVE_SUBTYPE_COLUMN");
+        }
+    }
+
+    /**
+     * Rebuilds the index of valid commutations and destabilizations if a move has left it out of date.
+     */
+    private void ensureValidityIsCurrent() {
+        if (validityIsCurrent) {
+            return;
+        }
+        if (validRowCommutations == null) {
+            validRowCommutations = new CountingBitSet();
+            validColCommutations = new CountingBitSet();
+            validRowDestabilizations = new CountingBitSet();
+            validColDestabilizations = new CountingBitSet();
+        }
+        validRowCommutations.clear(size);
+        validColCommutations.clear(size);
+        validRowDestabilizations.clear(size);
+        validColDestabilizations.clear(size);
+        for (int i = 0; i < size; i++) {
+            validRowCommutations.set(physicalRow(i), isCommuteRowValid(i));
+            validColCommutations.set(physicalCol(i), isCommuteColValid(i));
+            validRowDestabilizations.set(physicalRow(i), isDestabilizeRowValid(i));
+            validColDestabilizations.set(physicalCol(i), isDestabilizeColValid(i));
+        }
+        validityIsCurrent = true;
+    }
+
+    /**
+     * Updates the validity index after the given adjacent rows were exchanged.
+     * Besides the two rows themselves, this affects the row above them and the columns holding their entries.
+     */
+    private void updateValidityOfRows(int row, int nextRow) {
+        updateValidityOfRow(row);
+        updateValidityOfRow(nextRow);
+        updateValidityOfCol(xRow(row));
+        updateValidityOfCol(oRow(row));
+        updateValidityOfCol(xRow(nextRow));
+        updateValidityOfCol(oRow(nextRow));
+    }
+
+    /**
+     * Updates the validity index after the given adjacent columns were exchanged. See {@link #updateValidityOfRows(int, int)}.
+     */
+    private void updateValidityOfCols(int col, int nextCol) {
+        updateValidityOfCol(col);
+        updateValidityOfCol(nextCol);
+        updateValidityOfRow(xCol(col));
+        updateValidityOfRow(oCol(col));
+        updateValidityOfRow(xCol(nextCol));
+        updateValidityOfRow(oCol(nextCol));
+    }
+
+    /**
+     * Updates every entry of the validity index that depends on the edge in the given row.
+     */
+    private void updateValidityOfRow(int row) {
+        int previousRow = row == 0 ? size - 1 : row - 1;
+        validRowCommutations.set(physicalRow(previousRow), isCommuteRowValid(previousRow));
+        validRowCommutations.set(physicalRow(row), isCommuteRowValid(row));
+        validRowDestabilizations.set(physicalRow(row), isDestabilizeRowValid(row));
+    }
+
+    /**
+     * Updates every entry of the validity index that depends on the edge in the given column.
+     */
+    private void updateValidityOfCol(int col) {
+        int previousCol = col == 0 ? size - 1 : col - 1;
+        validColCommutations.set(physicalCol(previousCol), isCommuteColValid(previousCol));
+        validColCommutations.set(physicalCol(col), isCommuteColValid(col));
+        validColDestabilizations.set(physicalCol(col), isDestabilizeColValid(col));
     }
 
     /**
@@ -607,16 +1068,16 @@ public class GridDiagram implements Serializable {
      */
     public boolean isRowMatchColumns() {
         for (int i = 0; i < size; i++) {
-            if (rows.get(i).getXCol() == size) {
+            if (xRow(i) == size) {
                 System.out.println("row " + i + " is a problem at X");
-            } else if (rows.get(i).getOCol() == size) {
+            } else if (oRow(i) == size) {
                 System.out.println("row " + i + " is a problem at O");
-            } else if (cols.get(i).getXRow() == size) {
+            } else if (xCol(i) == size) {
                 System.out.println("col " + i + " is a problem at X");
-            } else if (cols.get(i).getORow() == size) {
+            } else if (oCol(i) == size) {
                 System.out.println("col " + i + " is a problem at O");
             }
-            if (cols.get(rows.get(i).getXCol()).getXRow() != i || cols.get(rows.get(i).getOCol()).getORow() != i) {
+            if (xCol(xRow(i)) != i || oCol(oRow(i)) != i) {
                 return false;
             }
         }
@@ -630,24 +1091,67 @@ public class GridDiagram implements Serializable {
      */
     public int calcWrithe() {
         int totalwrithe = 0;
-        Row thisRow;
-        Column thisCol;
         for (int i = 1; i < size - 1; i++) {
-            thisRow = rows.get(i);
-            for (int j = Math.min(thisRow.getXCol(), thisRow.getOCol()) + 1; j < Math.max(thisRow.getXCol(), thisRow.getOCol()); j++) {
-                thisCol = cols.get(j);
-                if (Math.min(thisCol.getXRow(), thisCol.getORow()) < i && i < Math.max(thisCol.getXRow(), thisCol.getORow())) {
-                    totalwrithe += -(thisCol.getXRow() > thisCol.getORow() ? 1 : -1) * (thisRow.getXCol() > thisRow.getOCol() ? 1 : -1);
+            int rowDirection = rowDirection(i);
+            for (int j = rowMin(i) + 1; j < rowMax(i); j++) {
+                if (colMin(j) < i && i < colMax(j)) {
+                    totalwrithe += colDirection(j) * rowDirection;
                 }
             }
         }
         return totalwrithe;
     }
 
+    /**
+     * Calculates the projected writhe and the number of crossings together with a sweep over the rows.
+     * This gives the same writhe as {@link #calcWrithe()}, but in O(n log n) time instead of O(n^2).
+     *
+     * @return A pair [writhe, crossings] holding the projected writhe and the total number of crossings of this grid diagram.
+     */
+    public int[] calcWritheAndCrossings() {
+        //A column is active while the sweep is strictly between its two entries.
+        //The active columns are stored in two Fenwick trees, one counting them and one summing their directions.
+        FenwickTree activeCount = new FenwickTree(size);
+        FenwickTree activeDirection = new FenwickTree(size);
+        int totalwrithe = 0;
+        int crossings = 0;
+        for (int i = 0; i < size; i++) {
+            //The only columns that start or end at this row are the ones holding its entries.
+            int xcol = xRow(i);
+            int ocol = oRow(i);
+            if (colMax(xcol) == i) {
+                activeCount.add(xcol, -1);
+                activeDirection.add(xcol, -colDirection(xcol));
+            }
+            if (colMax(ocol) == i) {
+                activeCount.add(ocol, -1);
+                activeDirection.add(ocol, -colDirection(ocol));
+            }
+            crossings += activeCount.rangeSum(rowMin(i) + 1, rowMax(i));
+            totalwrithe += rowDirection(i) * activeDirection.rangeSum(rowMin(i) + 1, rowMax(i));
+            if (colMin(xcol) == i) {
+                activeCount.add(xcol, 1);
+                activeDirection.add(xcol, colDirection(xcol));
+            }
+            if (colMin(ocol) == i) {
+                activeCount.add(ocol, 1);
+                activeDirection.add(ocol, colDirection(ocol));
+            }
+        }
+        return new int[]{totalwrithe, crossings};
+    }
+
+    /**
+     * @return The number of crossings in the projection of this grid diagram.
+     */
+    public int calcCrossings() {
+        return calcWritheAndCrossings()[1];
+    }
+
     /**
      * Calculates a number that can be added to the current projected writhe to get the projected writhe of the grid diagram resulting from the given move.
      *
-     * @param movetype  One of MOVETYPE_COMMUTATION, MOVETYPE_STABILIZATION, or MOVETYPE_DESTABILIZATION.
+     * @param movetype  One of MOVETYPE_COMMUTATION, MOVETYPE_STABILIZATION, MOVETYPE_DESTABILIZATION, or MOVETYPE_TRANSLATION.
      * @param arguments The parameters of the given move. This should match the return of {@link GridMove#getMoveArguments()}
      * @return The change in writhe that will occur from the given move.
      */
@@ -659,58 +1163,124 @@ public class GridDiagram implements Serializable {
                 return 0;
             case MOVETYPE_COMMUTATION:
                 //System.out.println("commutation");
-                return commuteDeltaWrithe(arguments);
+                return commuteDeltaWrithe(arguments[0], arguments[1]);
             case MOVETYPE_DESTABILIZATION:
                 //System.out.println("destab");
-                return destabilizeDeltaWrithe(arguments);
+                return destabilizeDeltaWrithe(arguments[0], arguments[1]);
             case MOVETYPE_STABILIZATION:
-                return stabilizeDeltaWrithe(arguments);
+                return stabilizeDeltaWrithe(arguments[0], arguments[1], arguments[2]);
+            case MOVETYPE_TRANSLATION:
+                return translateDeltaWrithe(arguments[0], arguments[1]);
         }
         return delta;
     }
 
+    /**
+     * Calculates the change in writhe from performing the given translation.
+     * Translating by one unit moves a single row or column to the opposite side of the grid.
+     * Every other edge keeps the same crossings, and the two perpendicular edges with an entry in the moved line are replaced by their complements,
+     * which trades their crossings for crossings with every other edge passing through their line and reverses their direction.
+     * A unit translation therefore costs O(n).
+     * Larger translations are handled by recalculating the writhe with the origin moved, which costs O(n log n).
+     *
+     * @param horizontal Number of units to translate to the right.
+     * @param vertical   Number of units to translate down.
+     * @return The change in writhe from performing the given translation.
+     */
+    private int translateDeltaWrithe(int horizontal, int vertical) {
+        int h = Math.floorMod(horizontal, size);
+        int v = Math.floorMod(vertical, size);
+        if (h == 0 && v == 0) {
+            return 0;
+        }
+        if ((h == 1 || h == size - 1) && v == 0) {
+            int movedCol = h == 1 ? size - 1 : 0;
+            return -rowDirection(xCol(movedCol)) * colDirectionsAcrossRow(xCol(movedCol))
+                    - rowDirection(oCol(movedCol)) * colDirectionsAcrossRow(oCol(movedCol));
+        }
+        if ((v == 1 || v == size - 1) && h == 0) {
+            int movedRow = v == 1 ? size - 1 : 0;
+            return -colDirection(xRow(movedRow)) * rowDirectionsAcrossCol(xRow(movedRow))
+                    - colDirection(oRow(movedRow)) * rowDirectionsAcrossCol(oRow(movedRow));
+        }
+        int writheBefore = getWrithe();
+        moveOrigin(h, v);
+        int writheAfter = calcWritheAndCrossings()[0];
+        moveOrigin((size - h) % size, (size - v) % size);
+        return writheAfter - writheBefore;
+    }
+
+    /**
+     * @return The sum of the directions of the column edges that pass through the given row, whether or not they cross its edge.
+     */
+    private int colDirectionsAcrossRow(int row) {
+        int sum = 0;
+        for (int j = 0; j < size; j++) {
+            if (colMin(j) < row && row < colMax(j)) {
+                sum += colDirection(j);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * @return The sum of the directions of the row edges that pass through the given column, whether or not they cross its edge.
+     */
+    private int rowDirectionsAcrossCol(int col) {
+        int sum = 0;
+        for (int i = 0; i < size; i++) {
+            if (rowMin(i) < col && col < rowMax(i)) {
+                sum += rowDirection(i);
+            }
+        }
+        return sum;
+    }
+
     /**
      * Calculates the change in writhe from performing the given stabilization.
+     * The parameters match the return of {@link GridMove#getMoveArguments()}.
      *
-     * @param arguments The arguments of the stabilization. Should match the return of {@link GridMove#getMoveArguments()}
+     * @param rowOrColumnIndex The row (for column insertions) or column (for row insertions) being stabilized.
+     * @param insertedLocation The grid line where the new row/column is inserted.
+     * @param type             One of the INSERT constants.
      * @return The change in writhe from performing the given stabilization.
      */
-    private int stabilizeDeltaWrithe(int[] arguments) {
-        Row thisRow;
-        Column thisCol;
+    private int stabilizeDeltaWrithe(int rowOrColumnIndex, int insertedLocation, int type) {
+        int thisRow;
+        int thisCol;
         int leftOrRight = 0;
         int upOrDown = 0;
         int xAndO = 0;
-        switch (arguments[2]) {
+        switch (type) {
             case INSERT_OX_COLUMN:
             case INSERT_XO_COLUMN:
-                thisRow = rows.get(arguments[0]);
-                if (arguments[1] <= thisRow.getMinCol()) {
+                thisRow = rowOrColumnIndex;
+                if (insertedLocation <= rowMin(thisRow)) {
                     leftOrRight = -1;
-                    thisCol = cols.get(thisRow.getMinCol());
-                } else if (thisRow.getMaxCol() < arguments[1]) {
+                    thisCol = rowMin(thisRow);
+                } else if (rowMax(thisRow) < insertedLocation) {
                     leftOrRight = 1;
-                    thisCol = cols.get(thisRow.getMaxCol());
+                    thisCol = rowMax(thisRow);
                 } else {
                     return 0;
                 }
-                xAndO = (arguments[2] == INSERT_OX_COLUMN ? thisRow.getDirection() : -thisRow.getDirection());
-                upOrDown = (thisCol.getMinRow() == arguments[0] ? 1 : -1);
+                xAndO = (type == INSERT_OX_COLUMN ? rowDirection(thisRow) : -rowDirection(thisRow));
+                upOrDown = (colMin(thisCol) == rowOrColumnIndex ? 1 : -1);
                 break;
             case INSERT_OX_ROW:
             case INSERT_XO_ROW:
-                thisCol = cols.get(arguments[0]);
-                if (arguments[1] <= thisCol.getMinRow()) {
+                thisCol = rowOrColumnIndex;
+                if (insertedLocation <= colMin(thisCol)) {
                     upOrDown = -1;
-                    thisRow = rows.get(thisCol.getMinRow());
-                } else if (thisCol.getMaxRow() < arguments[1]) {
+                    thisRow = colMin(thisCol);
+                } else if (colMax(thisCol) < insertedLocation) {
                     upOrDown = 1;
-                    thisRow = rows.get(thisCol.getMaxRow());
+                    thisRow = colMax(thisCol);
                 } else {
                     return 0;
                 }
-                xAndO = (arguments[2] == INSERT_OX_ROW ? -thisCol.getDirection() : thisCol.getDirection());
-                leftOrRight = (thisRow.getMinCol() == arguments[0] ? 1 : -1);
+                xAndO = (type == INSERT_OX_ROW ? -colDirection(thisCol) : colDirection(thisCol));
+                leftOrRight = (rowMin(thisRow) == rowOrColumnIndex ? 1 : -1);
                 break;
         }
         if (leftOrRight * upOrDown == xAndO) {
@@ -721,56 +1291,56 @@ public class GridDiagram implements Serializable {
 
     /**
      * Calculates the change in writhe from performing the given destabilization.
+     * The parameters match the return of {@link GridMove#getMoveArguments()}.
      *
-     * @param arguments The arguments of the destabilization. Should match the return of {@link GridMove#getMoveArguments()}
+     * @param rowOrColumnIndex The row/column being destabilized.
+     * @param subType          MOVE_SUBTYPE_ROW or MOVE_SUBTYPE_COLUMN.
      * @return The change in writhe from performing the given destabilization.
      */
-    private int destabilizeDeltaWrithe(int[] arguments) {
-        if (arguments[1] == MOVE_SUBTYPE_ROW) {
-            Row thisRow;
-            thisRow = rows.get(arguments[0]);
-            Column xcol = cols.get(thisRow.getXCol());
-            Column ocol = cols.get(thisRow.getOCol());
-            if (xcol.getDirection() == ocol.getDirection()) {
+    private int destabilizeDeltaWrithe(int rowOrColumnIndex, int subType) {
+        if (subType == MOVE_SUBTYPE_ROW) {
+            int thisRow = rowOrColumnIndex;
+            int xcol = xRow(thisRow);
+            int ocol = oRow(thisRow);
+            if (colDirection(xcol) == colDirection(ocol)) {
                 return 0;
             } else {
-                Row crossingRow;
-                if (xcol.getMaxRow() - xcol.getMinRow() < ocol.getMaxRow() - ocol.getMinRow()) {
-                    crossingRow = rows.get(xcol.getORow());
-                    if (crossingRow.getMinCol() < thisRow.getOCol() && thisRow.getOCol() < crossingRow.getMaxCol()) {
-                        return -crossingRow.getDirection() * ocol.getDirection();
+                int crossingRow;
+                if (colLength(xcol) < colLength(ocol)) {
+                    crossingRow = oCol(xcol);
+                    if (rowMin(crossingRow) < ocol && ocol < rowMax(crossingRow)) {
+                        return -rowDirection(crossingRow) * colDirection(ocol);
                     } else {
                         return 0;
                     }
                 } else {
-                    crossingRow = rows.get(ocol.getXRow());
-                    if (crossingRow.getMinCol() < thisRow.getXCol() && thisRow.getXCol() < crossingRow.getMaxCol()) {
-                        return -crossingRow.getDirection() * xcol.getDirection();
+                    crossingRow = xCol(ocol);
+                    if (rowMin(crossingRow) < xcol && xcol < rowMax(crossingRow)) {
+                        return -rowDirection(crossingRow) * colDirection(xcol);
                     } else {
                         return 0;
                     }
                 }
             }
-        } else if (arguments[1] == MOVE_SUBTYPE_COLUMN) {
-            Column thisCol;
-            thisCol = cols.get(arguments[0]);
-            Row xRow = rows.get(thisCol.getXRow());
-            Row oRow = rows.get(thisCol.getORow());
-            if (xRow.getDirection() == oRow.getDirection()) {
+        } else if (subType == MOVE_SUBTYPE_COLUMN) {
+            int thisCol = rowOrColumnIndex;
+            int xrow = xCol(thisCol);
+            int orow = oCol(thisCol);
+            if (rowDirection(xrow) == rowDirection(orow)) {
                 return 0;
             } else {
-                Column crossingCol;
-                if (xRow.getMaxCol() - xRow.getMinCol() < oRow.getMaxCol() - oRow.getMinCol()) {
-                    crossingCol = cols.get(xRow.getOCol());
-                    if (crossingCol.getMinRow() < thisCol.getORow() && thisCol.getORow() < crossingCol.getMaxRow()) {
-                        return -crossingCol.getDirection() * oRow.getDirection();
+                int crossingCol;
+                if (rowLength(xrow) < rowLength(orow)) {
+                    crossingCol = oRow(xrow);
+                    if (colMin(crossingCol) < orow && orow < colMax(crossingCol)) {
+                        return -colDirection(crossingCol) * rowDirection(orow);
                     } else {
                         return 0;
                     }
                 } else {
-                    crossingCol = cols.get(oRow.getXCol());
-                    if (crossingCol.getMinRow() < thisCol.getXRow() && thisCol.getXRow() < crossingCol.getMaxRow()) {
-                        return -crossingCol.getDirection() * xRow.getDirection();
+                    crossingCol = xRow(orow);
+                    if (colMin(crossingCol) < xrow && xrow < colMax(crossingCol)) {
+                        return -colDirection(crossingCol) * rowDirection(xrow);
                     } else {
                         return 0;
                     }
@@ -780,105 +1350,252 @@ public class GridDiagram implements Serializable {
         return 0;
     }
 
+    /**
+     * @param row A row of the grid.
+     * @return The column holding the X in that row.
+     */
+    public int getXColOfRow(int row) {
+        return xRow(row);
+    }
+
+    /**
+     * @param row A row of the grid.
+     * @return The column holding the O in that row.
+     */
+    public int getOColOfRow(int row) {
+        return oRow(row);
+    }
+
     /**
      * @return A pair of integer arrays which can be used with {@link #GridDiagram(int[], int[])} to recreate this grid diagram.
      */
     public int[][] getSavableGrid() {
-        int[] xCol = new int[getSize()];
-        int[] oCol = new int[getSize()];
-        Column thisCol;
-        for (int i = 0; i < getSize(); i++) {
-            thisCol = cols.get(i);
-            xCol[i] = thisCol.getXRow();
-            oCol[i] = thisCol.getORow();
+        if (tree != null) {
+            int[][] grid = new int[2][size];
+            tree.toColumnArrays(grid[0], grid[1]);
+            return grid;
         }
-        return new int[][]{xCol, oCol};
+        if (rowOffset != 0 || colOffset != 0) {
+            int[][] grid = new int[2][size];
+            for (int j = 0; j < size; j++) {
+                grid[0][j] = xCol(j);
+                grid[1][j] = oCol(j);
+            }
+            return grid;
+        }
+        return new int[][]{Arrays.copyOf(xCol, size), Arrays.copyOf(oCol, size)};
     }
 
     /**
-     * @param arguments An integer array where arguments[1] is MOVE_SUBTYPE_COLUMN or MOVE_SUBTYPE_ROW and arguments[0] is the row/column where the move is being performed
+     * Writes this grid diagram in a compact binary form: its size, then the row of the X and of the O in each column, then how it is stored.
+     *
+     * @param out Where to write the grid. {@link #read(DataInput)} reads it back.
+     * @throws IOException If out throws one.
+     */
+    public void write(DataOutput out) throws IOException {
+        int[][] grid = getSavableGrid();
+        out.writeInt(size);
+        for (int j = 0; j < size; j++) {
+            out.writeInt(grid[0][j]);
+            out.writeInt(grid[1][j]);
+        }
+        out.writeBoolean(isOrderStatisticStorage());
+    }
+
+    /**
+     * @param in Where a grid diagram was written with {@link #write(DataOutput)}.
+     * @return A grid diagram equal to the one that was written, stored the same way.
+     * @throws IOException If in throws one, or does not hold a valid grid.
+     */
+    public static GridDiagram read(DataInput in) throws IOException {
+        int size = in.readInt();
+        if (size < 1) {
+            throw new IOException("Invalid grid size " + size);
+        }
+        int[] xCol = new int[size];
+        int[] oCol = new int[size];
+        for (int j = 0; j < size; j++) {
+            xCol[j] = in.readInt();
+            oCol[j] = in.readInt();
+            if (xCol[j] < 0 || xCol[j] >= size || oCol[j] < 0 || oCol[j] >= size) {
+                throw new IOException("Invalid grid entry in column " + j);
+            }
+        }
+        GridDiagram grid = new GridDiagram(xCol, oCol);
+        grid.setOrderStatisticStorage(in.readBoolean());
+        return grid;
+    }
+
+    /**
+     * @param rowOrColumnIndex The row/column where the move is being performed.
+     * @param subType          MOVE_SUBTYPE_COLUMN or MOVE_SUBTYPE_ROW.
      * @return The amount that the writhe will change if the proposed move is performed
      */
-    private int commuteDeltaWrithe(int[] arguments) {
+    private int commuteDeltaWrithe(int rowOrColumnIndex, int subType) {
         int delta = 0;
-        if (arguments[1] == MOVE_SUBTYPE_COLUMN) {
-            Column thisCol = cols.get(arguments[0]);
-            Column nextCol = cols.get((arguments[0] + 1) % getSize());
-            //Replace col with arguments[0]
-            if (arguments[0] == getSize() - 1) {
-                if (thisCol.getXRow() != nextCol.getORow()) {
-                    delta += (cols.get(rows.get(thisCol.getXRow()).getOCol()).getDirection() == thisCol.getDirection() ? thisCol.getDirection() : 0);
-                    delta += (cols.get(rows.get(nextCol.getORow()).getXCol()).getDirection() == nextCol.getDirection() ? nextCol.getDirection() : 0);
+        if (subType == MOVE_SUBTYPE_COLUMN) {
+            int thisCol = rowOrColumnIndex;
+            int nextCol = (rowOrColumnIndex + 1) % size;
+            int thisDirection = colDirection(thisCol);
+            int nextDirection = colDirection(nextCol);
+            if (rowOrColumnIndex == size - 1) {
+                if (xCol(thisCol) != oCol(nextCol)) {
+                    delta += (colDirection(oRow(xCol(thisCol))) == thisDirection ? thisDirection : 0);
+                    delta += (colDirection(xRow(oCol(nextCol))) == nextDirection ? nextDirection : 0);
                 } else {
-                    if (thisCol.getDirection() == nextCol.getDirection()) {
-                        delta += 2 * thisCol.getDirection();
-                    } else if (nextCol.getLength() < thisCol.getLength()) {
-                        delta += nextCol.getDirection();
+                    if (thisDirection == nextDirection) {
+                        delta += 2 * thisDirection;
+                    } else if (colLength(nextCol) < colLength(thisCol)) {
+                        delta += nextDirection;
                     } else {
-                        delta += -nextCol.getDirection();
+                        delta += -nextDirection;
                     }
                 }
-                if (thisCol.getORow() != nextCol.getXRow()) {
-                    delta += (cols.get(rows.get(thisCol.getORow()).getXCol()).getDirection() == thisCol.getDirection() ? -thisCol.getDirection() : 0);
-                    delta += (cols.get(rows.get(nextCol.getXRow()).getOCol()).getDirection() == nextCol.getDirection() ? -nextCol.getDirection() : 0);
+                if (oCol(thisCol) != xCol(nextCol)) {
+                    delta += (colDirection(xRow(oCol(thisCol))) == thisDirection ? -thisDirection : 0);
+                    delta += (colDirection(oRow(xCol(nextCol))) == nextDirection ? -nextDirection : 0);
                 } else {
-                    if (thisCol.getDirection() == nextCol.getDirection()) {
-                        delta += -2 * thisCol.getDirection();
-                    } else if (nextCol.getLength() < thisCol.getLength()) {
-                        delta += -nextCol.getDirection();
+                    if (thisDirection == nextDirection) {
+                        delta += -2 * thisDirection;
+                    } else if (colLength(nextCol) < colLength(thisCol)) {
+                        delta += -nextDirection;
                     } else {
-                        delta += nextCol.getDirection();
+                        delta += nextDirection;
                     }
                 }
-            } else if (thisCol.getDirection() == -nextCol.getDirection()) {
-                if (thisCol.getXRow() == nextCol.getORow()) {
-                    delta += (thisCol.getLength() < nextCol.getLength() ? thisCol.getDirection() : -thisCol.getDirection());
+            } else if (thisDirection == -nextDirection) {
+                if (xCol(thisCol) == oCol(nextCol)) {
+                    delta += (colLength(thisCol) < colLength(nextCol) ? thisDirection : -thisDirection);
                 }
-                if (thisCol.getORow() == nextCol.getXRow()) {
-                    delta += (thisCol.getLength() < nextCol.getLength() ? -thisCol.getDirection() : thisCol.getDirection());
+                if (oCol(thisCol) == xCol(nextCol)) {
+                    delta += (colLength(thisCol) < colLength(nextCol) ? -thisDirection : thisDirection);
                 }
             }
-        } else if (arguments[1] == MOVE_SUBTYPE_ROW) {
-            Row thisRow = rows.get(arguments[0]);
-            Row nextRow = rows.get((arguments[0] + 1) % getSize());
-            //Replace col with arguments[0]
-            if (arguments[0] == getSize() - 1) {
-                if (thisRow.getXCol() != nextRow.getOCol()) {
-                    delta += (rows.get(cols.get(thisRow.getXCol()).getORow()).getDirection() == thisRow.getDirection() ? -thisRow.getDirection() : 0);
-                    delta += (rows.get(cols.get(nextRow.getOCol()).getXRow()).getDirection() == nextRow.getDirection() ? -nextRow.getDirection() : 0);
+        } else if (subType == MOVE_SUBTYPE_ROW) {
+            int thisRow = rowOrColumnIndex;
+            int nextRow = (rowOrColumnIndex + 1) % size;
+            int thisDirection = rowDirection(thisRow);
+            int nextDirection = rowDirection(nextRow);
+            if (rowOrColumnIndex == size - 1) {
+                if (xRow(thisRow) != oRow(nextRow)) {
+                    delta += (rowDirection(oCol(xRow(thisRow))) == thisDirection ? -thisDirection : 0);
+                    delta += (rowDirection(xCol(oRow(nextRow))) == nextDirection ? -nextDirection : 0);
                 } else {
-                    if (thisRow.getDirection() == nextRow.getDirection()) {
-                        delta += -2 * thisRow.getDirection();
-                    } else if (nextRow.getLength() < thisRow.getLength()) {
-                        delta += thisRow.getDirection();
+                    if (thisDirection == nextDirection) {
+                        delta += -2 * thisDirection;
+                    } else if (rowLength(nextRow) < rowLength(thisRow)) {
+                        delta += thisDirection;
                     } else {
-                        delta += -thisRow.getDirection();
+                        delta += -thisDirection;
                     }
                 }
-                if (thisRow.getOCol() != nextRow.getXCol()) {
-                    delta += (rows.get(cols.get(thisRow.getOCol()).getXRow()).getDirection() == thisRow.getDirection() ? thisRow.getDirection() : 0);
-                    delta += (rows.get(cols.get(nextRow.getXCol()).getORow()).getDirection() == nextRow.getDirection() ? nextRow.getDirection() : 0);
+                if (oRow(thisRow) != xRow(nextRow)) {
+                    delta += (rowDirection(xCol(oRow(thisRow))) == thisDirection ? thisDirection : 0);
+                    delta += (rowDirection(oCol(xRow(nextRow))) == nextDirection ? nextDirection : 0);
                 } else {
-                    if (thisRow.getDirection() == nextRow.getDirection()) {
-                        delta += 2 * thisRow.getDirection();
-                    } else if (nextRow.getLength() < thisRow.getLength()) {
-                        delta += -thisRow.getDirection();
+                    if (thisDirection == nextDirection) {
+                        delta += 2 * thisDirection;
+                    } else if (rowLength(nextRow) < rowLength(thisRow)) {
+                        delta += -thisDirection;
                     } else {
-                        delta += thisRow.getDirection();
+                        delta += thisDirection;
                     }
                 }
-            } else if (thisRow.getDirection() == -nextRow.getDirection()) {
-                if (thisRow.getXCol() == nextRow.getOCol()) {
-                    delta += (thisRow.getLength() < nextRow.getLength() ? -thisRow.getDirection() : thisRow.getDirection());
+            } else if (thisDirection == -nextDirection) {
+                if (xRow(thisRow) == oRow(nextRow)) {
+                    delta += (rowLength(thisRow) < rowLength(nextRow) ? -thisDirection : thisDirection);
                 }
-                if (thisRow.getOCol() == nextRow.getXCol()) {
-                    delta += (thisRow.getLength() < nextRow.getLength() ? thisRow.getDirection() : -thisRow.getDirection());
+                if (oRow(thisRow) == xRow(nextRow)) {
+                    delta += (rowLength(thisRow) < rowLength(nextRow) ? thisDirection : -thisDirection);
                 }
             }
         }
         return delta;
     }
 
+    /**
+     * A 64-bit hash of the entries of this grid diagram.
+     * Equal grid diagrams always have equal hashes, and commutations update it in constant time.
+     * Moves that insert, remove or renumber rows and columns cause a single O(n) recalculation the next time it is requested.
+     *
+     * @return The Zobrist hash of this grid diagram.
+     */
+    public long longHashCode() {
+        if (!hashIsCurrent) {
+            hash = 0;
+            for (int j = 0; j < size; j++) {
+                hash ^= entryKey(j, xCol(j), true) ^ entryKey(j, oCol(j), false);
+            }
+            hashIsCurrent = true;
+        }
+        return hash;
+    }
+
+    /**
+     * Note that GridDiagram is mutable, so an instance used as a key in a hashed collection must not be modified afterwards.
+     * Use {@link #copy()} to store a snapshot instead.
+     *
+     * @return A hash code consistent with {@link #equals(Object)}.
+     */
+    @Override
+    public int hashCode() {
+        long h = longHashCode();
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Two grid diagrams are equal if they have the same entries in the same places.
+     * The hashes are compared first, so grids that differ are almost always told apart in constant time.
+     *
+     * @param obj The object to compare with.
+     * @return True if obj is a GridDiagram with the same X's and O's as this one.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof GridDiagram)) {
+            return false;
+        }
+        GridDiagram other = (GridDiagram) obj;
+        if (size != other.size || longHashCode() != other.longHashCode()) {
+            return false;
+        }
+        for (int j = 0; j < size; j++) {
+            if (xCol(j) != other.xCol(j) || oCol(j) != other.oCol(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The XOR of the keys of the two entries in the given row.
+     */
+    private long rowEntryKeys(int row) {
+        return entryKey(xRow(row), row, true) ^ entryKey(oRow(row), row, false);
+    }
+
+    /**
+     * @return The XOR of the keys of the two entries in the given column.
+     */
+    private long colEntryKeys(int col) {
+        return entryKey(col, xCol(col), true) ^ entryKey(col, oCol(col), false);
+    }
+
+    /**
+     * The random key of a single entry for {@link #longHashCode()}.
+     * Rather than storing an n-by-n table of random numbers, the key is generated by the SplitMix64 finalizer,
+     * which is a bijection of its input and so acts as a table with an independent-looking key for every (column, row, X/O) triple.
+     */
+    private static long entryKey(int col, int row, boolean isX) {
+        long z = ((long) col << 33 | (long) row << 1 | (isX ? 1 : 0)) + 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
     /**
      * Calculates the change in size from a given move.
      *
@@ -892,6 +1609,7 @@ public class GridDiagram implements Serializable {
             case GridDiagram.MOVETYPE_DESTABILIZATION:
                 return -1;
             case GridDiagram.MOVETYPE_COMMUTATION:
+            case GridDiagram.MOVETYPE_TRANSLATION:
                 return 0;
             default:
                 System.out.println("Error with deltaSize: moveType not valid");
@@ -900,199 +1618,218 @@ public class GridDiagram implements Serializable {
         return 999;//This should never get called
     }
 
-
     /**
-     * Represents the entries in a row of the grid diagram.
+     * @return The row holding the X in the given column.
      */
-    public static class Row implements Serializable {
-        public static final long serialVersionUID = 0;
-
-        //The column indices of the entries in this row
-        private int xCol;
-        private int oCol;
-
-        //The indices again, but as minimum/maximum indices
-        private int minCol;
-        private int maxCol;
-
-        private int direction;
-        private int length;
+    private int xCol(int col) {
+        return tree == null ? logicalRow(xCol[physicalCol(col)]) : tree.xCol(col);
+    }
 
-        Row(int initXCol, int initOCol) {
-            xCol = initXCol;
-            oCol = initOCol;
-            setMinAndMax();
-        }
+    /**
+     * @return The row holding the O in the given column.
+     */
+    private int oCol(int col) {
+        return tree == null ? logicalRow(oCol[physicalCol(col)]) : tree.oCol(col);
+    }
 
-        /**
-         * @return The column indices of the X and O in this row as a readable string. Useful for debugging.
-         */
-        @Override
-        public String toString() {
-            return "X: " + xCol + " O: " + oCol;
-        }
+    /**
+     * @return The column holding the X in the given row.
+     */
+    private int xRow(int row) {
+        return tree == null ? logicalCol(xRow[physicalRow(row)]) : tree.xRow(row);
+    }
 
-        /**
-         * @return The column index of the X in this row
-         */
-        public int getXCol() {
-            return xCol;
-        }
+    /**
+     * @return The column holding the O in the given row.
+     */
+    private int oRow(int row) {
+        return tree == null ? logicalCol(oRow[physicalRow(row)]) : tree.oRow(row);
+    }
 
-        /**
-         * @return The column index of the O in this row
-         */
-        public int getOCol() {
-            return oCol;
-        }
+    /**
+     * @return The index in the arrays of the given row.
+     */
+    private int physicalRow(int row) {
+        int physical = row + rowOffset;
+        return physical < size ? physical : physical - size;
+    }
 
-        /**
-         * @return The smaller column index in this row.
-         */
-        int getMinCol() {
-            return minCol;
-        }
+    /**
+     * @return The index in the arrays of the given column.
+     */
+    private int physicalCol(int col) {
+        int physical = col + colOffset;
+        return physical < size ? physical : physical - size;
+    }
 
-        /**
-         * @return The larger column index in this row.
-         */
-        int getMaxCol() {
-            return maxCol;
-        }
+    /**
+     * @return The row whose index in the arrays is the given one.
+     */
+    private int logicalRow(int physicalRow) {
+        int row = physicalRow - rowOffset;
+        return row < 0 ? row + size : row;
+    }
 
-        /**
-         * @return Positive if edge is oriented to the right, and negative if oriented to the left.
-         */
-        int getDirection() {
-            return direction;
-        }
+    /**
+     * @return The column whose index in the arrays is the given one.
+     */
+    private int logicalCol(int physicalCol) {
+        int col = physicalCol - colOffset;
+        return col < 0 ? col + size : col;
+    }
 
-        /**
-         * @return The length of the edge in this row.
-         */
-        int getLength() {
-            return length;
+    /**
+     * Moves the origin of the arrays back to (0, 0) by rotating them in place, which takes O(n) time and does not allocate.
+     * Moves that insert or remove rows and columns call this first, so they can work with plain indices.
+     */
+    private void normalizeOffsets() {
+        if (rowOffset == 0 && colOffset == 0) {
+            return;
         }
-
-
-        void setXCol(int newXCol) {
-            this.xCol = newXCol;
-            setMinAndMax();
+        rotateLeft(xCol, colOffset);
+        rotateLeft(oCol, colOffset);
+        rotateLeft(xRow, rowOffset);
+        rotateLeft(oRow, rowOffset);
+        for (int i = 0; i < size; i++) {// The entries still hold physical indices, which depend on the old offsets
+            xCol[i] = logicalRow(xCol[i]);
+            oCol[i] = logicalRow(oCol[i]);
+            xRow[i] = logicalCol(xRow[i]);
+            oRow[i] = logicalCol(oRow[i]);
         }
+        rowOffset = 0;
+        colOffset = 0;
+        validityIsCurrent = false;
+    }
 
-        void setOCol(int newOCol) {
-            this.oCol = newOCol;
-            setMinAndMax();
-        }
+    /**
+     * @return The smaller column index of the entries in the given row.
+     */
+    private int rowMin(int row) {
+        return Math.min(xRow(row), oRow(row));
+    }
 
-        private void setMinAndMax() {
-            if (xCol < oCol) {
-                minCol = xCol;
-                maxCol = oCol;
-            } else {
-                minCol = oCol;
-                maxCol = xCol;
-            }
-            length = xCol - oCol;
-            direction = (int) Math.signum(length);
-            length = length * direction;
-        }
+    /**
+     * @return The larger column index of the entries in the given row.
+     */
+    private int rowMax(int row) {
+        return Math.max(xRow(row), oRow(row));
     }
 
     /**
-     * Represents the entries of a column in the grid diagram.
+     * @return Positive if the edge in the given row is oriented to the right, and negative if oriented to the left.
      */
-    public static class Column implements Serializable {
-        public static final long serialVersionUID = 0;
+    private int rowDirection(int row) {
+        return Integer.signum(xRow(row) - oRow(row));
+    }
 
-        //The row indices of the X and O in this column
-        private int xRow;
-        private int oRow;
+    /**
+     * @return The length of the edge in the given row.
+     */
+    private int rowLength(int row) {
+        return Math.abs(xRow(row) - oRow(row));
+    }
 
-        //The indices again, but as max/min
-        private int minRow;
-        private int maxRow;
+    /**
+     * @return The smaller row index of the entries in the given column.
+     */
+    private int colMin(int col) {
+        return Math.min(xCol(col), oCol(col));
+    }
 
-        private int direction;
-        private int length;
+    /**
+     * @return The larger row index of the entries in the given column.
+     */
+    private int colMax(int col) {
+        return Math.max(xCol(col), oCol(col));
+    }
 
-        public Column(int initXRow, int initORow) {
-            xRow = initXRow;
-            oRow = initORow;
-            setMaxAndMin();
-        }
+    /**
+     * @return Positive or negative depending on the orientation of the edge in the given column.
+     */
+    private int colDirection(int col) {
+        return Integer.signum(oCol(col) - xCol(col));
+    }
 
-        /**
-         * @return The row indices of the X and O in this column as a readable string. Useful for debugging.
-         */
-        @Override
-        public String toString() {
-            return "X: " + xRow + " O: " + oRow;
-        }
+    /**
+     * @return The length of the edge in the given column.
+     */
+    private int colLength(int col) {
+        return Math.abs(oCol(col) - xCol(col));
+    }
 
-        /**
-         * @return The row index of the X in this column.
-         */
-        int getXRow() {
-            return xRow;
-        }
+    /**
+     * Leaves room to grow so that stabilizations don't reallocate on every call.
+     */
+    private static int capacityFor(int size) {
+        return Math.max(2 * size, 16);
+    }
 
-        /**
-         * @return The row index of the O in this column.
-         */
-        int getORow() {
-            return oRow;
-        }
+    private void allocate(int capacity) {
+        xCol = new int[capacity];
+        oCol = new int[capacity];
+        xRow = new int[capacity];
+        oRow = new int[capacity];
+    }
 
-        /**
-         * @return The smaller of the row indices in this column.
-         */
-        int getMinRow() {
-            return minRow;
+    /**
+     * Sets xRow and oRow to match xCol and oCol.
+     */
+    private void fillRowsFromColumns() {
+        for (int i = 0; i < size; i++) {
+            xRow[xCol[i]] = i;
+            oRow[oCol[i]] = i;
         }
+    }
 
-        /**
-         * @return The larger of the row indices in this column.
-         */
-        int getMaxRow() {
-            return maxRow;
+    /**
+     * Grows the backing arrays if they cannot hold a grid of the given size.
+     */
+    private void ensureCapacity(int minSize) {
+        if (xCol.length < minSize) {
+            int capacity = capacityFor(minSize);
+            xCol = Arrays.copyOf(xCol, capacity);
+            oCol = Arrays.copyOf(oCol, capacity);
+            xRow = Arrays.copyOf(xRow, capacity);
+            oRow = Arrays.copyOf(oRow, capacity);
         }
+    }
 
-        /**
-         * @return Positive or negative depending on the orientation of the edge in this column. (I think positive is oriented down, but I need to double check)
-         */
-        public int getDirection() {
-            return direction;
-        }
+    /**
+     * Shifts entries index..size-1 of the array up by one and writes value at index. The array must have spare capacity.
+     */
+    private void insertEntry(int[] array, int index, int value) {
+        System.arraycopy(array, index, array, index + 1, size - index);
+        array[index] = value;
+    }
 
-        /**
-         * @return The length of the edge in this column.
-         */
-        public int getLength() {
-            return length;
-        }
+    /**
+     * Shifts entries index+1..size-1 of the array down by one, overwriting the entry at index.
+     */
+    private void removeEntry(int[] array, int index) {
+        System.arraycopy(array, index + 1, array, index, size - index - 1);
+    }
 
-        void setXRow(int newXRow) {
-            xRow = newXRow;
-            setMaxAndMin();
-        }
+    /**
+     * Rotates the first size entries of the array so that entry distance comes first, by reversing both parts and then the whole.
+     */
+    private void rotateLeft(int[] array, int distance) {
+        reverse(array, 0, distance);
+        reverse(array, distance, size);
+        reverse(array, 0, size);
+    }
 
-        void setORow(int newORow) {
-            oRow = newORow;
-            setMaxAndMin();
+    /**
+     * Reverses the entries of the array from index from (inclusive) to index to (exclusive).
+     */
+    private static void reverse(int[] array, int from, int to) {
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            swap(array, i, j);
         }
+    }
 
-        private void setMaxAndMin() {
-            if (xRow < oRow) {
-                minRow = xRow;
-                maxRow = oRow;
-            } else {
-                minRow = oRow;
-                maxRow = xRow;
-            }
-            length = oRow - xRow;
-            direction = (int) Math.signum(length);
-            length = length * direction;
-        }
+    private static void swap(int[] array, int i, int j) {
+        int temp = array[i];
+        array[i] = array[j];
+        array[j] = temp;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,491 @@
+package griddiagrams;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * An alternative backing store for {@link GridDiagram} where the positions of rows and columns are implicit.
+ * <p>
+ * Rows and columns are nodes of two implicit treaps (balanced trees ordered by position rather than by key).
+ * Each row node points at the column nodes holding its X and O, and each column node points back at its row nodes.
+ * Since no node stores its own index, inserting or removing a row or column costs O(log n) instead of renumbering everything after it.
+ * The price is that looking up an index costs O(log n) instead of O(1).
+ */
+class OrderStatisticGrid implements Serializable {
+    public static final long serialVersionUID = 0;
+
+    private final ImplicitTreap rows = new ImplicitTreap();
+    private final ImplicitTreap cols = new ImplicitTreap();
+    // Indexed by row node: the column nodes holding the X and O of that row.
+    private int[] rowXNode = new int[0];
+    private int[] rowONode = new int[0];
+    // Indexed by column node: the row nodes holding the X and O of that column.
+    private int[] colXNode = new int[0];
+    private int[] colONode = new int[0];
+
+    /**
+     * Builds the store from the column arrays of a grid diagram.
+     *
+     * @param xCol The ith entry is the row holding the X in the ith column.
+     * @param oCol The ith entry is the row holding the O in the ith column.
+     * @param size The number of meaningful entries in xCol and oCol.
+     */
+    OrderStatisticGrid(int[] xCol, int[] oCol, int size) {
+        int[] rowNodes = new int[size];
+        int[] colNodes = new int[size];
+        for (int i = 0; i < size; i++) {
+            rowNodes[i] = rows.insert(i);
+            colNodes[i] = cols.insert(i);
+        }
+        ensureNodeCapacity();
+        for (int j = 0; j < size; j++) {
+            link(rowNodes[xCol[j]], colNodes[j], true);
+            link(rowNodes[oCol[j]], colNodes[j], false);
+        }
+    }
+
+    /**
+     * Creates an empty store, to be filled by {@link #copyInto(OrderStatisticGrid)}.
+     */
+    OrderStatisticGrid() {
+    }
+
+    int size() {
+        return rows.size();
+    }
+
+    /**
+     * Overwrites another store with a copy of this one, reusing its arrays whenever they are large enough.
+     *
+     * @param target The store to overwrite. It shares no state with this one afterwards.
+     */
+    void copyInto(OrderStatisticGrid target) {
+        rows.copyInto(target.rows);
+        cols.copyInto(target.cols);
+        target.ensureNodeCapacity();
+        System.arraycopy(rowXNode, 0, target.rowXNode, 0, rows.nodesUsed);
+        System.arraycopy(rowONode, 0, target.rowONode, 0, rows.nodesUsed);
+        System.arraycopy(colXNode, 0, target.colXNode, 0, cols.nodesUsed);
+        System.arraycopy(colONode, 0, target.colONode, 0, cols.nodesUsed);
+    }
+
+    /**
+     * @return The row holding the X in the given column.
+     */
+    int xCol(int col) {
+        return rows.indexOf(colXNode[cols.nodeAt(col)]);
+    }
+
+    /**
+     * @return The row holding the O in the given column.
+     */
+    int oCol(int col) {
+        return rows.indexOf(colONode[cols.nodeAt(col)]);
+    }
+
+    /**
+     * @return The column holding the X in the given row.
+     */
+    int xRow(int row) {
+        return cols.indexOf(rowXNode[rows.nodeAt(row)]);
+    }
+
+    /**
+     * @return The column holding the O in the given row.
+     */
+    int oRow(int row) {
+        return cols.indexOf(rowONode[rows.nodeAt(row)]);
+    }
+
+    /**
+     * Writes the column arrays of the stored grid, as used by {@link GridDiagram#GridDiagram(int[], int[])}.
+     */
+    void toColumnArrays(int[] xCol, int[] oCol) {
+        int size = size();
+        int[] rowIndex = new int[rowXNode.length];
+        int[] rowOrder = rows.inOrder();
+        for (int i = 0; i < size; i++) {
+            rowIndex[rowOrder[i]] = i;
+        }
+        int[] colOrder = cols.inOrder();
+        for (int j = 0; j < size; j++) {
+            xCol[j] = rowIndex[colXNode[colOrder[j]]];
+            oCol[j] = rowIndex[colONode[colOrder[j]]];
+        }
+    }
+
+    /**
+     * Exchanges two rows. The rows keep their positions and trade entries instead.
+     */
+    void swapRows(int row1, int row2) {
+        int a = rows.nodeAt(row1);
+        int b = rows.nodeAt(row2);
+        int aX = rowXNode[a];
+        int aO = rowONode[a];
+        link(a, rowXNode[b], true);
+        link(a, rowONode[b], false);
+        link(b, aX, true);
+        link(b, aO, false);
+    }
+
+    /**
+     * Exchanges two columns. The columns keep their positions and trade entries instead.
+     */
+    void swapCols(int col1, int col2) {
+        int a = cols.nodeAt(col1);
+        int b = cols.nodeAt(col2);
+        int aX = colXNode[a];
+        int aO = colONode[a];
+        link(colXNode[b], a, true);
+        link(colONode[b], a, false);
+        link(aX, b, true);
+        link(aO, b, false);
+    }
+
+    /**
+     * Cyclically moves the last rows/columns to the front, which is a translation of the grid.
+     */
+    void translate(int horizontal, int vertical) {
+        rows.rotateRight(vertical);
+        cols.rotateRight(horizontal);
+    }
+
+    /**
+     * Performs a stabilization with the same conventions as {@link GridDiagram#stabilize(int, int, int)}.
+     */
+    void stabilize(int rowNumber, int colNumber, int type) {
+        int newRow = rows.insert(rowNumber);
+        int newCol = cols.insert(colNumber);
+        ensureNodeCapacity();
+        int thisRow;
+        int thisCol;
+        switch (type) {
+            case GridDiagram.INSERT_XO_COLUMN:
+                thisRow = rows.nodeAt(rowNumber + 1);
+                thisCol = rowONode[thisRow];
+                link(newRow, newCol, true);
+                link(thisRow, newCol, false);
+                link(newRow, thisCol, false);
+                break;
+            case GridDiagram.INSERT_OX_COLUMN:
+                thisRow = rows.nodeAt(rowNumber + 1);
+                thisCol = rowXNode[thisRow];
+                link(thisRow, newCol, true);
+                link(newRow, newCol, false);
+                link(newRow, thisCol, true);
+                break;
+            case GridDiagram.INSERT_XO_ROW:
+                thisCol = cols.nodeAt(colNumber + 1);
+                thisRow = colONode[thisCol];
+                link(newRow, newCol, true);
+                link(newRow, thisCol, false);
+                link(thisRow, newCol, false);
+                break;
+            case GridDiagram.INSERT_OX_ROW:
+                thisCol = cols.nodeAt(colNumber + 1);
+                thisRow = colXNode[thisCol];
+                link(newRow, thisCol, true);
+                link(newRow, newCol, false);
+                link(thisRow, newCol, true);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Performs a destabilization with the same conventions as {@link GridDiagram#destabilizeCol(int)}.
+     */
+    void destabilizeCol(int colnumber) {
+        int thisCol = cols.nodeAt(colnumber);
+        int rowX = colXNode[thisCol];
+        int rowO = colONode[thisCol];
+        int largerRow = Math.max(rows.indexOf(rowX), rows.indexOf(rowO));
+        int savedXCol = rowXNode[rowO];
+        int savedOCol = rowONode[rowX];
+        int keptRow = rows.nodeAt(largerRow - 1);
+        link(keptRow, savedXCol, true);
+        link(keptRow, savedOCol, false);
+        cols.remove(colnumber);
+        rows.remove(largerRow);
+    }
+
+    /**
+     * Performs a destabilization with the same conventions as {@link GridDiagram#destabilizeRow(int)}.
+     */
+    void destabilizeRow(int rownumber) {
+        int thisRow = rows.nodeAt(rownumber);
+        int colX = rowXNode[thisRow];
+        int colO = rowONode[thisRow];
+        int largercolumn = Math.max(cols.indexOf(colX), cols.indexOf(colO));
+        int savedXRow = colXNode[colO];
+        int savedORow = colONode[colX];
+        int keptCol = cols.nodeAt(largercolumn - 1);
+        link(savedXRow, keptCol, true);
+        link(savedORow, keptCol, false);
+        rows.remove(rownumber);
+        cols.remove(largercolumn);
+    }
+
+    /**
+     * Places an X (or O) at the intersection of the given row and column nodes.
+     */
+    private void link(int rowNode, int colNode, boolean isX) {
+        if (isX) {
+            rowXNode[rowNode] = colNode;
+            colXNode[colNode] = rowNode;
+        } else {
+            rowONode[rowNode] = colNode;
+            colONode[colNode] = rowNode;
+        }
+    }
+
+    private void ensureNodeCapacity() {
+        if (rowXNode.length < rows.capacity()) {
+            rowXNode = Arrays.copyOf(rowXNode, rows.capacity());
+            rowONode = Arrays.copyOf(rowONode, rows.capacity());
+        }
+        if (colXNode.length < cols.capacity()) {
+            colXNode = Arrays.copyOf(colXNode, cols.capacity());
+            colONode = Arrays.copyOf(colONode, cols.capacity());
+        }
+    }
+
+    /**
+     * A sequence of integer node ids stored as a treap with implicit keys.
+     * The nodes live in parallel arrays and removed ids are recycled, so the tree itself allocates only when it grows.
+     */
+    private static class ImplicitTreap implements Serializable {
+        public static final long serialVersionUID = 0;
+        private static final int NIL = -1;
+
+        private final Random random = new Random();
+        private int[] left = new int[0];
+        private int[] right = new int[0];
+        private int[] parent = new int[0];
+        private int[] priority = new int[0];
+        private int[] count = new int[0];// The number of nodes in the subtree rooted at each node
+        private int root = NIL;
+        private int nodesUsed = 0;
+        private int freeList = NIL;// Removed nodes are chained through their right pointers
+        // split() returns two trees through these fields to avoid allocating
+        private int splitLeft;
+        private int splitRight;
+
+        int size() {
+            return count(root);
+        }
+
+        /**
+         * @return The number of node ids that may currently be in use.
+         */
+        int capacity() {
+            return left.length;
+        }
+
+        /**
+         * Overwrites another treap with the same nodes, including the removed ones waiting to be recycled, growing its arrays only if they are too small.
+         */
+        void copyInto(ImplicitTreap target) {
+            if (target.left.length < nodesUsed) {
+                target.left = new int[left.length];
+                target.right = new int[left.length];
+                target.parent = new int[left.length];
+                target.priority = new int[left.length];
+                target.count = new int[left.length];
+            }
+            System.arraycopy(left, 0, target.left, 0, nodesUsed);
+            System.arraycopy(right, 0, target.right, 0, nodesUsed);
+            System.arraycopy(parent, 0, target.parent, 0, nodesUsed);
+            System.arraycopy(priority, 0, target.priority, 0, nodesUsed);
+            System.arraycopy(count, 0, target.count, 0, nodesUsed);
+            target.root = root;
+            target.nodesUsed = nodesUsed;
+            target.freeList = freeList;
+        }
+
+        /**
+         * @return The node at the given position.
+         */
+        int nodeAt(int index) {
+            int node = root;
+            while (true) {
+                int leftCount = count(left[node]);
+                if (index < leftCount) {
+                    node = left[node];
+                } else if (index == leftCount) {
+                    return node;
+                } else {
+                    index -= leftCount + 1;
+                    node = right[node];
+                }
+            }
+        }
+
+        /**
+         * @return The position of the given node.
+         */
+        int indexOf(int node) {
+            int index = count(left[node]);
+            while (parent[node] != NIL) {
+                int p = parent[node];
+                if (right[p] == node) {
+                    index += count(left[p]) + 1;
+                }
+                node = p;
+            }
+            return index;
+        }
+
+        /**
+         * Creates a node at the given position, shifting the later nodes up by one.
+         *
+         * @return The id of the new node.
+         */
+        int insert(int index) {
+            int node = newNode();
+            split(root, index);
+            int rightPart = splitRight;
+            root = merge(merge(splitLeft, node), rightPart);
+            parent[root] = NIL;
+            return node;
+        }
+
+        /**
+         * Removes the node at the given position, shifting the later nodes down by one.
+         */
+        void remove(int index) {
+            split(root, index);
+            int leftPart = splitLeft;
+            split(splitRight, 1);
+            int removed = splitLeft;
+            root = merge(leftPart, splitRight);
+            if (root != NIL) {
+                parent[root] = NIL;
+            }
+            right[removed] = freeList;
+            freeList = removed;
+        }
+
+        /**
+         * Moves the last k nodes to the front.
+         */
+        void rotateRight(int k) {
+            int n = size();
+            if (n == 0 || k % n == 0) {
+                return;
+            }
+            split(root, n - Math.floorMod(k, n));
+            root = merge(splitRight, splitLeft);
+            parent[root] = NIL;
+        }
+
+        /**
+         * @return The node ids in position order.
+         */
+        int[] inOrder() {
+            int[] order = new int[size()];
+            int[] stack = new int[order.length];
+            int stackSize = 0;
+            int filled = 0;
+            int node = root;
+            while (node != NIL || stackSize > 0) {
+                while (node != NIL) {
+                    stack[stackSize++] = node;
+                    node = left[node];
+                }
+                node = stack[--stackSize];
+                order[filled++] = node;
+                node = right[node];
+            }
+            return order;
+        }
+
+        private int newNode() {
+            int node;
+            if (freeList != NIL) {
+                node = freeList;
+                freeList = right[node];
+            } else {
+                if (nodesUsed == left.length) {
+                    int capacity = Math.max(16, 2 * left.length);
+                    left = Arrays.copyOf(left, capacity);
+                    right = Arrays.copyOf(right, capacity);
+                    parent = Arrays.copyOf(parent, capacity);
+                    priority = Arrays.copyOf(priority, capacity);
+                    count = Arrays.copyOf(count, capacity);
+                }
+                node = nodesUsed++;
+            }
+            left[node] = NIL;
+            right[node] = NIL;
+            parent[node] = NIL;
+            priority[node] = random.nextInt();
+            count[node] = 1;
+            return node;
+        }
+
+        private int count(int node) {
+            return node == NIL ? 0 : count[node];
+        }
+
+        /**
+         * Recomputes the subtree count of a node and points its children back at it.
+         */
+        private void update(int node) {
+            count[node] = 1 + count(left[node]) + count(right[node]);
+            if (left[node] != NIL) {
+                parent[left[node]] = node;
+            }
+            if (right[node] != NIL) {
+                parent[right[node]] = node;
+            }
+        }
+
+        /**
+         * Splits the tree rooted at node into its first k nodes (splitLeft) and the rest (splitRight).
+         */
+        private void split(int node, int k) {
+            if (node == NIL) {
+                splitLeft = NIL;
+                splitRight = NIL;
+                return;
+            }
+            if (count(left[node]) < k) {
+                split(right[node], k - count(left[node]) - 1);
+                right[node] = splitLeft;
+                update(node);
+                parent[node] = NIL;
+                splitLeft = node;
+            } else {
+                split(left[node], k);
+                left[node] = splitRight;
+                update(node);
+                parent[node] = NIL;
+                splitRight = node;
+            }
+        }
+
+        /**
+         * @return The root of the tree holding the nodes of a followed by the nodes of b.
+         */
+        private int merge(int a, int b) {
+            if (a == NIL) {
+                return b;
+            }
+            if (b == NIL) {
+                return a;
+            }
+            if (priority[a] > priority[b]) {
+                right[a] = merge(right[a], b);
+                update(a);
+                return a;
+            } else {
+                left[b] = merge(a, left[b]);
+                update(b);
+                return b;
+            }
+        }
+    }
+}
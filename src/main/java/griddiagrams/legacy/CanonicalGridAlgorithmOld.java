@@ -65,10 +65,10 @@ public class CanonicalGridAlgorithmOld {
 								vertex = vertex/2;
 								switch (moveSubtype){
 								case 0:
-									moveSubtype = gDiagram.getRow(vertex).getXCol();
+									moveSubtype = gDiagram.getXColOfRow(vertex);
 									break;
 								case 1:
-									moveSubtype = gDiagram.getRow(vertex).getOCol();
+									moveSubtype = gDiagram.getOColOfRow(vertex);
 									break;
 								}
 								if (gDiagram.isDestabilizeRowValid(vertex)){
@@ -461,7 +461,7 @@ public class WangLandau {
 								}else{
 									if (gDiagram.getSize() > lowerSize){
 										vertex = (int)(rand.nextDouble() * gDiagram.getSize() * 2);
-										if (gDiagram.isDestabilizeRowValid(vertex/2) && ((vertex%2==0 && gDiagram.isDestabilizeColValid(gDiagram.getRow(vertex/2).getXCol())) || (vertex%2==1 && gDiagram.isDestabilizeColValid(gDiagram.getRow(vertex/2).getOCol())))){
+										if (gDiagram.isDestabilizeRowValid(vertex/2) && ((vertex%2==0 && gDiagram.isDestabilizeColValid(gDiagram.getXColOfRow(vertex/2))) || (vertex%2==1 && gDiagram.isDestabilizeColValid(gDiagram.getOColOfRow(vertex/2))))){
 											if(calcAndCheckProbability(movetype, new int[]{vertex/2, GridDiagram.MOVE_SUBTYPE_ROW})){
 												gDiagram.destabilizeRow(vertex/2);
 												updateCurrentEnergyFromNext();
@@ -498,9 +498,9 @@ public class WangLandau {
 								if (gDiagram.getSize() < upperSize) {
 									vertex = (int)(rand.nextDouble() * gDiagram.getSize() * 2);
 									if (vertex%2 == 0){
-										insertedVertex = gDiagram.getRow(vertex/2).getXCol();
+										insertedVertex = gDiagram.getXColOfRow(vertex/2);
 									}else{
-										insertedVertex = gDiagram.getRow(vertex/2).getOCol();
+										insertedVertex = gDiagram.getOColOfRow(vertex/2);
 									}
 									vertex = vertex/2;
 									moveSubtype = (int)(rand.nextDouble() * 4);
@@ -3,16 +3,37 @@ package griddiagrams.markovchain;
 import griddiagrams.GridDiagram;
 import markovchain.MarkovMove;
 
+/**
+ * A move on a grid diagram: a commutation, destabilization, stabilization or unit translation, or no move at all.
+ * <p>
+ * A GridMove can be reused for a different move with {@link #set(GridDiagram, int, int, int)}, which is how a {@link GridMoveSelector} created with reuseMoves avoids allocating on every step.
+ * Such a move, and the array returned by {@link #getMoveArguments()}, is only valid until the next move is selected.
+ */
 public class GridMove implements MarkovMove<GridDiagram> {
 
     private static final int[] stabSubTypes = new int[]{GridDiagram.INSERT_XO_COLUMN, GridDiagram.INSERT_OX_COLUMN, GridDiagram.INSERT_XO_ROW, GridDiagram.INSERT_OX_ROW};
+    private static final int[][] unitTranslations = new int[][]{{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+    private static final int[] noArguments = new int[]{};
 
-    private final GridDiagram initialGrid;
+    private GridDiagram initialGrid;
     private int moveType; // Stabilization, destabilization or commutation defined by the MOVETYPE constants in GridDiagram
     private int moveSubType; // For destabilizations and commutations, this says whether rowOrColumnIndex points to a row or a column. For stabilizations it also determines the order of the new entries.
-    private final int rowOrColumnIndex; // The row/column index of the move
+    private int rowOrColumnIndex; // The row/column index of the move
     private int insertedLocation; // The grid line of insertion for stabilizations (not used for destabilizations and commutations).
-    private final int[] arguments;// The arguments that are used to calculate energy changes.
+    private int[] arguments;// The arguments that are used to calculate energy changes. This is one of the arrays below, which are reused when the move is.
+    private final int[] lineArguments = new int[2];// For destabilizations and commutations
+    private final int[] stabilizationArguments = new int[3];
+    private final int[] translationArguments = new int[2];
+    private int deltaWrithe;// The change in writhe from this move, once getDeltaWrithe() has calculated it
+    private boolean deltaWritheIsCurrent;
+
+    /**
+     * Creates a move that does nothing until it is {@link #set(GridDiagram, int, int, int) set}.
+     */
+    GridMove() {
+        this.moveType = GridDiagram.MOVETYPE_NONE;
+        this.arguments = noArguments;
+    }
 
     /**
      * Main constructor for GridMove.
@@ -20,11 +41,22 @@ public class GridMove implements MarkovMove<GridDiagram> {
      * @param initialGrid          The grid on which the move is being performed.
      * @param moveType             The GridDiagram.MOVETYPE constant associated to this move
      * @param fourTimesRowColIndex Must be 0 <= fourTimesRowColIndex < 4*initialGrid.getSize(). This defines where the move happens, and the order of the inserted entries in stabilizations.
+     *                             For translations only fourTimesRowColIndex % 4 is used, to pick one of the four unit translations.
      * @param insertedLocation     Only used for stabilizations. This is where the insertion takes place.
      */
     GridMove(GridDiagram initialGrid, int moveType, int fourTimesRowColIndex, int insertedLocation) {
+        set(initialGrid, moveType, fourTimesRowColIndex, insertedLocation);
+    }
+
+    /**
+     * Turns this object into a different move, with the same arguments as {@link #GridMove(GridDiagram, int, int, int)}.
+     *
+     * @return This move.
+     */
+    GridMove set(GridDiagram initialGrid, int moveType, int fourTimesRowColIndex, int insertedLocation) {
         this.initialGrid = initialGrid;
         this.moveType = moveType;
+        this.deltaWritheIsCurrent = false;
         this.rowOrColumnIndex = fourTimesRowColIndex / 4;
         if (fourTimesRowColIndex < 0 || this.rowOrColumnIndex >= initialGrid.getSize()) {
             throw new IllegalArgumentException("GridMove constructor received an out of bounds index. Ensure that 0 <= fourTimesRowColIndex < 4*grid size");
@@ -33,7 +65,9 @@ public class GridMove implements MarkovMove<GridDiagram> {
             case GridDiagram.MOVETYPE_DESTABILIZATION:
             case GridDiagram.MOVETYPE_COMMUTATION:
                 this.moveSubType = fourTimesRowColIndex % 2 == 0 ? GridDiagram.MOVE_SUBTYPE_ROW : GridDiagram.MOVE_SUBTYPE_COLUMN;
-                this.arguments = new int[]{rowOrColumnIndex, moveSubType};
+                lineArguments[0] = rowOrColumnIndex;
+                lineArguments[1] = moveSubType;
+                this.arguments = lineArguments;
                 break;
             case GridDiagram.MOVETYPE_STABILIZATION:
                 if (insertedLocation < 0 || insertedLocation > initialGrid.getSize()) {
@@ -41,17 +75,26 @@ public class GridMove implements MarkovMove<GridDiagram> {
                 }
                 this.insertedLocation = insertedLocation;
                 this.moveSubType = stabSubTypes[fourTimesRowColIndex % 4];
-                this.arguments = new int[]{rowOrColumnIndex, insertedLocation, moveSubType};
+                stabilizationArguments[0] = rowOrColumnIndex;
+                stabilizationArguments[1] = insertedLocation;
+                stabilizationArguments[2] = moveSubType;
+                this.arguments = stabilizationArguments;
+                break;
+            case GridDiagram.MOVETYPE_TRANSLATION:
+                translationArguments[0] = unitTranslations[fourTimesRowColIndex % 4][0];
+                translationArguments[1] = unitTranslations[fourTimesRowColIndex % 4][1];
+                this.arguments = translationArguments;
                 break;
             default:
                 throw new IllegalArgumentException("GridMove constructor received invalid moveType. Use the static final MOVETYPE fields from GridDiagram.");
             case GridDiagram.MOVETYPE_NONE:
-                this.arguments = new int[]{};
+                this.arguments = noArguments;
                 break;
         }
         if (!isValid()) {
             this.moveType = GridDiagram.MOVETYPE_NONE;
         }
+        return this;
     }
 
     /**
@@ -77,6 +120,7 @@ public class GridMove implements MarkovMove<GridDiagram> {
                 break;
             case GridDiagram.MOVETYPE_NONE:
             case GridDiagram.MOVETYPE_STABILIZATION:
+            case GridDiagram.MOVETYPE_TRANSLATION:
                 return true;
             default:
                 return false;
@@ -117,10 +161,32 @@ public class GridMove implements MarkovMove<GridDiagram> {
                         break;
                 }
                 break;
+            case GridDiagram.MOVETYPE_TRANSLATION:
+                if (deltaWritheIsCurrent) {// Already paid for by an energy, so the grid can keep its writhe up to date for free
+                    initialGrid.translate(arguments[0], arguments[1], deltaWrithe);
+                } else {
+                    initialGrid.translate(arguments[0], arguments[1]);
+                }
+                break;
         }
+        deltaWritheIsCurrent = false;
         return initialGrid;
     }
 
+    /**
+     * Calculates the change in writhe from performing this move with {@link GridDiagram#deltaWrithe(int, int[])}, the first time it is called for the move.
+     * Later calls, and {@link #perform()} for translations, reuse it.
+     *
+     * @return The change in writhe from performing this move.
+     */
+    public int getDeltaWrithe() {
+        if (!deltaWritheIsCurrent) {
+            deltaWrithe = moveType == GridDiagram.MOVETYPE_NONE ? 0 : initialGrid.deltaWrithe(moveType, arguments);
+            deltaWritheIsCurrent = true;
+        }
+        return deltaWrithe;
+    }
+
     /**
      * @return The move type which is equivalent to one of the GridDiagram.MOVETYPE constants.
      */
@@ -133,7 +199,10 @@ public class GridMove implements MarkovMove<GridDiagram> {
      * Whether a row or column is being referenced is determined by moveSubType which is a GridDiagram constant.
      * If the move is a stabilization, then it is defined by a different subtype declaring the order of the inserted entries as well as row/column, and also by the index of the grid line where the insertion is to take place.
      *
-     * @return If the move is a destabilization or a commutation, then [rowOrColumnIndex, moveSubType]. If the move is a stabilization, then [rowOrColumnIndex, insertedLocation, moveSubType].
+     * Translations move the grid by one unit and are defined by the horizontal and vertical distances.
+     *
+     * @return If the move is a destabilization or a commutation, then [rowOrColumnIndex, moveSubType]. If the move is a stabilization, then [rowOrColumnIndex, insertedLocation, moveSubType]. If the move is a translation, then [horizontal, vertical].
+     * The array belongs to this move and must not be modified.
      */
     public int[] getMoveArguments() {
         return arguments;
@@ -2,22 +2,66 @@ package griddiagrams.markovchain;
 
 import griddiagrams.GridDiagram;
 import markovchain.MarkovMoveSelector;
+import markovchain.RandomSource;
 
 /**
  * GridMoveSelector selects a move by first randomly selecting from stabilization, destabilization, and commutation.
  * If stabilization is selected, then a row/column is selected randomly from the 2*gridSize choices, a grid line is selected from the gridSize+1 choices, and the order of the inserted X and O is selected randomly from the 2 choices.
  * If destabilization is selected, then a row/column is selected randomly from the 2*gridSize choices.
  * If commutation is selected, then a row/column is selected randomly from the 2*gridSize choices.
+ * Optionally, with a fixed probability a translation by one unit in one of the 4 directions is selected instead.
+ * Each unit translation is proposed as often as its inverse and does not change the size, so translations leave the posterior distribution unchanged while helping the chain mix.
  */
 public class GridMoveSelector implements MarkovMoveSelector<GridDiagram, GridMove> {
+
+    private final double translationProbability;// The probability of proposing a translation instead of one of the other moves.
+    private final GridMove reusableMove;// Reset and returned by every call to getRandomMove(), or null to return a new move each time
+
+    /**
+     * Creates a selector that never proposes translations.
+     */
+    public GridMoveSelector() {
+        this(0);
+    }
+
+    /**
+     * @param translationProbability The probability of proposing a unit translation. The other move types share the remaining probability as usual.
+     */
+    public GridMoveSelector(double translationProbability) {
+        this(translationProbability, false);
+    }
+
+    /**
+     * @param translationProbability The probability of proposing a unit translation. The other move types share the remaining probability as usual.
+     * @param reuseMoves             If true, every call to {@link #getRandomMove(GridDiagram, RandomSource)} returns the same {@link GridMove} object, reset to the new move,
+     *                               so selecting a move allocates nothing. The move is then only valid until the next call, and the selector must only be used by one chain.
+     */
+    public GridMoveSelector(double translationProbability, boolean reuseMoves) {
+        if (translationProbability < 0 || translationProbability > 1) {
+            throw new IllegalArgumentException("translationProbability must be between 0 and 1");
+        }
+        this.translationProbability = translationProbability;
+        this.reusableMove = reuseMoves ? new GridMove() : null;
+    }
+
     @Override
-    public GridMove getRandomMove(GridDiagram gridDiagram) {
-        int moveType = (int) (Math.random() * (3));
-        int vertex = (int) (Math.random() * gridDiagram.getSize() * 4);
+    public GridMove getRandomMove(GridDiagram gridDiagram, RandomSource random) {
+        if (translationProbability > 0 && random.nextDouble() < translationProbability) {
+            return getMove(gridDiagram, GridDiagram.MOVETYPE_TRANSLATION, random.nextInt(4), 0);
+        }
+        int moveType = random.nextInt(3);
+        int vertex = random.nextInt(gridDiagram.getSize() * 4);
         int insertedVertex = 0;
         if (moveType == GridDiagram.MOVETYPE_STABILIZATION) {
-            insertedVertex = (int) (Math.random() * (gridDiagram.getSize() + 1));
+            insertedVertex = random.nextInt(gridDiagram.getSize() + 1);
+        }
+        return getMove(gridDiagram, moveType, vertex, insertedVertex);
+    }
+
+    private GridMove getMove(GridDiagram gridDiagram, int moveType, int fourTimesRowColIndex, int insertedLocation) {
+        if (reusableMove != null) {
+            return reusableMove.set(gridDiagram, moveType, fourTimesRowColIndex, insertedLocation);
         }
-        return new GridMove(gridDiagram, moveType, vertex, insertedVertex);
+        return new GridMove(gridDiagram, moveType, fourTimesRowColIndex, insertedLocation);
     }
 }
@@ -0,0 +1,82 @@
+package griddiagrams.markovchain;
+
+import griddiagrams.GridDiagram;
+import markovchain.ObservableRecorder;
+import markovchain.statistics.ObservableStatistics;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * Scalar observables of grid diagrams for use with an {@link ObservableRecorder} or an {@link ObservableStatistics}.
+ */
+public final class GridObservables {
+
+    /**
+     * The size of the grid.
+     */
+    public static final ToIntFunction<GridDiagram> SIZE = GridDiagram::getSize;
+    /**
+     * The writhe of the grid.
+     */
+    public static final ToIntFunction<GridDiagram> WRITHE = GridDiagram::getWrithe;
+
+    /**
+     * The names accepted by {@link #get(String)}.
+     */
+    public static final List<String> NAMES = Collections.unmodifiableList(Arrays.asList("size", "writhe"));
+
+    private GridObservables() {
+    }
+
+    /**
+     * @param name One of {@link #NAMES}.
+     * @return The built-in observable with that name.
+     */
+    public static ToIntFunction<GridDiagram> get(String name) {
+        switch (name) {
+            case "size":
+                return SIZE;
+            case "writhe":
+                return WRITHE;
+            default:
+                throw new IllegalArgumentException("Unknown grid observable " + name + ", expected one of " + NAMES);
+        }
+    }
+
+    /**
+     * Adds one of the built-in observables to a recorder, using its name as the column name.
+     *
+     * @param recorder The recorder.
+     * @param name     One of {@link #NAMES}.
+     * @return The recorder.
+     */
+    public static ObservableRecorder<GridDiagram> addObservable(ObservableRecorder<GridDiagram> recorder, String name) {
+        return recorder.addIntObservable(name, get(name));
+    }
+
+    /**
+     * Accumulates the mean, variance and histogram of each of the given built-in observables, and the covariance of each pair of them.
+     *
+     * @param names Some of {@link #NAMES}.
+     * @return The accumulators, named after the observables, e.g. "size", "size histogram" and "cov(size, writhe)".
+     */
+    public static ObservableStatistics<GridDiagram> statisticsOf(List<String> names) {
+        ObservableStatistics<GridDiagram> statistics = new ObservableStatistics<>();
+        for (String name : names) {
+            ToIntFunction<GridDiagram> observable = get(name);
+            statistics.addStatistics(name, observable::applyAsInt);
+            statistics.addIntHistogram(name + " histogram", observable);
+        }
+        for (int i = 0; i < names.size(); i++) {
+            for (int j = i + 1; j < names.size(); j++) {
+                ToIntFunction<GridDiagram> x = get(names.get(i));
+                ToIntFunction<GridDiagram> y = get(names.get(j));
+                statistics.addCovariance("cov(" + names.get(i) + ", " + names.get(j) + ")", x::applyAsInt, y::applyAsInt);
+            }
+        }
+        return statistics;
+    }
+}
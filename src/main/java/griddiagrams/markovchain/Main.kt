@@ -2,14 +2,34 @@ package griddiagrams.markovchain
 
 import griddiagrams.GridDiagram
 import griddiagrams.markovchain.canonicalalgorithm.CanonicalGridAlgorithm
+import griddiagrams.markovchain.canonicalalgorithm.ParallelTemperingGridAlgorithm
 import griddiagrams.markovchain.wanglandau.GridDiagramWangLandau
 import griddiagrams.markovchain.wanglandau.SizeEnergy
 import griddiagrams.markovchain.wanglandau.WritheEnergy
+import markovchain.ChainFarm
+import markovchain.MarkovChain
+import markovchain.ObservableRecorder
+import markovchain.PilotRun
+import markovchain.SamplePrinter
+import markovchain.wanglandau.ParallelWangLandau
+import markovchain.wanglandau.ReplicaExchangeWangLandau
+import markovchain.wanglandau.WangLandauMarkovChain
 import markovchain.wanglandau.energy.CompositeEnergy
 import markovchain.wanglandau.energy.WangLandauEnergy
+import markovchain.wanglandau.schedule.ConstantSchedule
+import markovchain.wanglandau.schedule.OneOverTSchedule
+import markovchain.wanglandau.schedule.StagedSchedule
+import markovchain.wanglandau.schedule.StochasticApproximationSchedule
+import markovchain.wanglandau.schedule.WangLandauSchedule
 import net.sourceforge.argparse4j.ArgumentParsers
 import net.sourceforge.argparse4j.impl.Arguments
 import net.sourceforge.argparse4j.inf.ArgumentParserException
+import java.io.BufferedWriter
+import java.io.File
+import java.io.OutputStreamWriter
+import java.util.function.DoubleFunction
+import java.util.function.Supplier
+import java.util.function.ToDoubleFunction
 
 
 const val CANONICAL_ALGORITHM = "canonical"
@@ -42,7 +62,39 @@ fun main(args: Array<String>) {
             .required(true)
             .type(Double::class.java)
             .dest("f")
-            .help("The log of the update factor. Weights will be updated according to log(weight) += log(f).")
+            .help("The log of the update factor. Weights will be updated according to log(weight) += log(f). With a schedule other than constant, this is the initial value.")
+    wangLandauParser.addArgument("--schedule")
+            .setDefault("constant")
+            .choices("constant", "staged", "1/t", "samc")
+            .dest("schedule")
+            .help("How log(f) changes during training. constant: train until the histogram is flat. staged: multiply log(f) by --f-reduction and reset the histogram whenever it is flat. " +
+                    "1/t: staged until log(f) reaches (energies found)/(weight updates), then follow that (Belardinelli-Pereyra). samc: log(f) * t0/max(t0, weight updates). " +
+                    "All but constant train until log(f) drops below --f-final.")
+    wangLandauParser.addArgument("--f-final")
+            .setDefault(1e-8)
+            .type(Double::class.java)
+            .dest("f-final")
+            .help("Training stops once log(f) drops below this, for the staged, 1/t and samc schedules.")
+    wangLandauParser.addArgument("--f-reduction")
+            .setDefault(0.5)
+            .type(Double::class.java)
+            .dest("f-reduction")
+            .help("What log(f) is multiplied by at the end of each stage, for the staged and 1/t schedules. 0.5 is the usual f -> sqrt(f).")
+    wangLandauParser.addArgument("--samc-t0")
+            .setDefault(1000L)
+            .type(Long::class.java)
+            .dest("samc-t0")
+            .help("The number of weight updates before log(f) starts to decrease, for the samc schedule.")
+    wangLandauParser.addArgument("--min-count")
+            .setDefault(10000L)
+            .type(Long::class.java)
+            .dest("min-count")
+            .help("Training stops once every energy found has been visited at least this many times.")
+    wangLandauParser.addArgument("--flatness")
+            .setDefault(0.0)
+            .type(Double::class.java)
+            .dest("flatness")
+            .help("Training also requires the smallest count in the histogram to be at least this fraction of the mean count, e.g. 0.8 for the usual flat-histogram criterion.")
     //The following arguments are for energy types.
     wangLandauParser.addArgument("-w", "--writhe")
             .dest("energy")
@@ -54,6 +106,58 @@ fun main(args: Array<String>) {
             .action(Arguments.appendConst())
             .setConst(SizeEnergy.SizeEnergyFactory())
             .help("Include grid size as an energy component.")
+    wangLandauParser.addArgument("--tree-storage")
+            .dest("tree-storage")
+            .action(Arguments.storeTrue())
+            .help("Store the grid in an order-statistic tree. This makes (de)stabilizations O(log n) and is faster for very large grids.")
+    wangLandauParser.addArgument("--seed")
+            .type(Long::class.java)
+            .dest("seed")
+            .help("Seed for the random number generator, to make a run reproducible. By default a different seed is used every time.")
+    wangLandauParser.addArgument("--chains")
+            .setDefault(1)
+            .type(Int::class.java)
+            .dest("chains")
+            .help("Number of independent chains to run. Their log weights are averaged.")
+    wangLandauParser.addArgument("--threads")
+            .setDefault(Runtime.getRuntime().availableProcessors())
+            .type(Int::class.java)
+            .dest("threads")
+            .help("Number of chains to run at the same time. Defaults to the number of processors.")
+    wangLandauParser.addArgument("--walkers")
+            .setDefault(1)
+            .type(Int::class.java)
+            .dest("walkers")
+            .help("Number of walkers, each on its own thread, that train a single shared set of weights. Cannot be combined with --chains or --checkpoint.")
+    wangLandauParser.addArgument("--windows")
+            .setDefault(1)
+            .type(Int::class.java)
+            .dest("windows")
+            .help("Split the grid sizes from the knot's minimal grid to --max-size into this many overlapping windows, each trained by its own walker, with walkers in neighbouring windows exchanging grids (replica-exchange Wang-Landau). " +
+                    "Up to --threads windows run at the same time. Cannot be combined with --chains, --walkers or --checkpoint.")
+    wangLandauParser.addArgument("--window-overlap")
+            .setDefault(0.75)
+            .type(Double::class.java)
+            .dest("window-overlap")
+            .help("With --windows, the fraction of each window shared with the next.")
+    wangLandauParser.addArgument("--exchange-interval")
+            .setDefault(100)
+            .type(Int::class.java)
+            .dest("exchange-interval")
+            .help("With --windows, the number of weight updates between exchanges.")
+    wangLandauParser.addArgument("--checkpoint")
+            .type(String::class.java)
+            .dest("checkpoint")
+            .help("Periodically save the training progress to this file (with the chain number appended if there are several chains), so that it can be continued with --resume.")
+    wangLandauParser.addArgument("--checkpoint-interval")
+            .setDefault(600)
+            .type(Int::class.java)
+            .dest("checkpoint-interval")
+            .help("With --checkpoint, the number of seconds between checkpoints.")
+    wangLandauParser.addArgument("--resume")
+            .dest("resume")
+            .action(Arguments.storeTrue())
+            .help("Continue each chain from its --checkpoint file, if it has one, instead of starting over. The step size and -f saved in the checkpoint are used.")
 
     val canonicalParser = subparsers.addParser("canonical")
             .setDefault("algorithm", CANONICAL_ALGORITHM)
@@ -77,21 +181,123 @@ fun main(args: Array<String>) {
             .type(Int::class.java)
             .dest("step-size")
             .help("Number of steps to take between samples adjustments")
+    canonicalParser.addArgument("--auto-step-size")
+            .dest("auto-step-size")
+            .action(Arguments.storeTrue())
+            .help("Instead of using --step-size and a warm-up of ten times that, run a pilot that measures the autocorrelation time of the observables (see --observe, by default all of them) and picks both. Ignored with --tempering.")
+    canonicalParser.addArgument("--pilot-interval")
+            .setDefault(100)
+            .type(Int::class.java)
+            .dest("pilot-interval")
+            .help("With --auto-step-size, the number of steps between the pilot's measurements. The step size is a multiple of this.")
+    canonicalParser.addArgument("--tree-storage")
+            .dest("tree-storage")
+            .action(Arguments.storeTrue())
+            .help("Store the grid in an order-statistic tree. This makes (de)stabilizations O(log n) and is faster for very large grids.")
+    canonicalParser.addArgument("--translations")
+            .setDefault(0.0)
+            .type(Double::class.java)
+            .dest("translations")
+            .help("Probability of proposing a unit translation at each step, which can help the chain mix.")
+    canonicalParser.addArgument("--rejection-free")
+            .dest("rejection-free")
+            .action(Arguments.storeTrue())
+            .help("Use the n-fold way, which jumps straight to accepted moves. The samples have the same distribution but are much faster to take when most moves are rejected.")
+    canonicalParser.addArgument("--seed")
+            .type(Long::class.java)
+            .dest("seed")
+            .help("Seed for the random number generator, to make a run reproducible. By default a different seed is used every time.")
+    canonicalParser.addArgument("--tempering")
+            .nargs("+")
+            .type(Double::class.java)
+            .dest("tempering")
+            .help("Run parallel tempering with replicas at these z values as well as at -z. Samples are taken from the replica at -z.")
+    canonicalParser.addArgument("--swap-interval")
+            .setDefault(1000)
+            .type(Int::class.java)
+            .dest("swap-interval")
+            .help("With --tempering, the number of steps between attempts to swap neighbouring replicas.")
+    canonicalParser.addArgument("--observe")
+            .nargs("+")
+            .choices(*GridObservables.NAMES.toTypedArray())
+            .dest("observe")
+            .help("Print only these observables of each sample, as tab-separated columns, instead of the whole grid.")
+    canonicalParser.addArgument("--statistics")
+            .dest("statistics")
+            .action(Arguments.storeTrue())
+            .help("Print the mean, variance and histogram of each observable (see --observe, by default all of them), and their covariances, instead of the samples.")
+    canonicalParser.addArgument("--chunk-size")
+            .setDefault(4096)
+            .type(Int::class.java)
+            .dest("chunk-size")
+            .help("With --observe, the number of samples to hold in memory before printing them.")
+    canonicalParser.addArgument("--chains")
+            .setDefault(1)
+            .type(Int::class.java)
+            .dest("chains")
+            .help("Number of independent chains to run. Their samples are printed together, in the order they are taken. Cannot be combined with --tempering.")
+    canonicalParser.addArgument("--threads")
+            .setDefault(Runtime.getRuntime().availableProcessors())
+            .type(Int::class.java)
+            .dest("threads")
+            .help("Number of chains to run at the same time. Defaults to the number of processors.")
 
 
     try {
         val res = parser.parseArgs(args)
         when (res.get("algorithm") as String) {
-            CANONICAL_ALGORITHM -> takeCanonicalSamples(res.getString("knot_name"),
+            CANONICAL_ALGORITHM -> if (res.getList<Double>("tempering") != null) takeTemperedSamples(res.getString("knot_name"),
+                    res.getDouble("z"),
+                    res.getList("tempering"),
+                    res.getInt("samples"),
+                    res.getInt("step-size"),
+                    res.getInt("swap-interval"),
+                    res.getBoolean("tree-storage"),
+                    res.getDouble("translations"),
+                    res.getBoolean("rejection-free"),
+                    res.getLong("seed"),
+                    res.getInt("chains"),
+                    res.getInt("threads"),
+                    res.getList("observe"),
+                    res.getBoolean("statistics"),
+                    res.getInt("chunk-size")
+            ) else takeCanonicalSamples(res.getString("knot_name"),
                     res.getDouble("z"),
                     res.getInt("samples"),
-                    res.getInt("step-size")
+                    res.getInt("step-size"),
+                    if (res.getBoolean("auto-step-size")) res.getInt("pilot-interval") else null,
+                    res.getBoolean("tree-storage"),
+                    res.getDouble("translations"),
+                    res.getBoolean("rejection-free"),
+                    res.getLong("seed"),
+                    res.getInt("chains"),
+                    res.getInt("threads"),
+                    res.getList("observe"),
+                    res.getBoolean("statistics"),
+                    res.getInt("chunk-size")
             )
             WANG_LANDAU_TRAINING -> wangLandauTrain(res.getString("knot_name"),
                     res.getList<WangLandauEnergy.WangLandauEnergyFactory<GridDiagram, GridMove, *>>("energy"),
                     res.getInt("max-size"),
                     res.getInt("step-size"),
-                    res.getDouble("f"))
+                    res.getDouble("f"),
+                    res.getString("schedule"),
+                    res.getDouble("f-final"),
+                    res.getDouble("f-reduction"),
+                    res.getLong("samc-t0"),
+                    res.getLong("min-count"),
+                    res.getDouble("flatness"),
+                    res.getBoolean("tree-storage"),
+                    res.getLong("seed"),
+                    res.getInt("chains"),
+                    res.getInt("threads"),
+                    res.getInt("walkers"),
+                    res.getInt("windows"),
+                    res.getDouble("window-overlap"),
+                    res.getInt("exchange-interval"),
+                    res.getString("checkpoint"),
+                    res.getInt("checkpoint-interval"),
+                    res.getBoolean("resume"))
         }
 
     } catch (e: ArgumentParserException) {
@@ -102,18 +308,185 @@ fun main(args: Array<String>) {
 }
 
 
-fun wangLandauTrain(knotName: String, energyFactoryList:List<WangLandauEnergy.WangLandauEnergyFactory<GridDiagram,GridMove,*>>,maxSize: Int, updateFrequency: Int, logUpdateFactor: Double) {
-    val algorithm = GridDiagramWangLandau<CompositeEnergy<GridDiagram, GridMove>>(CompositeEnergy.CompositeEnergyFactory(energyFactoryList), maxSize)
-    algorithm.setLogWeights(HashMap<CompositeEnergy<GridDiagram, GridMove>, Double>())
-    val gridDiagram = GridDiagram.getGridDiagramFromResource(knotName)
-    val logWeights = algorithm.train(gridDiagram, updateFrequency, logUpdateFactor)
-    println(logWeights)
+fun wangLandauTrain(knotName: String, energyFactoryList:List<WangLandauEnergy.WangLandauEnergyFactory<GridDiagram,GridMove,*>>,maxSize: Int, updateFrequency: Int, logUpdateFactor: Double, schedule: String, finalLogUpdateFactor: Double, reduction: Double, t0: Long, minCount: Long, flatness: Double, treeStorage: Boolean, seed: Long?, chains: Int, threads: Int, walkers: Int, windows: Int, windowOverlap: Double, exchangeInterval: Int, checkpoint: String?, checkpointInterval: Int, resume: Boolean) {
+    val createAlgorithm = { minSize: Int, windowMaxSize: Int ->
+        val algorithm = GridDiagramWangLandau<CompositeEnergy<GridDiagram, GridMove>>(CompositeEnergy.CompositeEnergyFactory(energyFactoryList), minSize, windowMaxSize)
+        algorithm.setLogWeights(HashMap<CompositeEnergy<GridDiagram, GridMove>, Double>())
+        algorithm.setMinCount(minCount)
+        algorithm.setFlatness(flatness)
+        algorithm.setOrderStatisticStorage(treeStorage)
+        algorithm
+    }
+    val createGridDiagram = Supplier {
+        val gridDiagram = GridDiagram.getGridDiagramFromResource(knotName)
+        gridDiagram.setOrderStatisticStorage(treeStorage)
+        gridDiagram
+    }
+    if (windows > 1) {
+        require(chains == 1 && walkers == 1 && checkpoint == null) { "--windows cannot be combined with --chains, --walkers or --checkpoint" }
+        val bounds = ReplicaExchangeWangLandau.overlappingWindows(createGridDiagram.get().size, maxSize, windows, windowOverlap)
+        val training = ReplicaExchangeWangLandau<GridDiagram, GridMove, CompositeEnergy<GridDiagram, GridMove>, GridDiagramWangLandau<CompositeEnergy<GridDiagram, GridMove>>>(
+                bounds.map { (lower, upper) -> createAlgorithm(lower, upper) }, threads)
+        if (seed != null) {
+            training.setSeed(seed)
+        }
+        training.setExchangeInterval(exchangeInterval)
+        val logWeights = training.train(createGridDiagram, updateFrequency, Supplier { createSchedule(schedule, logUpdateFactor, finalLogUpdateFactor, reduction, t0) })
+        training.exchangeRates.forEachIndexed { i, rate -> System.err.println("windows ${bounds[i].toList()} and ${bounds[i + 1].toList()}: exchange rate %.4f".format(rate)) }
+        println(logWeights)
+        return
+    }
+    if (walkers > 1) {
+        require(chains == 1 && checkpoint == null) { "--walkers cannot be combined with --chains or --checkpoint" }
+        val training = ParallelWangLandau<GridDiagram, GridMove, CompositeEnergy<GridDiagram, GridMove>, GridDiagramWangLandau<CompositeEnergy<GridDiagram, GridMove>>>(Supplier { createAlgorithm(0, maxSize) }, walkers)
+        if (seed != null) {
+            training.setSeed(seed)
+        }
+        val logWeights = training.train(createGridDiagram, updateFrequency, createSchedule(schedule, logUpdateFactor, finalLogUpdateFactor, reduction, t0))
+        printChainStatistics(training.walkerResults)
+        println(logWeights)
+        return
+    }
+    var chainsCreated = 0 // The farm creates the chains in order on this thread, so each one gets the same checkpoint file every run
+    val farm = ChainFarm(Supplier {
+        val algorithm = createAlgorithm(0, maxSize)
+        if (checkpoint != null) {
+            algorithm.setCheckpoint(File(if (chains > 1) "$checkpoint.$chainsCreated" else checkpoint), checkpointInterval * 1000L)
+        }
+        chainsCreated++
+        algorithm
+    }, threads)
+    if (seed != null) {
+        farm.setSeed(seed)
+    }
+    val results = farm.run(chains) { algorithm ->
+        if (resume && algorithm.checkpointFile?.exists() == true) {
+            algorithm.resumeTraining()
+        } else {
+            algorithm.train(createGridDiagram.get(), updateFrequency, createSchedule(schedule, logUpdateFactor, finalLogUpdateFactor, reduction, t0))
+        }
+    }
+    printChainStatistics(results)
+    println(WangLandauMarkovChain.mergeLogWeights(results.map { it.result }))
+}
+
+fun createSchedule(schedule: String, logUpdateFactor: Double, finalLogUpdateFactor: Double, reduction: Double, t0: Long): WangLandauSchedule {
+    return when (schedule) {
+        "staged" -> StagedSchedule(logUpdateFactor, reduction, finalLogUpdateFactor)
+        "1/t" -> OneOverTSchedule(logUpdateFactor, reduction, finalLogUpdateFactor)
+        "samc" -> StochasticApproximationSchedule(logUpdateFactor, t0, finalLogUpdateFactor)
+        else -> ConstantSchedule(logUpdateFactor)
+    }
+}
+
+fun takeCanonicalSamples(knotName: String, z: Double, numSamples: Int, sampleFrequency: Int, pilotInterval: Int?, treeStorage: Boolean, translationProbability: Double, rejectionFree: Boolean, seed: Long?, chains: Int, threads: Int, observables: List<String>?, statistics: Boolean, chunkSize: Int) {
+    val farm = ChainFarm<MarkovChain<GridDiagram, GridMove>>(Supplier {
+        if (rejectionFree) {
+            NFoldWayGridAlgorithm(z, translationProbability)
+        } else {
+            CanonicalGridAlgorithm(z, translationProbability)
+        }
+    }, threads)
+    if (seed != null) {
+        farm.setSeed(seed)
+    }
+    // Returns the warmed up grid and the number of steps to take between samples
+    fun warmUp(algorithm: MarkovChain<GridDiagram, GridMove>): Pair<GridDiagram, Int> {
+        val gridDiagram = GridDiagram.getGridDiagramFromResource(knotName)
+        gridDiagram.setOrderStatisticStorage(treeStorage)
+        if (pilotInterval == null) {
+            return Pair(algorithm.run(gridDiagram, sampleFrequency*10), sampleFrequency)
+        }
+        val pilot = PilotRun<GridDiagram>().setInterval(pilotInterval)
+        for (name in observables ?: GridObservables.NAMES) {
+            val observable = GridObservables.get(name)
+            pilot.addObservable(name, ToDoubleFunction { observable.applyAsInt(it).toDouble() })
+        }
+        val state = pilot.run(algorithm, gridDiagram)
+        System.err.println(pilot)
+        return Pair(state, pilot.sampleFrequency)
+    }
+    val results = if (statistics) {
+        val accumulators = GridObservables.statisticsOf(observables ?: GridObservables.NAMES)
+        val results = farm.run(chains) { algorithm ->
+            val (state, frequency) = warmUp(algorithm)
+            algorithm.sampleObservables(state, frequency, numSamples, accumulators)
+        }
+        print(accumulators)
+        results
+    } else if (observables == null) {
+        SamplePrinter(System.out).use { printer ->
+            farm.run(chains) { algorithm ->
+                val (state, frequency) = warmUp(algorithm)
+                algorithm.sample(state, frequency, numSamples, printer)
+            }
+        }
+    } else {
+        observableRecorder(observables, chunkSize).use { recorder ->
+            farm.run(chains) { algorithm ->
+                val (state, frequency) = warmUp(algorithm)
+                algorithm.sampleObservables(state, frequency, numSamples, recorder)
+            }
+        }
+    }
+    printChainStatistics(results)
+}
+
+fun takeTemperedSamples(knotName: String, z: Double, ladder: List<Double>, numSamples: Int, sampleFrequency: Int, swapInterval: Int, treeStorage: Boolean, translationProbability: Double, rejectionFree: Boolean, seed: Long?, chains: Int, threads: Int, observables: List<String>?, statistics: Boolean, chunkSize: Int) {
+    require(chains == 1) { "--tempering cannot be combined with --chains" }
+    val sortedLadder = (ladder + z).distinct().sorted()
+    val zValues = sortedLadder.toDoubleArray()
+    val algorithm = if (rejectionFree) {
+        ParallelTemperingGridAlgorithm(zValues, DoubleFunction { NFoldWayGridAlgorithm(it, translationProbability) }, threads)
+    } else {
+        ParallelTemperingGridAlgorithm(zValues, DoubleFunction { CanonicalGridAlgorithm(it, translationProbability) }, threads)
+    }
+    try {
+        if (seed != null) {
+            algorithm.setSeed(seed)
+        }
+        val gridDiagram = GridDiagram.getGridDiagramFromResource(knotName)
+        gridDiagram.setOrderStatisticStorage(treeStorage)
+        algorithm.initialize(gridDiagram)
+        val roundsPerSample = maxOf(1, sampleFrequency / swapInterval)
+        algorithm.run(roundsPerSample * 10, swapInterval) //warmup
+        val replica = sortedLadder.indexOf(z)
+        if (statistics) {
+            val accumulators = GridObservables.statisticsOf(observables ?: GridObservables.NAMES)
+            algorithm.sampleObservables(replica, roundsPerSample, swapInterval, numSamples, accumulators)
+            print(accumulators)
+        } else if (observables == null) {
+            SamplePrinter(System.out).use { printer ->
+                algorithm.sample(replica, roundsPerSample, swapInterval, numSamples, printer)
+            }
+        } else {
+            observableRecorder(observables, chunkSize).use { recorder ->
+                algorithm.sampleObservables(replica, roundsPerSample, swapInterval, numSamples, recorder)
+            }
+        }
+    } finally {
+        algorithm.shutdown()
+    }
+    val swapRates = algorithm.swapRates
+    for (i in swapRates.indices) {
+        System.err.println("swap rate between z=${zValues[i]} and z=${zValues[i + 1]}: ${swapRates[i]}")
+    }
+}
+
+/**
+ * Creates a recorder for the named grid observables that prints them to stdout every chunkSize samples.
+ */
+fun observableRecorder(observables: List<String>, chunkSize: Int): ObservableRecorder<GridDiagram> {
+    val recorder = ObservableRecorder<GridDiagram>(BufferedWriter(OutputStreamWriter(System.out)), chunkSize)
+    observables.forEach { GridObservables.addObservable(recorder, it) }
+    return recorder
 }
 
-fun takeCanonicalSamples(knotName: String, z: Double, numSamples: Int, sampleFrequency: Int) {
-    val algorithm = CanonicalGridAlgorithm(z)
-    var gridDiagram = GridDiagram.getGridDiagramFromResource(knotName)
-    gridDiagram = algorithm.run(gridDiagram, sampleFrequency*10) //warmup
-    val samples = algorithm.sample(gridDiagram, sampleFrequency, numSamples)
-    println(samples)
+/**
+ * Reports how each chain of a multi-chain run went. This goes to stderr so that stdout only holds the results.
+ */
+fun printChainStatistics(results: List<ChainFarm.ChainResult<*>>) {
+    if (results.size > 1) {
+        results.forEach { System.err.println(it) }
+    }
 }
@@ -0,0 +1,180 @@
+package griddiagrams.markovchain;
+
+import griddiagrams.GridDiagram;
+import markovchain.MarkovChain;
+import markovchain.MarkovMoveSelector;
+import markovchain.RandomSource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A rejection-free (n-fold way, or BKL) version of {@link griddiagrams.markovchain.canonicalalgorithm.CanonicalGridAlgorithm}.
+ * <p>
+ * Instead of proposing moves that are mostly invalid or rejected, this chain sums the probabilities of every move the canonical algorithm would accept from the current grid
+ * (grouped into commutations, destabilizations, stabilizations and translations), and jumps straight to one of them with the right relative probability.
+ * The number of canonical steps the grid would have stayed put for before that jump is geometric, so it is drawn directly.
+ * As a result {@link #run(GridDiagram, int)} and {@link #sample(GridDiagram, int, int)} count steps exactly like the canonical algorithm and give samples from the same distribution,
+ * but the work done is proportional to the number of moves accepted rather than proposed.
+ * <p>
+ * Each call to {@link #step(GridDiagram)} performs one jump. The expected residence time of the grid before the jump is available from {@link #getLastResidenceTime()},
+ * and {@link #sampleJumps(GridDiagram, int, double[])} records it as a weight for every visited grid.
+ */
+public class NFoldWayGridAlgorithm extends MarkovChain<GridDiagram, GridMove> {
+
+    private final double z;// Fugacity parameter that chooses the posterior distribution.
+    private final double translationProbability;// The probability that the canonical algorithm proposes a translation.
+    private final MarkovMoveSelector<GridDiagram, GridMove> moveSelector = this::getAcceptedMove;// Chooses among the moves that would be accepted.
+    private final GridMove reusableMove = new GridMove();// Set to every move returned by getAcceptedMove(), see MarkovMoveSelector
+    private double lastAcceptanceProbability;// The probability that a canonical step from the last grid passed to getAcceptedMove() moves.
+
+    /**
+     * @param z The fugacity parameter that decides the posterior distribution of the algorithm.
+     */
+    public NFoldWayGridAlgorithm(double z) {
+        this(z, 0);
+    }
+
+    /**
+     * @param z                      The fugacity parameter that decides the posterior distribution of the algorithm.
+     * @param translationProbability The probability of proposing a unit translation at each step, as in {@link GridMoveSelector#GridMoveSelector(double)}.
+     */
+    public NFoldWayGridAlgorithm(double z, double translationProbability) {
+        if (translationProbability < 0 || translationProbability > 1) {
+            throw new IllegalArgumentException("translationProbability must be between 0 and 1");
+        }
+        this.z = z;
+        this.translationProbability = translationProbability;
+    }
+
+    /**
+     * Performs a single jump, i.e. a move that changes the grid.
+     *
+     * @param state The grid before the jump. It is modified by the jump.
+     * @return The grid after the jump.
+     */
+    @Override
+    public GridDiagram step(GridDiagram state) {
+        GridMove move = getMoveSelector().getRandomMove(state, getRandom());
+        recordSteps(sampleResidenceTime(lastAcceptanceProbability, getRandom()), 1);
+        return move.perform();
+    }
+
+    /**
+     * Performs as many jumps as the canonical algorithm would accept in the given number of steps.
+     *
+     * @param state {@inheritDoc}
+     * @param steps The number of steps of the canonical algorithm to simulate.
+     * @return {@inheritDoc}
+     */
+    @Override
+    public GridDiagram run(GridDiagram state, int steps) {
+        long stepsLeft = steps;
+        while (true) {
+            GridMove move = getMoveSelector().getRandomMove(state, getRandom());
+            // Geometric distributions are memoryless, so the time to the next jump can be drawn afresh on every call.
+            long residenceTime = sampleResidenceTime(lastAcceptanceProbability, getRandom());
+            if (residenceTime > stepsLeft) {
+                recordSteps(stepsLeft, 0);
+                return state;
+            }
+            stepsLeft -= residenceTime;
+            recordSteps(residenceTime, 1);
+            state = move.perform();
+        }
+    }
+
+    /**
+     * Records every grid visited over the given number of jumps together with its expected residence time.
+     * A weighted average of a property over these samples, using the residence times as weights, estimates its average under the posterior distribution.
+     *
+     * @param state          The initial grid. It is modified by the chain.
+     * @param numJumps       The number of jumps to take, which is also the number of samples.
+     * @param residenceTimes Must have length at least numJumps. The ith entry is overwritten with the weight of the ith sample.
+     * @return The samples, taken before each jump.
+     */
+    public List<Object> sampleJumps(GridDiagram state, int numJumps, double[] residenceTimes) {
+        List<Object> sampleList = new ArrayList<>();
+        for (int t = 0; t < numJumps; t++) {
+            sampleList.add(sampleProperty(state));
+            state = step(state);
+            residenceTimes[t] = getLastResidenceTime();
+        }
+        return sampleList;
+    }
+
+    /**
+     * @return The expected number of canonical steps spent in the grid before the last jump, which is 1 over the probability that a canonical step moves.
+     */
+    public double getLastResidenceTime() {
+        return 1 / lastAcceptanceProbability;
+    }
+
+    @Override
+    public Object sampleProperty(GridDiagram originalGridDiagram) {
+        return originalGridDiagram.copy();
+    }
+
+    @Override
+    public MarkovMoveSelector<GridDiagram, GridMove> getMoveSelector() {
+        return moveSelector;
+    }
+
+    /**
+     * Chooses a move that the canonical algorithm would perform, with probability proportional to how likely it is to be proposed and accepted.
+     * As a side effect this stores the total probability of such a move in lastAcceptanceProbability.
+     */
+    private GridMove getAcceptedMove(GridDiagram gridDiagram, RandomSource random) {
+        int n = gridDiagram.getSize();
+        double otherMoves = (1 - translationProbability) / 3;// The probability of proposing each of commutation, destabilization and stabilization
+        int validCommutations = gridDiagram.countValidCommutations(GridDiagram.MOVE_SUBTYPE_ROW) + gridDiagram.countValidCommutations(GridDiagram.MOVE_SUBTYPE_COLUMN);
+        int validDestabilizations = gridDiagram.countValidDestabilizations(GridDiagram.MOVE_SUBTYPE_ROW) + gridDiagram.countValidDestabilizations(GridDiagram.MOVE_SUBTYPE_COLUMN);
+        // Each row and column is proposed with probability 1/(2n), and valid commutations are always accepted.
+        double commutationRate = otherMoves * validCommutations / (2.0 * n);
+        double destabilizationRate = otherMoves * validDestabilizations / (2.0 * n) * Math.min((n - 1) / (4 * z), 1.0);
+        double stabilizationRate = otherMoves * Math.min(4 * z / n, 1.0);
+        lastAcceptanceProbability = commutationRate + destabilizationRate + stabilizationRate + translationProbability;
+
+        double u = random.nextDouble() * lastAcceptanceProbability;
+        if (u < commutationRate) {
+            return reusableMove.set(gridDiagram, GridDiagram.MOVETYPE_COMMUTATION, validMoveVertex(gridDiagram, GridDiagram.MOVETYPE_COMMUTATION, random.nextInt(validCommutations)), 0);
+        }
+        u -= commutationRate;
+        if (u < destabilizationRate) {
+            return reusableMove.set(gridDiagram, GridDiagram.MOVETYPE_DESTABILIZATION, validMoveVertex(gridDiagram, GridDiagram.MOVETYPE_DESTABILIZATION, random.nextInt(validDestabilizations)), 0);
+        }
+        u -= destabilizationRate;
+        if (u < stabilizationRate || translationProbability == 0) {
+            return reusableMove.set(gridDiagram, GridDiagram.MOVETYPE_STABILIZATION, random.nextInt(n * 4), random.nextInt(n + 1));
+        }
+        return reusableMove.set(gridDiagram, GridDiagram.MOVETYPE_TRANSLATION, random.nextInt(4), 0);
+    }
+
+    /**
+     * Converts the index of a valid commutation or destabilization, counting the valid rows first and then the valid columns,
+     * to the fourTimesRowColIndex argument of the {@link GridMove} constructor.
+     */
+    private static int validMoveVertex(GridDiagram gridDiagram, int moveType, int index) {
+        boolean isCommutation = moveType == GridDiagram.MOVETYPE_COMMUTATION;
+        int validRows = isCommutation ? gridDiagram.countValidCommutations(GridDiagram.MOVE_SUBTYPE_ROW) : gridDiagram.countValidDestabilizations(GridDiagram.MOVE_SUBTYPE_ROW);
+        if (index < validRows) {
+            int row = isCommutation ? gridDiagram.getValidCommutation(GridDiagram.MOVE_SUBTYPE_ROW, index) : gridDiagram.getValidDestabilization(GridDiagram.MOVE_SUBTYPE_ROW, index);
+            return 4 * row;// Even remainders select rows
+        }
+        index -= validRows;
+        int col = isCommutation ? gridDiagram.getValidCommutation(GridDiagram.MOVE_SUBTYPE_COLUMN, index) : gridDiagram.getValidDestabilization(GridDiagram.MOVE_SUBTYPE_COLUMN, index);
+        return 4 * col + 1;// Odd remainders select columns
+    }
+
+    /**
+     * Draws the number of canonical steps up to and including the first one that moves, when each step moves with the given probability.
+     */
+    private static long sampleResidenceTime(double acceptanceProbability, RandomSource random) {
+        if (acceptanceProbability >= 1) {
+            return 1;
+        }
+        double u = 1 - random.nextDouble();// In (0, 1] so that the logarithm is finite
+        double steps = Math.floor(Math.log(u) / Math.log1p(-acceptanceProbability));
+        return steps >= Long.MAX_VALUE - 1 ? Long.MAX_VALUE : (long) steps + 1;
+    }
+}
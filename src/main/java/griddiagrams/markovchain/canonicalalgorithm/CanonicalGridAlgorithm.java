@@ -4,23 +4,130 @@ import griddiagrams.GridDiagram;
 import griddiagrams.markovchain.GridMove;
 import griddiagrams.markovchain.GridMoveSelector;
 import markovchain.MarkovMoveSelector;
+import markovchain.RandomSource;
 import markovchain.metropolishastings.MetropolisHastingsMarkovChain;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
+/**
+ * The canonical grid diagram algorithm: a Metropolis-Hastings chain on grid diagrams of a fixed knot type whose posterior distribution is controlled by the fugacity z.
+ * <p>
+ * {@link #run(GridDiagram, int)} takes a specialized path that makes exactly the same random choices as repeated calls to {@link #step(GridDiagram)},
+ * but works on the grid directly instead of creating a {@link GridMove} per step, so that a step allocates nothing.
+ */
 public class CanonicalGridAlgorithm extends MetropolisHastingsMarkovChain<GridDiagram, GridMove> {
 
+    private static final int[] stabSubTypes = new int[]{GridDiagram.INSERT_XO_COLUMN, GridDiagram.INSERT_OX_COLUMN, GridDiagram.INSERT_XO_ROW, GridDiagram.INSERT_OX_ROW};// As chosen by GridMove
+    private static final int[] horizontalTranslations = new int[]{1, -1, 0, 0};// As chosen by GridMove
+    private static final int[] verticalTranslations = new int[]{0, 0, 1, -1};
+
     private final double z;// Fugacity parameter that chooses the posterior distribution.
-    private final List<Double[]> probabilities = new ArrayList<>();// Since transition probabilities depend on the grid size, they are cached here.
-    private final MarkovMoveSelector<GridDiagram, GridMove> moveSelector = new GridMoveSelector(); // Create a single GridMoveSelector to be returned by getMoveSelector().
+    private final double translationProbability;// The probability of proposing a unit translation at each step.
+    // Since transition probabilities depend on the grid size, they are cached here, indexed by the size before the move.
+    private double[] stabilizationProbabilities = new double[0];
+    private double[] destabilizationProbabilities = new double[0];
+    private final MarkovMoveSelector<GridDiagram, GridMove> moveSelector; // Create a single GridMoveSelector to be returned by getMoveSelector().
 
     /**
      * Main constructor for CanonicalGridAlgorithm
      * @param z The fugacity parameter that decides the posterior distribution of the algorithm.
      */
     public CanonicalGridAlgorithm(double z) {
+        this(z, 0);
+    }
+
+    /**
+     * @param z                      The fugacity parameter that decides the posterior distribution of the algorithm.
+     * @param translationProbability The probability of proposing a unit translation at each step. See {@link GridMoveSelector#GridMoveSelector(double)}.
+     */
+    public CanonicalGridAlgorithm(double z, double translationProbability) {
         this.z = z;
+        this.translationProbability = translationProbability;
+        this.moveSelector = new GridMoveSelector(translationProbability, true);
+    }
+
+    /**
+     * Runs the chain without creating moves. Subclasses get the generic implementation, since they may override how steps are taken.
+     *
+     * @param state {@inheritDoc}
+     * @param steps {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override
+    public GridDiagram run(GridDiagram state, int steps) {
+        if (getClass() != CanonicalGridAlgorithm.class) {
+            return super.run(state, steps);
+        }
+        RandomSource random = getRandom();
+        double translationProbability = this.translationProbability;
+        double[] stabilizationProbabilities = this.stabilizationProbabilities;
+        double[] destabilizationProbabilities = this.destabilizationProbabilities;
+        long accepted = 0;
+        for (int t = 0; t < steps; t++) {
+            // The random numbers are drawn in the same order as GridMoveSelector and MetropolisHastingsMarkovChain.step(), including the acceptance draw for moves that are always accepted.
+            if (translationProbability > 0 && random.nextDouble() < translationProbability) {
+                int direction = random.nextInt(4);
+                random.nextDouble();
+                state.translate(horizontalTranslations[direction], verticalTranslations[direction]);
+                accepted++;
+                continue;
+            }
+            int n = state.getSize();
+            int moveType = random.nextInt(3);
+            int vertex = random.nextInt(n * 4);
+            int rowOrColumn = vertex / 4;
+            boolean isRow = vertex % 2 == 0;
+            switch (moveType) {
+                case GridDiagram.MOVETYPE_COMMUTATION:
+                    random.nextDouble();
+                    if (isRow) {
+                        state.commuteRowIfValid(rowOrColumn);
+                    } else {
+                        state.commuteColIfValid(rowOrColumn);
+                    }
+                    accepted++;// Invalid moves become MOVETYPE_NONE, which is accepted
+                    break;
+                case GridDiagram.MOVETYPE_DESTABILIZATION:
+                    if (isRow ? !state.isDestabilizeRowValid(rowOrColumn) : !state.isDestabilizeColValid(rowOrColumn)) {
+                        random.nextDouble();
+                        accepted++;
+                    } else {
+                        if (n >= destabilizationProbabilities.length) {
+                            cacheProbabilities(n);
+                            stabilizationProbabilities = this.stabilizationProbabilities;
+                            destabilizationProbabilities = this.destabilizationProbabilities;
+                        }
+                        if (random.nextDouble() < destabilizationProbabilities[n]) {
+                            if (isRow) {
+                                state.destabilizeRow(rowOrColumn);
+                            } else {
+                                state.destabilizeCol(rowOrColumn);
+                            }
+                            accepted++;
+                        }
+                    }
+                    break;
+                default:// GridDiagram.MOVETYPE_STABILIZATION
+                    int insertedLocation = random.nextInt(n + 1);
+                    if (n >= stabilizationProbabilities.length) {
+                        cacheProbabilities(n);
+                        stabilizationProbabilities = this.stabilizationProbabilities;
+                        destabilizationProbabilities = this.destabilizationProbabilities;
+                    }
+                    if (random.nextDouble() < stabilizationProbabilities[n]) {
+                        int subType = stabSubTypes[vertex % 4];
+                        if (subType == GridDiagram.INSERT_XO_COLUMN || subType == GridDiagram.INSERT_OX_COLUMN) {
+                            state.stabilize(rowOrColumn, insertedLocation, subType);
+                        } else {
+                            state.stabilize(insertedLocation, rowOrColumn, subType);
+                        }
+                        accepted++;
+                    }
+                    break;
+            }
+        }
+        recordSteps(steps, accepted);
+        return state;
     }
 
     @Override
@@ -35,6 +142,7 @@ public class CanonicalGridAlgorithm extends MetropolisHastingsMarkovChain<GridDi
         switch (move.getMoveType()) {// Acceptance probability depends on what kind of move is being performed
             case GridDiagram.MOVETYPE_NONE:
             case GridDiagram.MOVETYPE_COMMUTATION:
+            case GridDiagram.MOVETYPE_TRANSLATION:
                 delta = 0;
                 break;
             case GridDiagram.MOVETYPE_DESTABILIZATION:
@@ -47,10 +155,27 @@ public class CanonicalGridAlgorithm extends MetropolisHastingsMarkovChain<GridDi
                 System.err.println("Error in CanonicalGridAlgorithm: getAcceptanceProbability");
                 return -1;
         }
-        while (probabilities.size() < n + 1) {// Probability only needs to be calculated if it hasn't already been cached.
-            probabilities.add(new Double[]{1.0, Math.min(4 * z / probabilities.size(), 1.0), Math.min((probabilities.size() - 1) / (4 * z), 1.0)});
+        if (delta == 0) {
+            return 1.0;
+        }
+        if (n >= stabilizationProbabilities.length) {
+            cacheProbabilities(n);
+        }
+        return delta > 0 ? stabilizationProbabilities[n] : destabilizationProbabilities[n];
+    }
+
+    /**
+     * Grows the cached acceptance probabilities, at least doubling them, so that they cover grids of the given size.
+     */
+    private void cacheProbabilities(int n) {
+        int oldLength = stabilizationProbabilities.length;
+        int newLength = Math.max(2 * oldLength, n + 1);
+        stabilizationProbabilities = Arrays.copyOf(stabilizationProbabilities, newLength);
+        destabilizationProbabilities = Arrays.copyOf(destabilizationProbabilities, newLength);
+        for (int size = oldLength; size < newLength; size++) {
+            stabilizationProbabilities[size] = Math.min(4 * z / size, 1.0);
+            destabilizationProbabilities[size] = Math.min((size - 1) / (4 * z), 1.0);
         }
-        return probabilities.get(n)[(delta + 3) % 3];// This could just as easily use delta%3, but I'm not changing this without writing the proper tests first
     }
 
     @Override
@@ -0,0 +1,229 @@
+package griddiagrams.markovchain.canonicalalgorithm;
+
+import griddiagrams.GridDiagram;
+import markovchain.MarkovChain;
+import markovchain.SampleObserver;
+import markovchain.RandomSource;
+import markovchain.SplitMixRandom;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.DoubleFunction;
+
+/**
+ * Parallel tempering (replica exchange) for the canonical grid algorithm.
+ * <p>
+ * One replica runs at each z value of a ladder, each on its own chain, and the replicas run in parallel between exchanges.
+ * After every round, neighbouring replicas try to trade grids (alternating between the even and the odd pairs).
+ * The canonical algorithm at fugacity z samples a grid G of size n with probability proportional to z^n times a factor that does not depend on z,
+ * so the trade between replicas at z_a and z_b holding grids of sizes n_a and n_b is accepted with probability min(1, (z_a/z_b)^(n_b - n_a)).
+ * Each replica still samples its own distribution, but grids that get stuck at one z can escape by travelling along the ladder.
+ * <p>
+ * The fraction of accepted trades for each pair is available from {@link #getSwapRates()} to help choose the ladder: rates near zero mean the neighbouring z values are too far apart.
+ */
+public class ParallelTemperingGridAlgorithm {
+
+    private final double[] zValues;// The ladder, one z value per replica
+    private final List<MarkovChain<GridDiagram, ?>> replicas = new ArrayList<>();
+    private final GridDiagram[] grids;// The grid currently held by each replica
+    private final long[] swapAttempts;// Indexed by the lower replica of each neighbouring pair
+    private final long[] swapsAccepted;
+    private final ExecutorService executor;
+    private RandomSource random = new SplitMixRandom();// Used for the swap decisions. The replicas have their own.
+    private int rounds;// The number of rounds so far, which decides whether the even or odd pairs try to swap
+
+    /**
+     * Runs a {@link CanonicalGridAlgorithm} at each z value.
+     *
+     * @param zValues The ladder of z values, usually in increasing order. Replicas are only swapped with their neighbours in this array.
+     * @param threads The number of replicas that may run at the same time.
+     */
+    public ParallelTemperingGridAlgorithm(double[] zValues, int threads) {
+        this(zValues, CanonicalGridAlgorithm::new, threads);
+    }
+
+    /**
+     * @param zValues     The ladder of z values, usually in increasing order. Replicas are only swapped with their neighbours in this array.
+     * @param chainForZ   Creates the chain for each replica. It must sample the canonical distribution for the given z, e.g. {@link griddiagrams.markovchain.NFoldWayGridAlgorithm}.
+     * @param threads     The number of replicas that may run at the same time.
+     */
+    public ParallelTemperingGridAlgorithm(double[] zValues, DoubleFunction<? extends MarkovChain<GridDiagram, ?>> chainForZ, int threads) {
+        if (zValues.length == 0) {
+            throw new IllegalArgumentException("Parallel tempering needs at least one z value");
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("Parallel tempering needs at least one thread");
+        }
+        this.zValues = zValues.clone();
+        for (double z : zValues) {
+            replicas.add(chainForZ.apply(z));
+        }
+        this.grids = new GridDiagram[zValues.length];
+        this.swapAttempts = new long[Math.max(zValues.length - 1, 0)];
+        this.swapsAccepted = new long[swapAttempts.length];
+        this.executor = Executors.newFixedThreadPool(Math.min(threads, zValues.length), runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);// So a forgotten shutdown() doesn't keep the program alive
+            return thread;
+        });
+        setSeed(random.nextLong());
+    }
+
+    /**
+     * Makes the algorithm reproducible. The replicas are seeded from the given seed as well.
+     *
+     * @param seed The seed.
+     */
+    public void setSeed(long seed) {
+        random = new SplitMixRandom(seed);
+        for (MarkovChain<GridDiagram, ?> replica : replicas) {
+            replica.setRandom(random.split());
+        }
+    }
+
+    /**
+     * Gives every replica its own copy of the starting grid.
+     *
+     * @param gridDiagram The starting grid. It is not modified.
+     */
+    public void initialize(GridDiagram gridDiagram) {
+        for (int i = 0; i < grids.length; i++) {
+            grids[i] = gridDiagram.copy();
+        }
+    }
+
+    /**
+     * Runs all replicas for the given number of rounds, attempting swaps after each round.
+     *
+     * @param numRounds     The number of rounds.
+     * @param stepsPerRound The number of steps each replica takes between swap attempts.
+     */
+    public void run(int numRounds, int stepsPerRound) {
+        if (grids[0] == null) {
+            throw new IllegalStateException("initialize() must be called before run()");
+        }
+        List<Callable<GridDiagram>> tasks = new ArrayList<>();
+        for (int i = 0; i < grids.length; i++) {
+            int replica = i;
+            tasks.add(() -> replicas.get(replica).run(grids[replica], stepsPerRound));
+        }
+        for (int round = 0; round < numRounds; round++) {
+            try {
+                List<Future<GridDiagram>> futures = executor.invokeAll(tasks);
+                for (int i = 0; i < grids.length; i++) {
+                    grids[i] = futures.get(i).get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while running replicas", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("A replica failed", e.getCause());
+            }
+            attemptSwaps(rounds % 2);
+            rounds++;
+        }
+    }
+
+    /**
+     * Takes samples from one replica.
+     *
+     * @param replica         The index in the ladder of the z value to sample.
+     * @param sampleFrequency The number of rounds between samples.
+     * @param stepsPerRound   The number of steps each replica takes between swap attempts.
+     * @param numSamples      The number of desired samples.
+     * @return Copies of the grid held by the replica after each sampleFrequency rounds.
+     */
+    public List<Object> sample(int replica, int sampleFrequency, int stepsPerRound, int numSamples) {
+        List<Object> sampleList = new ArrayList<>();
+        sample(replica, sampleFrequency, stepsPerRound, numSamples, sampleList::add);
+        return sampleList;
+    }
+
+    /**
+     * Takes samples from one replica, handing each to a sink as soon as it is taken instead of collecting them.
+     *
+     * @param replica         The index in the ladder of the z value to sample.
+     * @param sampleFrequency The number of rounds between samples.
+     * @param stepsPerRound   The number of steps each replica takes between swap attempts.
+     * @param numSamples      The number of desired samples.
+     * @param sink            Called on the calling thread with a copy of the grid held by the replica after each sampleFrequency rounds.
+     */
+    public void sample(int replica, int sampleFrequency, int stepsPerRound, int numSamples, Consumer<Object> sink) {
+        for (int t = 0; t < numSamples; t++) {
+            run(sampleFrequency, stepsPerRound);
+            sink.accept(grids[replica].copy());
+        }
+    }
+
+    /**
+     * Shows the grid held by one replica to an observer, without copying the grid.
+     *
+     * @param replica         The index in the ladder of the z value to sample.
+     * @param sampleFrequency The number of rounds between samples.
+     * @param stepsPerRound   The number of steps each replica takes between swap attempts.
+     * @param numSamples      The number of desired samples.
+     * @param observer        Is shown the grid held by the replica after each sampleFrequency rounds, e.g. an {@link markovchain.ObservableRecorder}.
+     */
+    public void sampleObservables(int replica, int sampleFrequency, int stepsPerRound, int numSamples, SampleObserver<? super GridDiagram> observer) {
+        for (int t = 0; t < numSamples; t++) {
+            run(sampleFrequency, stepsPerRound);
+            observer.record(grids[replica]);
+        }
+    }
+
+    /**
+     * @param replica The index in the ladder of a z value.
+     * @return The grid currently held by that replica. It will be modified by later calls to {@link #run(int, int)}.
+     */
+    public GridDiagram getGrid(int replica) {
+        return grids[replica];
+    }
+
+    /**
+     * @return The ladder of z values.
+     */
+    public double[] getZValues() {
+        return zValues.clone();
+    }
+
+    /**
+     * @return The ith entry is the fraction of attempted swaps between replicas i and i+1 that were accepted.
+     */
+    public double[] getSwapRates() {
+        double[] rates = new double[swapAttempts.length];
+        for (int i = 0; i < rates.length; i++) {
+            rates[i] = swapAttempts[i] == 0 ? 0 : (double) swapsAccepted[i] / swapAttempts[i];
+        }
+        return rates;
+    }
+
+    /**
+     * Stops the worker threads. The algorithm cannot be run afterwards.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Attempts to swap the grids of every pair (i, i+1) with i of the given parity.
+     */
+    private void attemptSwaps(int parity) {
+        for (int i = parity; i + 1 < grids.length; i += 2) {
+            swapAttempts[i]++;
+            int sizeDifference = grids[i + 1].getSize() - grids[i].getSize();
+            double logRatio = sizeDifference * Math.log(zValues[i] / zValues[i + 1]);
+            if (logRatio >= 0 || random.nextDouble() < Math.exp(logRatio)) {
+                GridDiagram temp = grids[i];
+                grids[i] = grids[i + 1];
+                grids[i + 1] = temp;
+                swapsAccepted[i]++;
+            }
+        }
+    }
+}
@@ -6,15 +6,21 @@ import griddiagrams.markovchain.GridMoveSelector;
 import markovchain.MarkovMoveSelector;
 import markovchain.wanglandau.WangLandauMarkovChain;
 import markovchain.wanglandau.WangLandauState;
+import markovchain.wanglandau.WangLandauWeights;
 import markovchain.wanglandau.energy.WangLandauEnergy;
 
-import java.util.HashMap;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 public class GridDiagramWangLandau<E extends WangLandauEnergy<GridDiagram, GridMove, E>> extends WangLandauMarkovChain<GridDiagram, GridMove, E> {
 
-    private final MarkovMoveSelector<GridDiagram, GridMove> markovMoveSelector = new GridMoveSelector();// Create a single GridMoveSelector to be returned by getMoveSelector()
+    private final MarkovMoveSelector<GridDiagram, GridMove> markovMoveSelector = new GridMoveSelector(0, true);// Create a single GridMoveSelector to be returned by getMoveSelector(). It reuses one GridMove for every step.
     private final WangLandauEnergy.WangLandauEnergyFactory<GridDiagram, GridMove, E> energyFactory;// This is how the energy for the algorithm is determined
+    private final int minSize;// Together with maxSize, the window of grid sizes the algorithm is confined to
     private final int maxSize;// Used to constrain the algorithm to a finite algorithm
+    private double flatness = 0;// Training also requires the smallest count in the histogram to be at least this fraction of the mean count
+    private boolean orderStatisticStorage = false;// Whether grids read from a checkpoint use GridDiagram.setOrderStatisticStorage
 
     /** The main constructor for GridDiagramWangLandau.
      *
@@ -22,8 +28,44 @@ public class GridDiagramWangLandau<E extends WangLandauEnergy<GridDiagram, GridM
      * @param maxSize The largest permissible size for the grid diagrams in this algorithm.
      */
     public GridDiagramWangLandau(WangLandauEnergy.WangLandauEnergyFactory<GridDiagram, GridMove, E> energyFactory, int maxSize) {
+        this(energyFactory, 0, maxSize);
+    }
+
+    /**
+     * Confines the algorithm to a window of grid sizes, as for one window of a {@link markovchain.wanglandau.ReplicaExchangeWangLandau}.
+     *
+     * @param energyFactory This defines the energy used to define each Wang-Landau weight.
+     * @param minSize       The smallest permissible size for the grid diagrams in this algorithm. Smaller initial grids are stabilized until they reach it.
+     * @param maxSize       The largest permissible size for the grid diagrams in this algorithm.
+     */
+    public GridDiagramWangLandau(WangLandauEnergy.WangLandauEnergyFactory<GridDiagram, GridMove, E> energyFactory, int minSize, int maxSize) {
+        this.minSize = minSize;
         this.maxSize = maxSize;
         this.energyFactory = energyFactory;
+        getWeights().setCountThreshold(10000);
+    }
+
+    /**
+     * @param minCount The number of times every energy found must be visited before training is over. This is 10000 by default.
+     */
+    public void setMinCount(long minCount) {
+        getWeights().setCountThreshold(minCount);
+    }
+
+    /**
+     * @param flatness How flat the histogram must be for training to be over: the smallest count must be at least this fraction of the mean count, e.g. 0.8.
+     *                 This is 0 by default, so that only {@link #setMinCount(long)} matters.
+     */
+    public void setFlatness(double flatness) {
+        this.flatness = flatness;
+    }
+
+    /**
+     * @param enabled Whether the grid read by {@link #resumeTraining()} should use {@link GridDiagram#setOrderStatisticStorage(boolean)}, like the grid training started from.
+     *                Checkpoints do not record the storage, so this is false by default.
+     */
+    public void setOrderStatisticStorage(boolean enabled) {
+        this.orderStatisticStorage = enabled;
     }
 
     @Override
@@ -54,20 +96,12 @@ public class GridDiagramWangLandau<E extends WangLandauEnergy<GridDiagram, GridM
 
     @Override
     public boolean isTrainingOver() {
-        HashMap<E, Integer> histogram = getHistogram();
-        //System.out.println("isTrainingOver called");
-        //System.out.println(getHistogram().toString());
-        for (E key : histogram.keySet()) {
-            //System.out.println(key.toString()+" "+histogram.get(key));
-            if (histogram.get(key) < 10000) {
-                return false;
-            }
-        }
-        return true;
+        WangLandauWeights<E> weights = getWeights();// Its statistics are kept up to date as it is updated, so this takes constant time
+        return weights.getBinCount() > 0 && weights.getBinsBelowThreshold() == 0 && weights.getMinCount() >= flatness * weights.getMeanCount();
     }
 
     /**
-     * By default this is set to bound the grid size above by the maxSize given to the constructor.
+     * By default this is set to bound the grid size between the minSize and maxSize given to the constructor.
      * Override this if a different constraint is desired.
      *
      * @param move The proposed move that might push the state outside of the desired constraints
@@ -75,7 +109,44 @@ public class GridDiagramWangLandau<E extends WangLandauEnergy<GridDiagram, GridM
      */
     @Override
     public boolean isMarkovMoveMoveWithinConstraints(GridMove move) {
-        return (move.getGridFromBeforeMove().getSize() < maxSize || move.getMoveType() != GridDiagram.MOVETYPE_STABILIZATION);
+        int size = move.getGridFromBeforeMove().getSize();
+        return (size < maxSize || move.getMoveType() != GridDiagram.MOVETYPE_STABILIZATION) && (size > minSize || move.getMoveType() != GridDiagram.MOVETYPE_DESTABILIZATION);
+    }
+
+    @Override
+    protected boolean isStateWithinConstraints(GridDiagram state) {
+        return state.getSize() >= minSize && state.getSize() <= maxSize;
+    }
+
+    /**
+     * Stabilizes grids that are smaller than the minSize given to the constructor at random places until they reach it.
+     */
+    @Override
+    protected GridDiagram moveIntoConstraints(GridDiagram state) {
+        while (state.getSize() < minSize) {
+            int size = state.getSize();
+            int type = getRandom().nextInt(4);// One of the GridDiagram.INSERT constants
+            int line = getRandom().nextInt(size);
+            int insertedLocation = getRandom().nextInt(size + 1);
+            if (type == GridDiagram.INSERT_XO_COLUMN || type == GridDiagram.INSERT_OX_COLUMN) {
+                state.stabilize(line, insertedLocation, type);
+            } else {
+                state.stabilize(insertedLocation, line, type);
+            }
+        }
+        return state;
+    }
+
+    @Override
+    protected void writeState(GridDiagram state, DataOutput out) throws IOException {
+        state.write(out);
+    }
+
+    @Override
+    protected GridDiagram readState(DataInput in) throws IOException {
+        GridDiagram state = GridDiagram.read(in);
+        state.setOrderStatisticStorage(orderStatisticStorage);
+        return state;
     }
 
     @Override
@@ -3,6 +3,8 @@ package griddiagrams.markovchain.wanglandau
 import griddiagrams.GridDiagram
 import griddiagrams.markovchain.GridMove
 import markovchain.wanglandau.energy.WangLandauEnergy
+import java.io.DataInput
+import java.io.DataOutput
 import kotlin.system.exitProcess
 
 class SizeEnergy private constructor(private val size: Int) : WangLandauEnergy<GridDiagram, GridMove, SizeEnergy>() {
@@ -12,11 +14,20 @@ class SizeEnergy private constructor(private val size: Int) : WangLandauEnergy<G
     }
 
     override fun getNextEnergyFromMove(move: GridMove): SizeEnergy {
+        val nextSize = getNextSize(move)
+        return if (nextSize == size) this else SizeEnergy(nextSize) // Energies are immutable, so there is no need for a new one
+    }
+
+    override fun getNextCoordinatesFromMove(move: GridMove, coordinates: IntArray, offset: Int) {
+        coordinates[offset] = getNextSize(move)
+    }
+
+    private fun getNextSize(move: GridMove): Int {
         //The change in grid size from performing a move depends only on the move chosen.
         return when (move.moveType) {
-            GridDiagram.MOVETYPE_NONE, GridDiagram.MOVETYPE_COMMUTATION -> SizeEnergy(size)
-            GridDiagram.MOVETYPE_DESTABILIZATION -> SizeEnergy(size - 1)
-            GridDiagram.MOVETYPE_STABILIZATION -> SizeEnergy(size + 1)
+            GridDiagram.MOVETYPE_NONE, GridDiagram.MOVETYPE_COMMUTATION, GridDiagram.MOVETYPE_TRANSLATION -> size
+            GridDiagram.MOVETYPE_DESTABILIZATION -> size - 1
+            GridDiagram.MOVETYPE_STABILIZATION -> size + 1
             else -> {
                 System.err.println("Error in SizeEnergy.nextEnergyFromMove(), type not found")
                 exitProcess(1)
@@ -24,6 +35,14 @@ class SizeEnergy private constructor(private val size: Int) : WangLandauEnergy<G
         }
     }
 
+    override fun getDimension(): Int = 1
+
+    override fun getCoordinate(index: Int): Int = size
+
+    override fun write(out: DataOutput) {
+        out.writeInt(size)
+    }
+
     override fun hashCode(): Int {
         //Since this is an integer energy, its value is sufficient as a hash code.
         return size
@@ -45,6 +64,10 @@ class SizeEnergy private constructor(private val size: Int) : WangLandauEnergy<G
         override fun getEnergyFromState(state: GridDiagram): SizeEnergy {
             return SizeEnergy(state.size)
         }
+
+        override fun readEnergy(input: DataInput): SizeEnergy {
+            return SizeEnergy(input.readInt())
+        }
     }
 
 }
\ No newline at end of file
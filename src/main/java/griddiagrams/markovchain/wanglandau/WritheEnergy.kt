@@ -3,6 +3,8 @@ package griddiagrams.markovchain.wanglandau
 import griddiagrams.GridDiagram
 import griddiagrams.markovchain.GridMove
 import markovchain.wanglandau.energy.WangLandauEnergy
+import java.io.DataInput
+import java.io.DataOutput
 
 class WritheEnergy(private val writhe: Int) : WangLandauEnergy<GridDiagram, GridMove, WritheEnergy>() {
 
@@ -12,11 +14,23 @@ class WritheEnergy(private val writhe: Int) : WangLandauEnergy<GridDiagram, Grid
     }
 
     override fun getNextEnergyFromMove(move: GridMove): WritheEnergy {
-        val deltaWrithe = move.gridFromBeforeMove.deltaWrithe(move.moveType, move.moveArguments)
-        return WritheEnergy(writhe + deltaWrithe)
+        val deltaWrithe = move.deltaWrithe // Kept by the move, so that performing a translation does not calculate it again
+        return if (deltaWrithe == 0) this else WritheEnergy(writhe + deltaWrithe)
     }
 
+    override fun getNextCoordinatesFromMove(move: GridMove, coordinates: IntArray, offset: Int) {
+        coordinates[offset] = writhe + move.deltaWrithe
+    }
+
+
+
+    override fun getDimension(): Int = 1
 
+    override fun getCoordinate(index: Int): Int = writhe
+
+    override fun write(out: DataOutput) {
+        out.writeInt(writhe)
+    }
 
     override fun hashCode(): Int {
         return writhe
@@ -37,7 +51,11 @@ class WritheEnergy(private val writhe: Int) : WangLandauEnergy<GridDiagram, Grid
 
     class WritheEnergyFactory : WangLandauEnergyFactory<GridDiagram, GridMove, WritheEnergy>() {
         override fun getEnergyFromState(state: GridDiagram): WritheEnergy {
-            return WritheEnergy(state.calcWrithe())
+            return WritheEnergy(state.writhe)
+        }
+
+        override fun readEnergy(input: DataInput): WritheEnergy {
+            return WritheEnergy(input.readInt())
         }
     }
 }
\ No newline at end of file
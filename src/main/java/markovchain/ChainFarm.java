@@ -0,0 +1,171 @@
+package markovchain;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Runs several independent copies of a Markov chain in parallel on a fixed number of threads.
+ * <p>
+ * Every chain gets its own {@link RandomSource}, split from a single source owned by the farm in the order the chains are created,
+ * so a farm with a fixed seed gives the same results no matter how many threads it uses.
+ *
+ * @param <MC> The class of the chains being run. Any {@link MarkovChain} subclass works.
+ */
+public class ChainFarm<MC extends MarkovChain<?, ?>> {
+
+    private final Supplier<MC> chainFactory;// Creates each of the chains
+    private final int threads;// The size of the worker pool
+    private RandomSource random = new SplitMixRandom();// The chains' random sources are split from this one
+
+    /**
+     * @param chainFactory Called once per chain, on the calling thread, to create a new chain.
+     * @param threads      The number of chains that may run at the same time. Must be at least 1.
+     */
+    public ChainFarm(Supplier<MC> chainFactory, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("ChainFarm needs at least one thread");
+        }
+        this.chainFactory = chainFactory;
+        this.threads = threads;
+    }
+
+    /**
+     * Makes the farm reproducible. See {@link MarkovChain#setSeed(long)}.
+     *
+     * @param seed The seed from which the seeds of the chains are derived.
+     */
+    public void setSeed(long seed) {
+        random = new SplitMixRandom(seed);
+    }
+
+    /**
+     * Creates the given number of chains and runs a job on each of them, using at most the number of threads given to the constructor.
+     * The jobs run concurrently, so they should not share mutable state other than through thread-safe objects.
+     *
+     * @param numChains The number of chains to run.
+     * @param job       What to do with each chain, e.g. pick a starting state, warm up and take samples. It is called with a freshly created and seeded chain.
+     * @param <R>       The type of result of each job.
+     * @return The result of every chain in the order the chains were created.
+     */
+    public <R> List<ChainResult<R>> run(int numChains, Function<MC, R> job) {
+        List<MC> chains = new ArrayList<>();
+        for (int i = 0; i < numChains; i++) {
+            MC chain = chainFactory.get();
+            chain.setRandom(random.split());
+            chains.add(chain);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(numChains, 1)));
+        try {
+            List<Future<ChainResult<R>>> futures = new ArrayList<>();
+            for (int i = 0; i < numChains; i++) {
+                int chainIndex = i;
+                MC chain = chains.get(i);
+                futures.add(executor.submit(() -> {
+                    long start = System.nanoTime();
+                    R result = job.apply(chain);
+                    return new ChainResult<>(chainIndex, result, chain.getStepsTaken(), chain.getMovesAccepted(), System.nanoTime() - start);
+                }));
+            }
+            List<ChainResult<R>> results = new ArrayList<>();
+            for (Future<ChainResult<R>> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for chains to finish", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A chain failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Concatenates the sample lists returned by the chains, in chain order.
+     *
+     * @param results The results of {@link #run(int, Function)} where each job returned a list of samples.
+     * @return All of the samples in a single list.
+     */
+    public static List<Object> mergeSamples(List<? extends ChainResult<? extends List<?>>> results) {
+        List<Object> merged = new ArrayList<>();
+        for (ChainResult<? extends List<?>> result : results) {
+            merged.addAll(result.getResult());
+        }
+        return merged;
+    }
+
+    /**
+     * The outcome of running one chain of a {@link ChainFarm}, with statistics about the run.
+     *
+     * @param <R> The type of the job's result.
+     */
+    public static class ChainResult<R> {
+        private final int chainIndex;
+        private final R result;
+        private final long stepsTaken;
+        private final long movesAccepted;
+        private final long elapsedNanos;
+
+        ChainResult(int chainIndex, R result, long stepsTaken, long movesAccepted, long elapsedNanos) {
+            this.chainIndex = chainIndex;
+            this.result = result;
+            this.stepsTaken = stepsTaken;
+            this.movesAccepted = movesAccepted;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return The position of this chain among the chains of the farm.
+         */
+        public int getChainIndex() {
+            return chainIndex;
+        }
+
+        /**
+         * @return What the job returned for this chain.
+         */
+        public R getResult() {
+            return result;
+        }
+
+        /**
+         * @return See {@link MarkovChain#getStepsTaken()}.
+         */
+        public long getStepsTaken() {
+            return stepsTaken;
+        }
+
+        /**
+         * @return See {@link MarkovChain#getMovesAccepted()}.
+         */
+        public long getMovesAccepted() {
+            return movesAccepted;
+        }
+
+        /**
+         * @return The fraction of steps that performed their proposed move.
+         */
+        public double getAcceptanceRate() {
+            return stepsTaken == 0 ? 0 : (double) movesAccepted / stepsTaken;
+        }
+
+        /**
+         * @return The wall-clock time the job took.
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("chain %d: %d steps, acceptance rate %.4f, %.3f s", chainIndex, stepsTaken, getAcceptanceRate(), elapsedNanos / 1e9);
+        }
+    }
+}
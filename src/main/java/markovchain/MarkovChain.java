@@ -2,6 +2,7 @@ package markovchain;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * This class represents the core logic of a Markov chain as it is typically used for Monte Carlo sampling.
@@ -11,6 +12,10 @@ import java.util.List;
  */
 public abstract class MarkovChain<MarkovState, MM extends MarkovMove<MarkovState>> {
 
+    private RandomSource random = new SplitMixRandom();// Every random choice made by this chain comes from here.
+    private long stepsTaken;// The number of steps taken so far, for statistics
+    private long movesAccepted;// The number of those steps that performed their proposed move
+
     /**
      * Perform a single step in the Markov chain.
      *
@@ -18,10 +23,12 @@ public abstract class MarkovChain<MarkovState, MM extends MarkovMove<MarkovState
      * @return The state that was stepped to.
      */
     public MarkovState step(MarkovState state) {
-        MM move = getMoveSelector().getRandomMove(state);
+        MM move = getMoveSelector().getRandomMove(state, getRandom());
         if (isMoveWithinConstraints(move)) {
+            recordSteps(1, 1);
             return move.perform();
         } else {
+            recordSteps(1, 0);
             return state;
         }
     }
@@ -51,11 +58,95 @@ public abstract class MarkovChain<MarkovState, MM extends MarkovMove<MarkovState
      */
     public List<Object> sample(MarkovState state, int sampleFrequency, int numSamples) {
         List<Object> sampleList = new ArrayList<>();
+        sample(state, sampleFrequency, numSamples, sampleList::add);
+        return sampleList;
+    }
+
+    /**
+     * Perform Monte Carlo sampling of the Markov chain, handing each sample to a sink as soon as it is taken instead of collecting them.
+     * The chain keeps no reference to the samples, so memory use does not grow with the number of samples unless the sink keeps them.
+     *
+     * @param state           The initial state of the Markov chain. This object may be modified by the chain.
+     * @param sampleFrequency The number of steps to take within the Markov chain between each sample.
+     * @param numSamples      The number of desired samples.
+     * @param sink            Called with each sample, in order, on the thread running the chain.
+     * @return The state obtained after taking the last sample, from which the chain can be continued.
+     */
+    public MarkovState sample(MarkovState state, int sampleFrequency, int numSamples, Consumer<Object> sink) {
         for (int t = 0; t < numSamples; t++) {
             state = run(state, sampleFrequency);
-            sampleList.add(sampleProperty(state));
+            sink.accept(sampleProperty(state));
         }
-        return sampleList;
+        return state;
+    }
+
+    /**
+     * Perform Monte Carlo sampling of scalar observables of the Markov chain.
+     * Unlike {@link #sample(Object, int, int)}, the states are neither copied nor passed to {@link #sampleProperty(Object)}: the observer reads what it needs straight from the state.
+     *
+     * @param state           The initial state of the Markov chain. This object may be modified by the chain.
+     * @param sampleFrequency The number of steps to take within the Markov chain between each sample.
+     * @param numSamples      The number of desired samples.
+     * @param observer        Is shown the state at each sample, e.g. an {@link ObservableRecorder} or a {@link markovchain.statistics.ObservableStatistics}.
+     * @return The state obtained after taking the last sample, from which the chain can be continued.
+     */
+    public MarkovState sampleObservables(MarkovState state, int sampleFrequency, int numSamples, SampleObserver<? super MarkovState> observer) {
+        for (int t = 0; t < numSamples; t++) {
+            state = run(state, sampleFrequency);
+            observer.record(state);
+        }
+        return state;
+    }
+
+    /**
+     * @return The source of random numbers used by this chain.
+     */
+    public RandomSource getRandom() {
+        return random;
+    }
+
+    /**
+     * Replaces the source of random numbers used by this chain.
+     * Chains that run on different threads should each have their own source, e.g. obtained from {@link RandomSource#split()}.
+     *
+     * @param random The new source of random numbers.
+     */
+    public void setRandom(RandomSource random) {
+        this.random = random;
+    }
+
+    /**
+     * Makes the chain reproducible: two chains given the same seed and the same initial state take the same steps.
+     *
+     * @param seed The seed for a new {@link SplitMixRandom}.
+     */
+    public void setSeed(long seed) {
+        setRandom(new SplitMixRandom(seed));
+    }
+
+    /**
+     * @return The total number of steps this chain has taken.
+     */
+    public long getStepsTaken() {
+        return stepsTaken;
+    }
+
+    /**
+     * @return The number of steps taken by this chain that performed the proposed move (including moves that leave the state as it is).
+     */
+    public long getMovesAccepted() {
+        return movesAccepted;
+    }
+
+    /**
+     * Subclasses that override {@link #step(Object)} or {@link #run(Object, int)} should call this so that {@link #getStepsTaken()} and {@link #getMovesAccepted()} stay correct.
+     *
+     * @param steps    The number of steps taken.
+     * @param accepted How many of them performed the proposed move.
+     */
+    protected void recordSteps(long steps, long accepted) {
+        stepsTaken += steps;
+        movesAccepted += accepted;
     }
 
     /**
@@ -4,6 +4,10 @@ package markovchain;
  * Transitions can be chosen in several different ways for a given state space.
  * The way transitions are chosen can define the Markov chain itself.
  * This class represents the way that Markov steps are selected, which may affect detailed balance calculations.
+ * <p>
+ * To avoid allocating a move on every step, a selector may return the same move object from every call, reset to describe the new move.
+ * Callers must therefore be done with a move (performing it or not) before selecting the next one, and must not keep moves around.
+ * {@link MarkovChain#step(Object)} follows this rule.
  *
  * @param <MarkovState> The class representing the objects in the Markov chain.
  * @param <MM>          The MarkovMove class being used by the Markov chain.
@@ -11,9 +15,10 @@ package markovchain;
 public interface MarkovMoveSelector<MarkovState, MM extends MarkovMove<MarkovState>> {
 
     /**
-     * @param state The current MarkovState, from which a transition is being chosen.
+     * @param state  The current MarkovState, from which a transition is being chosen.
+     * @param random The random numbers of the chain asking for the move. Selectors should use it rather than a shared generator so that runs are reproducible.
      * @return A MarkovMove which represents a potential transition to a next state.
      */
-    MM getRandomMove(MarkovState state);
+    MM getRandomMove(MarkovState state, RandomSource random);
 
 }
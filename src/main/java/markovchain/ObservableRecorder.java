@@ -0,0 +1,306 @@
+package markovchain;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Records scalar observables of the states of a Markov chain into primitive column buffers, without boxing or copying the states.
+ * <p>
+ * Each observable becomes a named int, long or double column, and every call to {@link #record(Object)} appends one row.
+ * Without a writer the columns grow for as long as the recorder is used and can be read back with e.g. {@link #getIntColumn(String)}.
+ * With a writer, the rows are written out as tab-separated text (after a header line holding the column names) every time chunkSize rows have built up,
+ * so memory use stays bounded no matter how many samples are taken.
+ * <p>
+ * Recording is synchronized, so one recorder can be shared between chains running on different threads. Their rows are then interleaved in the order they are recorded.
+ *
+ * @param <S> The class of states being observed.
+ */
+public class ObservableRecorder<S> implements SampleObserver<S>, Closeable {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private final List<Column<S>> columns = new ArrayList<>();
+    private final Writer out;// Where full chunks are written, or null to keep everything in memory
+    private final int chunkSize;
+    private int rows;// The number of rows currently held in the column buffers
+    private long rowsRecorded;// The number of rows recorded in total, including those already written
+    private boolean headerWritten;
+
+    /**
+     * Creates a recorder that keeps every row in memory.
+     */
+    public ObservableRecorder() {
+        this.out = null;
+        this.chunkSize = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Creates a recorder that writes its rows out in chunks.
+     *
+     * @param out       Where to write the rows. It is flushed after each chunk but not closed by {@link #close()}.
+     * @param chunkSize The number of rows to hold in memory before writing them out. Must be at least 1.
+     */
+    public ObservableRecorder(Writer out, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be at least 1");
+        }
+        this.out = out;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Adds an int column. Columns must all be added before the first row is recorded.
+     *
+     * @param name       The name of the column.
+     * @param observable Computes the value of the column for a state.
+     * @return This recorder, so that calls can be chained.
+     */
+    public ObservableRecorder<S> addIntObservable(String name, ToIntFunction<? super S> observable) {
+        return addColumn(new IntColumn<>(name, observable));
+    }
+
+    /**
+     * Adds a long column. Columns must all be added before the first row is recorded.
+     *
+     * @param name       The name of the column.
+     * @param observable Computes the value of the column for a state.
+     * @return This recorder, so that calls can be chained.
+     */
+    public ObservableRecorder<S> addLongObservable(String name, ToLongFunction<? super S> observable) {
+        return addColumn(new LongColumn<>(name, observable));
+    }
+
+    /**
+     * Adds a double column. Columns must all be added before the first row is recorded.
+     *
+     * @param name       The name of the column.
+     * @param observable Computes the value of the column for a state.
+     * @return This recorder, so that calls can be chained.
+     */
+    public ObservableRecorder<S> addDoubleObservable(String name, ToDoubleFunction<? super S> observable) {
+        return addColumn(new DoubleColumn<>(name, observable));
+    }
+
+    /**
+     * Appends a row holding every observable of the given state, writing out the buffered rows if there are now chunkSize of them.
+     *
+     * @param state The state to observe. It is not kept.
+     */
+    @Override
+    public synchronized void record(S state) {
+        for (Column<S> column : columns) {
+            column.append(rows, state);
+        }
+        rows++;
+        rowsRecorded++;
+        if (rows >= chunkSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes out the buffered rows, if the recorder has a writer.
+     *
+     * @throws UncheckedIOException If the rows cannot be written.
+     */
+    public synchronized void flush() {
+        if (out == null) {
+            return;
+        }
+        try {
+            if (!headerWritten) {
+                for (int c = 0; c < columns.size(); c++) {
+                    out.write(c == 0 ? "" : "\t");
+                    out.write(columns.get(c).name);
+                }
+                out.write('\n');
+                headerWritten = true;
+            }
+            StringBuilder line = new StringBuilder();
+            for (int row = 0; row < rows; row++) {
+                line.setLength(0);
+                for (int c = 0; c < columns.size(); c++) {
+                    if (c > 0) {
+                        line.append('\t');
+                    }
+                    columns.get(c).appendValue(row, line);
+                }
+                line.append('\n');
+                out.append(line);
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        rows = 0;
+    }
+
+    /**
+     * Writes out any remaining rows. The writer itself is left open.
+     */
+    @Override
+    public void close() {
+        flush();
+    }
+
+    /**
+     * @return The number of rows currently held in memory, i.e. recorded but not yet written out.
+     */
+    public synchronized int size() {
+        return rows;
+    }
+
+    /**
+     * @return The total number of rows recorded.
+     */
+    public synchronized long getRowsRecorded() {
+        return rowsRecorded;
+    }
+
+    /**
+     * @param name The name of an int column.
+     * @return The values of the column in the rows currently held in memory.
+     */
+    public synchronized int[] getIntColumn(String name) {
+        return Arrays.copyOf(getColumn(name, IntColumn.class).values, rows);
+    }
+
+    /**
+     * @param name The name of a long column.
+     * @return The values of the column in the rows currently held in memory.
+     */
+    public synchronized long[] getLongColumn(String name) {
+        return Arrays.copyOf(getColumn(name, LongColumn.class).values, rows);
+    }
+
+    /**
+     * @param name The name of a double column.
+     * @return The values of the column in the rows currently held in memory.
+     */
+    public synchronized double[] getDoubleColumn(String name) {
+        return Arrays.copyOf(getColumn(name, DoubleColumn.class).values, rows);
+    }
+
+    private synchronized ObservableRecorder<S> addColumn(Column<S> column) {
+        if (rowsRecorded > 0) {
+            throw new IllegalStateException("Observables must be added before recording starts");
+        }
+        for (Column<S> existing : columns) {
+            if (existing.name.equals(column.name)) {
+                throw new IllegalArgumentException("There is already an observable named " + column.name);
+            }
+        }
+        columns.add(column);
+        return this;
+    }
+
+    private <C extends Column<?>> C getColumn(String name, Class<C> columnClass) {
+        for (Column<S> column : columns) {
+            if (column.name.equals(name)) {
+                if (!columnClass.isInstance(column)) {
+                    throw new IllegalArgumentException("The observable " + name + " is not stored in a " + columnClass.getSimpleName());
+                }
+                return columnClass.cast(column);
+            }
+        }
+        throw new IllegalArgumentException("There is no observable named " + name);
+    }
+
+    /**
+     * A growable buffer holding the values of one observable.
+     */
+    private abstract static class Column<S> {
+        final String name;
+
+        Column(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Stores the observable of the given state in the given row, growing the buffer if needed.
+         */
+        abstract void append(int row, S state);
+
+        /**
+         * Appends the value in the given row as text.
+         */
+        abstract void appendValue(int row, StringBuilder line);
+    }
+
+    private static class IntColumn<S> extends Column<S> {
+        private final ToIntFunction<? super S> observable;
+        int[] values = new int[DEFAULT_CAPACITY];
+
+        IntColumn(String name, ToIntFunction<? super S> observable) {
+            super(name);
+            this.observable = observable;
+        }
+
+        @Override
+        void append(int row, S state) {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, 2 * values.length);
+            }
+            values[row] = observable.applyAsInt(state);
+        }
+
+        @Override
+        void appendValue(int row, StringBuilder line) {
+            line.append(values[row]);
+        }
+    }
+
+    private static class LongColumn<S> extends Column<S> {
+        private final ToLongFunction<? super S> observable;
+        long[] values = new long[DEFAULT_CAPACITY];
+
+        LongColumn(String name, ToLongFunction<? super S> observable) {
+            super(name);
+            this.observable = observable;
+        }
+
+        @Override
+        void append(int row, S state) {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, 2 * values.length);
+            }
+            values[row] = observable.applyAsLong(state);
+        }
+
+        @Override
+        void appendValue(int row, StringBuilder line) {
+            line.append(values[row]);
+        }
+    }
+
+    private static class DoubleColumn<S> extends Column<S> {
+        private final ToDoubleFunction<? super S> observable;
+        double[] values = new double[DEFAULT_CAPACITY];
+
+        DoubleColumn(String name, ToDoubleFunction<? super S> observable) {
+            super(name);
+            this.observable = observable;
+        }
+
+        @Override
+        void append(int row, S state) {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, 2 * values.length);
+            }
+            values[row] = observable.applyAsDouble(state);
+        }
+
+        @Override
+        void appendValue(int row, StringBuilder line) {
+            line.append(values[row]);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package markovchain;
+
+import markovchain.statistics.AutocorrelationEstimator;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Warms up a Markov chain and measures how many steps it needs between samples, instead of guessing both by hand.
+ * <p>
+ * The pilot runs in phases of doubling length, measuring the observables every {@link #setInterval(int) interval} steps.
+ * Each phase estimates the integrated autocorrelation time of every observable with an {@link AutocorrelationEstimator}, and serves as warm-up for the next phase,
+ * so that the estimate is not thrown off by the chain still moving away from its initial state.
+ * The pilot stops once a phase is long enough for the estimates to be {@link AutocorrelationEstimator#isReliable() reliable} and is at least
+ * {@link #setRunLength(double) runLength} autocorrelation times long, after which
+ * {@link #getSampleFrequency()} steps between samples make them close to independent and all the steps taken so far serve as the warm-up.
+ *
+ * @param <S> The class of states of the chain.
+ */
+public class PilotRun<S> {
+
+    private final Map<String, ToDoubleFunction<? super S>> observables = new LinkedHashMap<>();
+    private int interval = 100;// The number of steps between measurements
+    private int minMeasurements = 1024;// The number of measurements in the first phase
+    private double runLength = 50;// How many autocorrelation times the last phase must be
+    private long maxSteps = Long.MAX_VALUE;// The pilot gives up on getting a reliable estimate after this many steps
+    private final Map<String, AutocorrelationEstimator> estimators = new LinkedHashMap<>();
+    private long burnIn;
+
+    /**
+     * Adds an observable whose autocorrelation time is measured. The slowest one decides the sample frequency.
+     *
+     * @param name       The name of the observable, for {@link #toString()}.
+     * @param observable Computes the observable for a state.
+     * @return This pilot, so that calls can be chained.
+     */
+    public PilotRun<S> addObservable(String name, ToDoubleFunction<? super S> observable) {
+        observables.put(name, observable);
+        return this;
+    }
+
+    /**
+     * @param interval The number of steps between measurements of the observables. The sample frequency is a multiple of this. Must be at least 1.
+     * @return This pilot, so that calls can be chained.
+     */
+    public PilotRun<S> setInterval(int interval) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("interval must be at least 1");
+        }
+        this.interval = interval;
+        return this;
+    }
+
+    /**
+     * @param minMeasurements The number of measurements taken in the first phase. The autocorrelation estimator needs a few hundred to say anything.
+     * @return This pilot, so that calls can be chained.
+     */
+    public PilotRun<S> setMinMeasurements(int minMeasurements) {
+        this.minMeasurements = minMeasurements;
+        return this;
+    }
+
+    /**
+     * @param runLength How many autocorrelation times long the last phase must be. Longer gives a more reliable estimate.
+     * @return This pilot, so that calls can be chained.
+     */
+    public PilotRun<S> setRunLength(double runLength) {
+        this.runLength = runLength;
+        return this;
+    }
+
+    /**
+     * @param maxSteps The most steps the pilot may take. If it runs out, the estimate from its last phase is used anyway.
+     * @return This pilot, so that calls can be chained.
+     */
+    public PilotRun<S> setMaxSteps(long maxSteps) {
+        this.maxSteps = maxSteps;
+        return this;
+    }
+
+    /**
+     * Runs the pilot.
+     *
+     * @param chain The chain to run.
+     * @param state The initial state of the chain. This object may be modified by the chain.
+     * @param <MM>  The class of moves of the chain.
+     * @return The state at the end of the pilot, from which sampling should continue.
+     */
+    public <MM extends MarkovMove<S>> S run(MarkovChain<S, MM> chain, S state) {
+        if (observables.isEmpty()) {
+            throw new IllegalStateException("A pilot run needs at least one observable");
+        }
+        burnIn = 0;
+        long measurements = minMeasurements;
+        while (true) {
+            estimators.clear();
+            List<AutocorrelationEstimator> phaseEstimators = new ArrayList<>();
+            List<ToDoubleFunction<? super S>> phaseObservables = new ArrayList<>();
+            for (Map.Entry<String, ToDoubleFunction<? super S>> entry : observables.entrySet()) {
+                AutocorrelationEstimator estimator = new AutocorrelationEstimator();
+                estimators.put(entry.getKey(), estimator);
+                phaseEstimators.add(estimator);
+                phaseObservables.add(entry.getValue());
+            }
+            for (long t = 0; t < measurements; t++) {
+                state = chain.run(state, interval);
+                for (int i = 0; i < phaseEstimators.size(); i++) {
+                    phaseEstimators.get(i).add(phaseObservables.get(i).applyAsDouble(state));
+                }
+            }
+            burnIn += measurements * interval;
+            if ((isReliable() && measurements * interval >= runLength * getAutocorrelationTime()) || 2 * measurements * interval > maxSteps - burnIn) {
+                return state;
+            }
+            measurements *= 2;
+        }
+    }
+
+    /**
+     * @return The largest integrated autocorrelation time of the observables in the last phase of the pilot, in steps.
+     */
+    public double getAutocorrelationTime() {
+        double tau = 0;
+        for (AutocorrelationEstimator estimator : estimators.values()) {
+            tau = Math.max(tau, estimator.getAutocorrelationTime() * interval);
+        }
+        return tau;
+    }
+
+    /**
+     * @return Whether the last phase of the pilot was long enough to trust the autocorrelation time of every observable. It can only be false if the pilot ran out of steps.
+     */
+    public boolean isReliable() {
+        for (AutocorrelationEstimator estimator : estimators.values()) {
+            if (!estimator.isReliable()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The number of steps between samples that makes them close to independent: twice the autocorrelation time, rounded up to a whole number of intervals.
+     */
+    public int getSampleFrequency() {
+        long intervals = (long) Math.ceil(2 * getAutocorrelationTime() / interval);
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, intervals) * interval);
+    }
+
+    /**
+     * @return The number of steps the pilot took, all of which can be counted as warm-up.
+     */
+    public long getBurnIn() {
+        return burnIn;
+    }
+
+    /**
+     * @param name The name an observable was added under.
+     * @return The autocorrelation estimator for that observable from the last phase of the pilot, whose values are measured every interval steps.
+     */
+    public AutocorrelationEstimator getEstimator(String name) {
+        AutocorrelationEstimator estimator = estimators.get(name);
+        if (estimator == null) {
+            throw new IllegalArgumentException("There is no observable named " + name);
+        }
+        return estimator;
+    }
+
+    /**
+     * @return The warm-up length, the sample frequency and the autocorrelation time of each observable.
+     */
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+        str.append(isReliable() ? "" : "unreliable: ").append("warm-up=").append(burnIn).append(" steps, sample frequency=").append(getSampleFrequency()).append(" steps");
+        for (Map.Entry<String, AutocorrelationEstimator> entry : estimators.entrySet()) {
+            str.append(", tau(").append(entry.getKey()).append(")=").append(entry.getValue().getAutocorrelationTime() * interval).append(" steps");
+        }
+        return str.toString();
+    }
+}
@@ -0,0 +1,33 @@
+package markovchain;
+
+/**
+ * A source of random numbers for a single Markov chain.
+ * Each chain owns its own source so that chains running on different threads never contend for one generator,
+ * and a run can be reproduced by seeding it. See {@link MarkovChain#setSeed(long)}.
+ */
+public interface RandomSource {
+
+    /**
+     * @return A uniformly distributed double in [0, 1).
+     */
+    double nextDouble();
+
+    /**
+     * @param bound The upper bound (exclusive). Must be positive.
+     * @return A uniformly distributed int in [0, bound).
+     */
+    int nextInt(int bound);
+
+    /**
+     * @return A uniformly distributed long.
+     */
+    long nextLong();
+
+    /**
+     * Creates a new generator whose output is statistically independent of this one, for example to give each of several chains its own source.
+     * This advances the state of this generator.
+     *
+     * @return A new RandomSource.
+     */
+    RandomSource split();
+}
@@ -0,0 +1,17 @@
+package markovchain;
+
+/**
+ * Something that looks at the states of a Markov chain as they are sampled, e.g. to record or accumulate observables of them.
+ * It is handed the live state, so it must not keep or modify it.
+ *
+ * @param <S> The class of states being observed.
+ */
+public interface SampleObserver<S> {
+
+    /**
+     * Observes a sampled state.
+     *
+     * @param state The state. It will be modified by the chain after this returns.
+     */
+    void record(S state);
+}
@@ -0,0 +1,56 @@
+package markovchain;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.util.function.Consumer;
+
+/**
+ * A sink for {@link MarkovChain#sample(Object, int, int, Consumer)} that prints each sample as soon as it is taken.
+ * <p>
+ * The output is the same as printing the List returned by {@link MarkovChain#sample(Object, int, int)},
+ * i.e. the samples separated by ", " inside square brackets, but none of the samples are kept in memory.
+ * It is safe to share one printer between chains running on different threads, in which case their samples are interleaved in the order they are taken.
+ */
+public class SamplePrinter implements Consumer<Object>, Closeable {
+
+    private final PrintStream out;// Where the samples are printed
+    private boolean empty = true;// Whether no sample has been printed yet, which decides the separator
+    private boolean closed;
+
+    /**
+     * @param out Where to print the samples, e.g. System.out. The opening bracket is printed straight away.
+     */
+    public SamplePrinter(PrintStream out) {
+        this.out = out;
+        out.print('[');
+    }
+
+    /**
+     * Prints a sample and flushes it, so that the output of long runs can be followed as it is produced.
+     *
+     * @param sample The sample to print.
+     */
+    @Override
+    public synchronized void accept(Object sample) {
+        if (closed) {
+            throw new IllegalStateException("The printer has been closed");
+        }
+        if (!empty) {
+            out.print(", ");
+        }
+        out.print(sample);
+        out.flush();
+        empty = false;
+    }
+
+    /**
+     * Prints the closing bracket. The underlying stream is left open.
+     */
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            out.println(']');
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package markovchain;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The default {@link RandomSource}: the SplitMix64 generator, which is also the algorithm behind {@link java.util.SplittableRandom}.
+ * It is a few arithmetic operations per number with no synchronization, which makes it much cheaper than {@link Math#random()} on hot paths.
+ * Unlike SplittableRandom its whole state is a single long, so it can be saved with {@link #getState()} and restored with {@link #setState(long)}.
+ */
+public class SplitMixRandom implements RandomSource {
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    private static final AtomicLong defaultSeedGenerator = new AtomicLong(mix64(System.currentTimeMillis()) ^ mix64(System.nanoTime()));
+
+    private long state;
+
+    /**
+     * Creates a generator with a seed that is very likely different from that of any other generator.
+     */
+    public SplitMixRandom() {
+        this(defaultSeedGenerator.getAndAdd(2 * GOLDEN_GAMMA));
+    }
+
+    /**
+     * @param seed Generators created with the same seed produce the same numbers.
+     */
+    public SplitMixRandom(long seed) {
+        this.state = seed;
+    }
+
+    @Override
+    public long nextLong() {
+        state += GOLDEN_GAMMA;
+        return mix64(state);
+    }
+
+    @Override
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    @Override
+    public int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive");
+        }
+        //Same rejection method as java.util.Random, so every value in range is equally likely.
+        int r = (int) (nextLong() >>> 33);
+        int m = bound - 1;
+        if ((bound & m) == 0) {
+            return (int) ((bound * (long) r) >> 31);
+        }
+        for (int u = r; u - (r = u % bound) + m < 0; u = (int) (nextLong() >>> 33)) {
+        }
+        return r;
+    }
+
+    @Override
+    public SplitMixRandom split() {
+        return new SplitMixRandom(mix64(nextLong()));
+    }
+
+    /**
+     * @return The whole state of this generator. A generator given the same state with {@link #setState(long)} produces the same numbers from then on.
+     */
+    public long getState() {
+        return state;
+    }
+
+    /**
+     * @param state A value previously returned by {@link #getState()}.
+     */
+    public void setState(long state) {
+        this.state = state;
+    }
+
+    /**
+     * The SplitMix64 finalizer, a bijection on longs that scrambles its input thoroughly.
+     */
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -21,10 +21,12 @@ public abstract class MetropolisHastingsMarkovChain<MarkovState, MM extends Mark
      */
     @Override
     public MarkovState step(MarkovState markovState) {
-        MM move = getMoveSelector().getRandomMove(markovState);
-        if (isMoveWithinConstraints(move) && Math.random() < getAcceptanceProbability(move)){
+        MM move = getMoveSelector().getRandomMove(markovState, getRandom());
+        if (isMoveWithinConstraints(move) && getRandom().nextDouble() < getAcceptanceProbability(move)){
+            recordSteps(1, 1);
             return move.perform();
         }else{
+            recordSteps(1, 0);
             return markovState;
         }
     }
@@ -0,0 +1,129 @@
+package markovchain.statistics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Estimates the integrated autocorrelation time of a stream of values, such as an observable sampled from a Markov chain, in O(log n) memory.
+ * <p>
+ * This uses batch means at every power of two (the blocking method of Flyvbjerg and Petersen): the values are averaged in pairs, the pair means in pairs, and so on,
+ * and the variance of the means of blocks of m values is kept for each level. For blocks much longer than the autocorrelation time that variance is 2 tau var(x) / m,
+ * so m var(block mean) / (2 var(x)) rises with m until it levels off at tau.
+ * <p>
+ * The autocorrelation time is measured in values, and follows the convention that independent values have tau = 1/2, so n values are worth n / (2 tau) independent ones.
+ */
+public class AutocorrelationEstimator {
+
+    private static final int MIN_BLOCKS = 32;// Levels with fewer blocks than this are too noisy to use
+    private static final int BLOCKS_PER_TAU = 16;// How many autocorrelation times long blocks must be for their estimate to be trusted
+
+    private final List<RunningStatistics> levels = new ArrayList<>();// levels.get(k) holds the means of the blocks of 2^k values so far
+    private final double[] pending = new double[Long.SIZE];// pending[k] is the mean of a block of 2^k values waiting for its neighbour, if hasPending[k]
+    private final boolean[] hasPending = new boolean[Long.SIZE];
+
+    /**
+     * @param x The next value.
+     */
+    public void add(double x) {
+        double blockMean = x;
+        for (int k = 0; ; k++) {
+            if (k == levels.size()) {
+                levels.add(new RunningStatistics());
+            }
+            levels.get(k).add(blockMean);
+            if (!hasPending[k]) {
+                pending[k] = blockMean;
+                hasPending[k] = true;
+                return;
+            }
+            hasPending[k] = false;
+            blockMean = (pending[k] + blockMean) / 2;
+        }
+    }
+
+    /**
+     * @return The number of values added.
+     */
+    public long getCount() {
+        return levels.isEmpty() ? 0 : levels.get(0).getCount();
+    }
+
+    /**
+     * @return The statistics of the values themselves.
+     */
+    public RunningStatistics getStatistics() {
+        return levels.isEmpty() ? new RunningStatistics() : levels.get(0);
+    }
+
+    /**
+     * @param level The level k, for blocks of 2^k values.
+     * @return The estimate of the autocorrelation time from the blocks of that level, or NaN if it has fewer than two blocks or the values do not vary.
+     */
+    public double getBlockEstimate(int level) {
+        if (level >= levels.size()) {
+            return Double.NaN;
+        }
+        double variance = levels.get(0).getVariance();
+        if (!(variance > 0)) {
+            return Double.NaN;
+        }
+        return Math.scalb(levels.get(level).getVariance(), level) / (2 * variance);
+    }
+
+    /**
+     * The blocking estimates only level off once the blocks are several autocorrelation times long, and are noisy once there are few blocks,
+     * so this uses the shortest blocks that are at least {@value #BLOCKS_PER_TAU} times as long as the estimate they give, like Sokal's automatic windowing.
+     * If even the longest blocks, among the levels that have at least {@value #MIN_BLOCKS} blocks, are shorter than that, their estimate is used, and is likely too small.
+     *
+     * @return The integrated autocorrelation time, in values. It is 1/2 if there are too few values to tell, or if they do not vary.
+     */
+    public double getAutocorrelationTime() {
+        return getLevelEstimate(getChosenLevel());
+    }
+
+    /**
+     * @return Whether there were enough values for blocks long enough to trust {@link #getAutocorrelationTime()}. If not, it is likely too small.
+     */
+    public boolean isReliable() {
+        int level = getChosenLevel();
+        return level > 0 && Math.scalb(1.0, level) >= BLOCKS_PER_TAU * getLevelEstimate(level);
+    }
+
+    /**
+     * @return The number of independent values the values added are worth.
+     */
+    public double getEffectiveSampleSize() {
+        return getCount() / (2 * getAutocorrelationTime());
+    }
+
+    /**
+     * @return The standard error of the mean of the values, taking their autocorrelation into account.
+     */
+    public double getStandardError() {
+        RunningStatistics statistics = getStatistics();
+        return Math.sqrt(2 * getAutocorrelationTime() * statistics.getVariance() / statistics.getCount());
+    }
+
+    /**
+     * @return The level whose estimate is used: the first one whose blocks are long enough, or else the last one with enough blocks.
+     */
+    private int getChosenLevel() {
+        int k = 1;
+        for (; k < levels.size() && levels.get(k).getCount() >= MIN_BLOCKS; k++) {
+            if (Math.scalb(1.0, k) >= BLOCKS_PER_TAU * getLevelEstimate(k)) {
+                return k;
+            }
+        }
+        return k - 1;
+    }
+
+    private double getLevelEstimate(int level) {
+        double estimate = getBlockEstimate(level);
+        return estimate > 0.5 ? estimate : 0.5;// Noise can push the estimate below its minimum, and it is NaN if the values do not vary
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d, mean=%s, tau=%s, error=%s", getCount(), getStatistics().getMean(), getAutocorrelationTime(), getStandardError());
+    }
+}
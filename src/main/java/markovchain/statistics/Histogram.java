@@ -0,0 +1,109 @@
+package markovchain.statistics;
+
+import java.util.Arrays;
+
+/**
+ * A histogram of real values with a fixed number of equal-width bins between a lower and an upper bound.
+ * Values outside the bounds are counted separately as underflow and overflow.
+ */
+public class Histogram {
+
+    private final double lower;
+    private final double upper;
+    private final long[] counts;
+    private long underflow;
+    private long overflow;
+
+    /**
+     * @param lower The lower bound of the first bin (inclusive).
+     * @param upper The upper bound of the last bin (exclusive).
+     * @param bins  The number of bins. Must be at least 1.
+     */
+    public Histogram(double lower, double upper, int bins) {
+        if (bins < 1 || !(lower < upper)) {
+            throw new IllegalArgumentException("A histogram needs at least one bin and lower < upper");
+        }
+        this.lower = lower;
+        this.upper = upper;
+        this.counts = new long[bins];
+    }
+
+    /**
+     * @param x The next value.
+     */
+    public void add(double x) {
+        if (x < lower) {
+            underflow++;
+        } else if (x >= upper) {
+            overflow++;
+        } else {
+            int bin = (int) ((x - lower) / (upper - lower) * counts.length);
+            counts[Math.min(bin, counts.length - 1)]++;// Rounding can put values just below upper one past the end
+        }
+    }
+
+    /**
+     * Adds the counts of another histogram with the same bins.
+     *
+     * @param other The other histogram. It is not modified.
+     */
+    public void merge(Histogram other) {
+        if (other.lower != lower || other.upper != upper || other.counts.length != counts.length) {
+            throw new IllegalArgumentException("Only histograms with the same bins can be merged");
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        underflow += other.underflow;
+        overflow += other.overflow;
+    }
+
+    /**
+     * @return The number of bins.
+     */
+    public int getBins() {
+        return counts.length;
+    }
+
+    /**
+     * @param bin The index of a bin.
+     * @return The number of values that fell in the bin.
+     */
+    public long getCount(int bin) {
+        return counts[bin];
+    }
+
+    /**
+     * @return The counts of all of the bins.
+     */
+    public long[] getCounts() {
+        return counts.clone();
+    }
+
+    /**
+     * @param bin The index of a bin.
+     * @return The lower bound of the bin. The upper bound is the lower bound of the next bin.
+     */
+    public double getBinLowerBound(int bin) {
+        return lower + (upper - lower) * bin / counts.length;
+    }
+
+    /**
+     * @return The number of values below the lower bound.
+     */
+    public long getUnderflow() {
+        return underflow;
+    }
+
+    /**
+     * @return The number of values at or above the upper bound.
+     */
+    public long getOverflow() {
+        return overflow;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("[%s, %s) in %d bins: %s, underflow=%d, overflow=%d", lower, upper, counts.length, Arrays.toString(counts), underflow, overflow);
+    }
+}
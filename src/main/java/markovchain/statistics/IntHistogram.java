@@ -0,0 +1,133 @@
+package markovchain.statistics;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * A histogram of integer values, with one bin per value, that needs no bounds to be chosen in advance.
+ * <p>
+ * The counts are stored in an array that grows to cover the range of values seen so far, so adding a value is O(1) (amortized) and does not box it.
+ * This suits observables like grid size and writhe, whose values are spread over a modest range.
+ */
+public class IntHistogram {
+
+    private long[] counts = new long[0];
+    private int offset;// counts[i] holds the number of times the value i + offset was added
+    private long total;
+
+    /**
+     * @param value The next value.
+     */
+    public void add(int value) {
+        add(value, 1);
+    }
+
+    /**
+     * @param value The value.
+     * @param count The number of times to add it.
+     */
+    public void add(int value, long count) {
+        ensureCovers(value);
+        counts[value - offset] += count;
+        total += count;
+    }
+
+    /**
+     * Adds the counts of another histogram.
+     *
+     * @param other The other histogram. It is not modified.
+     */
+    public void merge(IntHistogram other) {
+        for (int i = 0; i < other.counts.length; i++) {
+            if (other.counts[i] != 0) {
+                add(i + other.offset, other.counts[i]);
+            }
+        }
+    }
+
+    /**
+     * @param value A value.
+     * @return The number of times it was added.
+     */
+    public long getCount(int value) {
+        int index = value - offset;
+        return index >= 0 && index < counts.length ? counts[index] : 0;
+    }
+
+    /**
+     * @return The total number of values added.
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * @return The smallest value added.
+     * @throws IllegalStateException If no values have been added.
+     */
+    public int getMinValue() {
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                return i + offset;
+            }
+        }
+        throw new IllegalStateException("The histogram is empty");
+    }
+
+    /**
+     * @return The largest value added.
+     * @throws IllegalStateException If no values have been added.
+     */
+    public int getMaxValue() {
+        for (int i = counts.length - 1; i >= 0; i--) {
+            if (counts[i] != 0) {
+                return i + offset;
+            }
+        }
+        throw new IllegalStateException("The histogram is empty");
+    }
+
+    /**
+     * @return The counts of the values that were added, in increasing order of value.
+     */
+    public SortedMap<Integer, Long> toMap() {
+        SortedMap<Integer, Long> map = new TreeMap<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                map.put(i + offset, counts[i]);
+            }
+        }
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return toMap().toString();
+    }
+
+    /**
+     * Grows the array of counts, at least doubling it, so that it has a bin for the given value.
+     */
+    private void ensureCovers(int value) {
+        if (counts.length == 0) {
+            counts = new long[8];
+            offset = value;
+            return;
+        }
+        int index = value - offset;
+        if (index >= 0 && index < counts.length) {
+            return;
+        }
+        int newLength = Math.max(2 * counts.length, index < 0 ? counts.length - index : index + 1);
+        long[] newCounts = new long[newLength];
+        if (index < 0) {
+            // Keep the new space below the current values, since more values below are likely
+            int shift = newLength - counts.length;
+            System.arraycopy(counts, 0, newCounts, shift, counts.length);
+            offset -= shift;
+        } else {
+            System.arraycopy(counts, 0, newCounts, 0, counts.length);
+        }
+        counts = newCounts;
+    }
+}
@@ -0,0 +1,125 @@
+package markovchain.statistics;
+
+import markovchain.SampleObserver;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Accumulates statistics of observables of the states of a Markov chain while it is sampled, e.g. with {@link markovchain.MarkovChain#sampleObservables}.
+ * <p>
+ * Each accumulator is added under a name together with the observable it watches, and every call to {@link #record(Object)} updates all of them.
+ * The accumulators can be read at any time, and none of the samples are stored.
+ * Recording is synchronized, so one collector can be shared between chains running on different threads.
+ *
+ * @param <S> The class of states being observed.
+ */
+public class ObservableStatistics<S> implements SampleObserver<S> {
+
+    private final Map<String, Object> accumulators = new LinkedHashMap<>();// In the order they were added, for printing
+    private final List<SampleObserver<S>> updates = new ArrayList<>();// Feeds each state to the accumulators
+
+    /**
+     * Tracks the mean, variance, minimum and maximum of an observable.
+     *
+     * @param name       The name of the accumulator.
+     * @param observable The observable.
+     * @return The new accumulator.
+     */
+    public synchronized RunningStatistics addStatistics(String name, ToDoubleFunction<? super S> observable) {
+        RunningStatistics statistics = add(name, new RunningStatistics());
+        updates.add(state -> statistics.add(observable.applyAsDouble(state)));
+        return statistics;
+    }
+
+    /**
+     * Tracks the covariance of two observables.
+     *
+     * @param name The name of the accumulator.
+     * @param x    The first observable.
+     * @param y    The second observable.
+     * @return The new accumulator.
+     */
+    public synchronized RunningCovariance addCovariance(String name, ToDoubleFunction<? super S> x, ToDoubleFunction<? super S> y) {
+        RunningCovariance covariance = add(name, new RunningCovariance());
+        updates.add(state -> covariance.add(x.applyAsDouble(state), y.applyAsDouble(state)));
+        return covariance;
+    }
+
+    /**
+     * Tracks how often each value of an integer observable occurs.
+     *
+     * @param name       The name of the accumulator.
+     * @param observable The observable.
+     * @return The new accumulator.
+     */
+    public synchronized IntHistogram addIntHistogram(String name, ToIntFunction<? super S> observable) {
+        IntHistogram histogram = add(name, new IntHistogram());
+        updates.add(state -> histogram.add(observable.applyAsInt(state)));
+        return histogram;
+    }
+
+    /**
+     * Bins the values of a real observable.
+     *
+     * @param name       The name of the accumulator.
+     * @param observable The observable.
+     * @param lower      The lower bound of the first bin.
+     * @param upper      The upper bound of the last bin.
+     * @param bins       The number of bins.
+     * @return The new accumulator.
+     */
+    public synchronized Histogram addHistogram(String name, ToDoubleFunction<? super S> observable, double lower, double upper, int bins) {
+        Histogram histogram = add(name, new Histogram(lower, upper, bins));
+        updates.add(state -> histogram.add(observable.applyAsDouble(state)));
+        return histogram;
+    }
+
+    /**
+     * Updates every accumulator with the observables of the given state.
+     *
+     * @param state The state to observe. It is not kept.
+     */
+    @Override
+    public synchronized void record(S state) {
+        for (SampleObserver<S> update : updates) {
+            update.record(state);
+        }
+    }
+
+    /**
+     * @param name The name an accumulator was added under.
+     * @return The accumulator, e.g. a {@link RunningStatistics}. It should only be read while no chain is recording, or while synchronized on this collector.
+     */
+    public synchronized Object get(String name) {
+        Object accumulator = accumulators.get(name);
+        if (accumulator == null) {
+            throw new IllegalArgumentException("There is no accumulator named " + name);
+        }
+        return accumulator;
+    }
+
+    /**
+     * @return One line per accumulator, in the order they were added, of the form "name: accumulator".
+     */
+    @Override
+    public synchronized String toString() {
+        StringBuilder str = new StringBuilder();
+        for (Map.Entry<String, Object> entry : accumulators.entrySet()) {
+            str.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+        }
+        return str.toString();
+    }
+
+    private <A> A add(String name, A accumulator) {
+        if (accumulators.containsKey(name)) {
+            throw new IllegalArgumentException("There is already an accumulator named " + name);
+        }
+        accumulators.put(name, accumulator);
+        return accumulator;
+    }
+}
@@ -0,0 +1,85 @@
+package markovchain.statistics;
+
+/**
+ * The covariance and correlation of a stream of pairs of values, updated one pair at a time in O(1) memory.
+ * The statistics of each of the two values on their own are available from {@link #getX()} and {@link #getY()}.
+ */
+public class RunningCovariance {
+
+    private final RunningStatistics x = new RunningStatistics();
+    private final RunningStatistics y = new RunningStatistics();
+    private double sumOfCoDeviations;// The sum of (x - mean of x)(y - mean of y) over the pairs so far
+
+    /**
+     * @param xValue The first value of the next pair.
+     * @param yValue The second value of the next pair.
+     */
+    public void add(double xValue, double yValue) {
+        double deltaX = x.getCount() == 0 ? 0 : xValue - x.getMean();// The first pair has no deviation from the mean
+        x.add(xValue);
+        y.add(yValue);
+        sumOfCoDeviations += deltaX * (yValue - y.getMean());
+    }
+
+    /**
+     * Adds all of the pairs seen by another accumulator, as if they had been added to this one.
+     *
+     * @param other The other accumulator. It is not modified.
+     */
+    public void merge(RunningCovariance other) {
+        long count = getCount();
+        long otherCount = other.getCount();
+        if (otherCount == 0) {
+            return;
+        }
+        if (count > 0) {
+            double total = count + otherCount;
+            sumOfCoDeviations += other.sumOfCoDeviations + (other.x.getMean() - x.getMean()) * (other.y.getMean() - y.getMean()) * (count * (double) otherCount / total);
+        } else {
+            sumOfCoDeviations = other.sumOfCoDeviations;
+        }
+        x.merge(other.x);
+        y.merge(other.y);
+    }
+
+    /**
+     * @return The number of pairs added.
+     */
+    public long getCount() {
+        return x.getCount();
+    }
+
+    /**
+     * @return The unbiased sample covariance of the pairs, or NaN if there are fewer than two.
+     */
+    public double getCovariance() {
+        long count = getCount();
+        return count < 2 ? Double.NaN : sumOfCoDeviations / (count - 1);
+    }
+
+    /**
+     * @return The Pearson correlation coefficient of the pairs.
+     */
+    public double getCorrelation() {
+        return getCovariance() / (x.getStandardDeviation() * y.getStandardDeviation());
+    }
+
+    /**
+     * @return The statistics of the first values of the pairs.
+     */
+    public RunningStatistics getX() {
+        return x;
+    }
+
+    /**
+     * @return The statistics of the second values of the pairs.
+     */
+    public RunningStatistics getY() {
+        return y;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d, covariance=%s, correlation=%s", getCount(), getCovariance(), getCorrelation());
+    }
+}
@@ -0,0 +1,100 @@
+package markovchain.statistics;
+
+/**
+ * The count, mean, variance, minimum and maximum of a stream of values, updated one value at a time in O(1) memory.
+ * <p>
+ * The mean and variance use Welford's algorithm, which does not lose precision the way summing values and squares does.
+ * Accumulators for separate streams (e.g. separate chains) can be combined with {@link #merge(RunningStatistics)}.
+ */
+public class RunningStatistics {
+
+    private long count;
+    private double mean;
+    private double sumOfSquaredDeviations;// The sum of (x - mean)^2 over the values so far
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /**
+     * @param x The next value.
+     */
+    public void add(double x) {
+        count++;
+        double delta = x - mean;
+        mean += delta / count;
+        sumOfSquaredDeviations += delta * (x - mean);
+        min = Math.min(min, x);
+        max = Math.max(max, x);
+    }
+
+    /**
+     * Adds all of the values seen by another accumulator, as if they had been added to this one.
+     *
+     * @param other The other accumulator. It is not modified.
+     */
+    public void merge(RunningStatistics other) {
+        if (other.count == 0) {
+            return;
+        }
+        long total = count + other.count;
+        double delta = other.mean - mean;
+        sumOfSquaredDeviations += other.sumOfSquaredDeviations + delta * delta * ((double) count * other.count / total);
+        mean += delta * other.count / total;
+        count = total;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * @return The number of values added.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return The mean of the values, or NaN if there are none.
+     */
+    public double getMean() {
+        return count == 0 ? Double.NaN : mean;
+    }
+
+    /**
+     * @return The unbiased sample variance of the values, or NaN if there are fewer than two.
+     */
+    public double getVariance() {
+        return count < 2 ? Double.NaN : sumOfSquaredDeviations / (count - 1);
+    }
+
+    /**
+     * @return The square root of {@link #getVariance()}.
+     */
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+
+    /**
+     * @return The standard error of the mean assuming the values are independent. Successive samples of a Markov chain usually are not, in which case this underestimates the error.
+     */
+    public double getStandardError() {
+        return Math.sqrt(getVariance() / count);
+    }
+
+    /**
+     * @return The smallest value, or positive infinity if there are none.
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * @return The largest value, or negative infinity if there are none.
+     */
+    public double getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d, mean=%s, variance=%s, min=%s, max=%s", count, getMean(), getVariance(), min, max);
+    }
+}
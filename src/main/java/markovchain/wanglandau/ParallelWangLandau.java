@@ -0,0 +1,157 @@
+package markovchain.wanglandau;
+
+import markovchain.ChainFarm;
+import markovchain.MarkovMove;
+import markovchain.wanglandau.energy.WangLandauEnergy;
+import markovchain.wanglandau.schedule.WangLandauSchedule;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Trains a single set of Wang-Landau weights with several walkers, each a {@link WangLandauMarkovChain} with its own state and random source, running on its own thread.
+ * <p>
+ * The walkers all read and update the same {@link SharedWangLandauWeights}, without locking, so the weights are trained about as many times faster as there are walkers.
+ * Another thread periodically takes a snapshot of the weights to check whether the histogram is flat, with {@link WangLandauMarkovChain#isTrainingOver()} of a chain made for the purpose,
+ * and advances the {@link WangLandauSchedule} by the number of updates the walkers made in the meantime.
+ * <p>
+ * Since the walkers race each other, training is not reproducible even with {@link #setSeed(long)}, which only fixes the walkers' random sources.
+ *
+ * @param <MarkovState> The class of states of the walkers.
+ * @param <MM>          The class of moves of the walkers.
+ * @param <E>           The class of energies.
+ * @param <MC>          The class of the walkers.
+ */
+public class ParallelWangLandau<MarkovState, MM extends MarkovMove<MarkovState>, E extends WangLandauEnergy<MarkovState, MM, E>, MC extends WangLandauMarkovChain<MarkovState, MM, E>> {
+
+    private final Supplier<MC> chainFactory;
+    private final ChainFarm<MC> farm;
+    private final int walkers;
+    private long checkInterval = 100;// The time between checks of the histogram, in milliseconds
+    private volatile double logUpdateFactor;
+    private volatile boolean finished;
+    private List<ChainFarm.ChainResult<Void>> walkerResults;
+
+    /**
+     * @param chainFactory Creates the walkers, plus one more chain whose {@link WangLandauMarkovChain#isTrainingOver()} decides whether the histogram is flat.
+     * @param walkers      The number of walkers, each of which gets its own thread. Must be at least 1.
+     */
+    public ParallelWangLandau(Supplier<MC> chainFactory, int walkers) {
+        this.chainFactory = chainFactory;
+        this.farm = new ChainFarm<>(chainFactory, walkers);
+        this.walkers = walkers;
+    }
+
+    /**
+     * See {@link ChainFarm#setSeed(long)}.
+     *
+     * @param seed The seed from which the seeds of the walkers are derived.
+     */
+    public void setSeed(long seed) {
+        farm.setSeed(seed);
+    }
+
+    /**
+     * @param checkInterval The time between checks of the histogram, in milliseconds. Each check copies the weights, so it should be much longer than that takes.
+     */
+    public void setCheckInterval(long checkInterval) {
+        this.checkInterval = checkInterval;
+    }
+
+    /**
+     * Trains the shared weights until the schedule is finished.
+     *
+     * @param initialStates   Called once per walker, from the walker's thread, for its initial state. The states must not be shared.
+     * @param updateFrequency The number of steps each walker takes between each weight update. Must be at least 1.
+     * @param schedule        Decides the update factor and when training is over. Time is counted in the updates of all the walkers together.
+     * @return The trained log weights, as for {@link WangLandauMarkovChain#train(Object, int, double)}.
+     */
+    public HashMap<E, Double> train(Supplier<? extends MarkovState> initialStates, int updateFrequency, WangLandauSchedule schedule) {
+        SharedWangLandauWeights<E> shared = new SharedWangLandauWeights<>();
+        MC referee = chainFactory.get();
+        logUpdateFactor = schedule.getLogUpdateFactor();
+        finished = schedule.isFinished();
+        RuntimeException[] coordinatorFailure = new RuntimeException[1];
+        Thread coordinator = new Thread(() -> {
+            try {
+                coordinate(shared, referee, schedule);
+            } catch (RuntimeException e) {
+                coordinatorFailure[0] = e;
+            } finally {
+                finished = true;// Never leave the walkers running
+            }
+        }, "wang-landau-coordinator");
+        coordinator.setDaemon(true);
+        coordinator.start();
+        try {
+            walkerResults = farm.run(walkers, chain -> {
+                chain.walk(initialStates.get(), updateFrequency, shared, this);
+                return null;
+            });
+        } finally {
+            finished = true;
+            try {
+                coordinator.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (coordinatorFailure[0] != null) {
+            throw coordinatorFailure[0];
+        }
+        return shared.getLogWeightMap();
+    }
+
+    /**
+     * @return The steps taken and time spent by each walker in the last call to {@link #train(Supplier, int, WangLandauSchedule)}.
+     */
+    public List<ChainFarm.ChainResult<Void>> getWalkerResults() {
+        return walkerResults;
+    }
+
+    /**
+     * @return The update factor the walkers should currently use.
+     */
+    double getLogUpdateFactor() {
+        return logUpdateFactor;
+    }
+
+    /**
+     * @return Whether the walkers should stop.
+     */
+    boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Checks the histogram every {@link #checkInterval} milliseconds and advances the schedule, until it or the walkers finish.
+     */
+    private void coordinate(SharedWangLandauWeights<E> shared, MC referee, WangLandauSchedule schedule) {
+        long lastUpdates = 0;
+        while (!finished) {
+            try {
+                Thread.sleep(checkInterval);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long updates = shared.getUpdates();
+            if (updates == lastUpdates) {
+                continue;
+            }
+            boolean flat = referee.isSharedTrainingOver(shared);
+            int energiesFound = referee.getWeights().getBinCount();
+            for (long i = lastUpdates + 1; i < updates; i++) {// The schedule sees every update, but only the last since the previous check knows about the histogram
+                schedule.advance(false, energiesFound);
+            }
+            if (schedule.advance(flat, energiesFound)) {
+                shared.resetHistogram();
+            }
+            lastUpdates = updates;
+            logUpdateFactor = schedule.getLogUpdateFactor();
+            if (schedule.isFinished()) {
+                finished = true;
+            }
+        }
+    }
+}
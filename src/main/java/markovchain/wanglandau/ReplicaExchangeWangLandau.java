@@ -0,0 +1,243 @@
+package markovchain.wanglandau;
+
+import markovchain.MarkovMove;
+import markovchain.RandomSource;
+import markovchain.SplitMixRandom;
+import markovchain.wanglandau.energy.WangLandauEnergy;
+import markovchain.wanglandau.schedule.WangLandauSchedule;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Replica-exchange Wang-Landau (Vogel, Li, Wuest and Landau): the range of energies is split into overlapping windows, each trained by its own walker,
+ * and walkers in neighbouring windows swap their states every so often, so that no walker has to diffuse across the whole range.
+ * <p>
+ * Each window is a {@link WangLandauMarkovChain} whose constraints confine it to the window, e.g. a {@link griddiagrams.markovchain.wanglandau.GridDiagramWangLandau} with a minimum and maximum size.
+ * The walkers train in parallel for {@link #setExchangeInterval(int) a number of weight updates}, then exchanges are proposed between alternating pairs of neighbouring windows,
+ * and accepted with the probability that keeps each walker's stationary distribution. A window stops once its schedule is finished.
+ * The log weights of the windows are then {@link #stitchLogWeights(List) stitched} together.
+ * <p>
+ * Since the walkers only run in parallel between exchanges, training is reproducible with {@link #setSeed(long)}, however many threads are used.
+ *
+ * @param <MarkovState> The class of states of the walkers.
+ * @param <MM>          The class of moves of the walkers.
+ * @param <E>           The class of energies.
+ * @param <MC>          The class of the walkers.
+ */
+public class ReplicaExchangeWangLandau<MarkovState, MM extends MarkovMove<MarkovState>, E extends WangLandauEnergy<MarkovState, MM, E>, MC extends WangLandauMarkovChain<MarkovState, MM, E>> {
+
+    private final List<MC> windows;
+    private final int threads;
+    private RandomSource random = new SplitMixRandom();// Decides the exchanges, and the walkers' random sources are split from it
+    private int exchangeInterval = 100;// The number of weight updates between exchanges
+    private long[] exchangesProposed;// exchangesProposed[i] is for windows i and i + 1
+    private long[] exchangesAccepted;
+
+    /**
+     * @param windows The walkers, one per window, ordered so that neighbouring windows overlap. Each window must overlap its neighbours.
+     * @param threads The number of walkers that may run at the same time. Must be at least 1.
+     */
+    public ReplicaExchangeWangLandau(List<MC> windows, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("ReplicaExchangeWangLandau needs at least one thread");
+        }
+        this.windows = new ArrayList<>(windows);
+        this.threads = threads;
+    }
+
+    /**
+     * Makes training reproducible. See {@link markovchain.ChainFarm#setSeed(long)}.
+     *
+     * @param seed The seed from which the seeds of the walkers and the exchanges are derived.
+     */
+    public void setSeed(long seed) {
+        random = new SplitMixRandom(seed);
+    }
+
+    /**
+     * @param exchangeInterval The number of weight updates each walker makes between exchanges. Must be at least 1.
+     */
+    public void setExchangeInterval(int exchangeInterval) {
+        if (exchangeInterval < 1) {
+            throw new IllegalArgumentException("exchangeInterval must be at least 1");
+        }
+        this.exchangeInterval = exchangeInterval;
+    }
+
+    /**
+     * Trains every window until its schedule is finished.
+     *
+     * @param initialStates   Called once per window for the initial state of its walker, which is then {@link WangLandauMarkovChain#moveIntoConstraints(Object) moved into the window}.
+     * @param updateFrequency The number of steps each walker takes between each weight update. Must be at least 1.
+     * @param schedules       Called once per window for the schedule of its walker.
+     * @return The stitched log weights of all the windows.
+     */
+    public HashMap<E, Double> train(Supplier<? extends MarkovState> initialStates, int updateFrequency, Supplier<? extends WangLandauSchedule> schedules) {
+        int n = windows.size();
+        List<WangLandauState<MarkovState, E>> states = new ArrayList<>();
+        List<WangLandauSchedule> windowSchedules = new ArrayList<>();
+        for (MC window : windows) {
+            window.setRandom(random.split());
+            WangLandauState<MarkovState, E> state = window.startTraining(initialStates.get());
+            if (!window.isStateWithinConstraints(state.getState())) {
+                throw new IllegalArgumentException("The initial state cannot be moved into window " + states.size());
+            }
+            states.add(state);
+            windowSchedules.add(schedules.get());
+        }
+        exchangesProposed = new long[Math.max(n - 1, 0)];
+        exchangesAccepted = new long[Math.max(n - 1, 0)];
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(n, 1)));
+        try {
+            for (int round = 0; ; round++) {
+                List<Future<WangLandauState<MarkovState, E>>> futures = new ArrayList<>();
+                for (int i = 0; i < n; i++) {
+                    MC window = windows.get(i);
+                    WangLandauState<MarkovState, E> state = states.get(i);
+                    WangLandauSchedule schedule = windowSchedules.get(i);
+                    futures.add(schedule.isFinished() ? null : executor.submit(() -> window.train(state, updateFrequency, schedule, exchangeInterval)));
+                }
+                boolean finished = true;
+                for (int i = 0; i < n; i++) {
+                    if (futures.get(i) != null) {
+                        states.set(i, futures.get(i).get());
+                        finished &= windowSchedules.get(i).isFinished();
+                    }
+                }
+                if (finished) {
+                    break;
+                }
+                for (int i = round % 2; i + 1 < n; i += 2) {// Alternate between the pairs (0, 1), (2, 3), ... and (1, 2), (3, 4), ...
+                    if (!windowSchedules.get(i).isFinished() && !windowSchedules.get(i + 1).isFinished()) {
+                        proposeExchange(states, i);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for walkers", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A walker failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        List<HashMap<E, Double>> logWeights = new ArrayList<>();
+        for (MC window : windows) {
+            logWeights.add(window.getLogWeights());
+        }
+        return stitchLogWeights(logWeights);
+    }
+
+    /**
+     * Swaps the states of windows i and i + 1 if both lie in the other window, with probability min(1, exp(L_i(E_i) - L_i(E_j) + L_j(E_j) - L_j(E_i))),
+     * where L_k are the log weights of window k and E_k the energy of its state.
+     */
+    private void proposeExchange(List<WangLandauState<MarkovState, E>> states, int i) {
+        MC first = windows.get(i);
+        MC second = windows.get(i + 1);
+        WangLandauState<MarkovState, E> firstState = states.get(i);
+        WangLandauState<MarkovState, E> secondState = states.get(i + 1);
+        exchangesProposed[i]++;
+        if (!first.isStateWithinConstraints(secondState.getState()) || !second.isStateWithinConstraints(firstState.getState())) {
+            return;
+        }
+        WangLandauWeights<E> firstWeights = first.getWeights();
+        WangLandauWeights<E> secondWeights = second.getWeights();
+        double logRatio = firstWeights.getLogWeight(firstState.getEnergy()) - firstWeights.getLogWeight(secondState.getEnergy())
+                + secondWeights.getLogWeight(secondState.getEnergy()) - secondWeights.getLogWeight(firstState.getEnergy());
+        if (logRatio >= 0 || random.nextDouble() < Math.exp(logRatio)) {
+            states.set(i, secondState);
+            states.set(i + 1, firstState);
+            exchangesAccepted[i]++;
+        }
+    }
+
+    /**
+     * @return For each pair of neighbouring windows, the fraction of proposed exchanges that were accepted in the last training. Low rates mean the windows overlap too little.
+     */
+    public double[] getExchangeRates() {
+        double[] rates = new double[exchangesProposed.length];
+        for (int i = 0; i < rates.length; i++) {
+            rates[i] = exchangesProposed[i] == 0 ? 0 : (double) exchangesAccepted[i] / exchangesProposed[i];
+        }
+        return rates;
+    }
+
+    /**
+     * @return The walkers, one per window.
+     */
+    public List<MC> getWindows() {
+        return windows;
+    }
+
+    /**
+     * Joins the log weights of overlapping windows into one set. Each window's log weights are shifted to agree on average with those joined so far over the energies they share,
+     * and the log weights of shared energies are averaged.
+     *
+     * @param logWeightsList The log weights of each window, ordered so that each overlaps the ones before it.
+     * @param <E>            The energy type.
+     * @return The joined log weights.
+     */
+    public static <E> HashMap<E, Double> stitchLogWeights(List<? extends Map<E, Double>> logWeightsList) {
+        HashMap<E, Double> stitched = new HashMap<>();
+        HashMap<E, Integer> counts = new HashMap<>();// How many windows have been averaged into each energy
+        for (Map<E, Double> logWeights : logWeightsList) {
+            double offset = 0;
+            int shared = 0;
+            for (Map.Entry<E, Double> entry : logWeights.entrySet()) {
+                Double stitchedWeight = stitched.get(entry.getKey());
+                if (stitchedWeight != null) {
+                    offset += stitchedWeight - entry.getValue();
+                    shared++;
+                }
+            }
+            if (shared > 0) {
+                offset /= shared;
+            } else if (!stitched.isEmpty()) {
+                throw new IllegalArgumentException("A window shares no energies with the windows before it");
+            }
+            for (Map.Entry<E, Double> entry : logWeights.entrySet()) {
+                double shifted = entry.getValue() + offset;
+                int count = counts.getOrDefault(entry.getKey(), 0);
+                stitched.merge(entry.getKey(), shifted, (old, value) -> (old * count + value) / (count + 1));
+                counts.put(entry.getKey(), count + 1);
+            }
+        }
+        return stitched;
+    }
+
+    /**
+     * Splits a range of integers, such as grid sizes, into windows of equal width that overlap their neighbours.
+     *
+     * @param min     The smallest integer in the range.
+     * @param max     The largest integer in the range.
+     * @param count   The number of windows. Must be at least 1.
+     * @param overlap The fraction of each window shared with the next, e.g. 0.75. Must be at least 0 and less than 1.
+     * @return The inclusive bounds {lower, upper} of each window, in increasing order.
+     * @throws IllegalArgumentException If neighbouring windows would share fewer than two integers.
+     */
+    public static int[][] overlappingWindows(int min, int max, int count, double overlap) {
+        if (count < 1 || !(overlap >= 0 && overlap < 1)) {
+            throw new IllegalArgumentException("Need at least one window and an overlap in [0, 1)");
+        }
+        double width = (max - min) / ((count - 1) * (1 - overlap) + 1);
+        int[][] windows = new int[count][];
+        for (int i = 0; i < count; i++) {
+            int lower = min + (int) Math.round(i * width * (1 - overlap));
+            int upper = i == count - 1 ? max : Math.min(max, (int) Math.ceil(lower + width));
+            if (i > 0 && windows[i - 1][1] < lower + 1) {
+                throw new IllegalArgumentException("Windows " + (i - 1) + " and " + i + " would share fewer than two values. Use fewer windows or more overlap.");
+            }
+            windows[i] = new int[]{lower, upper};
+        }
+        return windows;
+    }
+}
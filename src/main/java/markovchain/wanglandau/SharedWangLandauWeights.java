@@ -0,0 +1,180 @@
+package markovchain.wanglandau;
+
+import markovchain.wanglandau.energy.WangLandauEnergy;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Wang-Landau log weights and histogram shared by walkers on several threads, see {@link ParallelWangLandau}.
+ * <p>
+ * Nothing is locked: each energy's log weight and count are atomics, and the log weight is added to with compare-and-set.
+ * Each walker collects its updates in a {@link Buffer} and adds them in batches, whose size grows while other walkers are updating the same weights and shrinks when they are not,
+ * so that walkers which keep visiting the same energies do not spend their time retrying.
+ *
+ * @param <E> The class of energies.
+ */
+public class SharedWangLandauWeights<E extends WangLandauEnergy<?, ?, E>> {
+
+    private static final int MAX_BATCH = 64;// The most updates a buffer holds before adding them
+
+    private final ConcurrentHashMap<E, Bin> bins = new ConcurrentHashMap<>();
+    private final LongAdder updates = new LongAdder();
+
+    /**
+     * @param energy An energy.
+     * @return Its log weight, which is 0 if it has never been updated.
+     */
+    public double getLogWeight(E energy) {
+        Bin bin = bins.get(energy);
+        return bin == null ? 0 : Double.longBitsToDouble(bin.logWeightBits.get());
+    }
+
+    /**
+     * @return The number of updates added so far, by all walkers.
+     */
+    public long getUpdates() {
+        return updates.sum();
+    }
+
+    /**
+     * Sets every count to 0, keeping the energies in the histogram. Updates added while this runs may or may not be counted.
+     */
+    public void resetHistogram() {
+        for (Bin bin : bins.values()) {
+            bin.count.set(0);
+        }
+    }
+
+    /**
+     * Replaces the contents of a {@link WangLandauWeights} with a snapshot of these weights, e.g. to check whether the histogram is flat.
+     * The snapshot is not atomic: updates added while this runs may or may not be included.
+     *
+     * @param weights Where to copy the weights and histogram.
+     */
+    public void copyTo(WangLandauWeights<E> weights) {
+        weights.clear();
+        for (Map.Entry<E, Bin> entry : bins.entrySet()) {
+            weights.setLogWeight(entry.getKey(), Double.longBitsToDouble(entry.getValue().logWeightBits.get()));
+            weights.setCount(entry.getKey(), entry.getValue().count.get());
+        }
+    }
+
+    /**
+     * @return A copy of the log weights of every energy found.
+     */
+    public HashMap<E, Double> getLogWeightMap() {
+        HashMap<E, Double> map = new HashMap<>();
+        for (Map.Entry<E, Bin> entry : bins.entrySet()) {
+            map.put(entry.getKey(), Double.longBitsToDouble(entry.getValue().logWeightBits.get()));
+        }
+        return map;
+    }
+
+    /**
+     * @return A new buffer for a single walker to add its updates through. Buffers must not be shared between threads.
+     */
+    public Buffer newBuffer() {
+        return new Buffer();
+    }
+
+    /**
+     * @return The bin of the energy, created if it does not exist yet.
+     */
+    private Bin getBin(E energy) {
+        Bin bin = bins.get(energy);// ConcurrentHashMap.computeIfAbsent locks even when the key is present, so only use it for new energies
+        return bin != null ? bin : bins.computeIfAbsent(energy, e -> new Bin());
+    }
+
+    /**
+     * The log weight and count of a single energy.
+     */
+    private static final class Bin {
+        private final AtomicLong logWeightBits = new AtomicLong(Double.doubleToRawLongBits(0));
+        private final AtomicLong count = new AtomicLong();
+
+        /**
+         * @return True if another thread changed the log weight while this was adding to it.
+         */
+        private boolean add(double logAmount, long updates) {
+            count.addAndGet(updates);
+            boolean contended = false;
+            while (true) {
+                long bits = logWeightBits.get();
+                if (logWeightBits.compareAndSet(bits, Double.doubleToRawLongBits(Double.longBitsToDouble(bits) + logAmount))) {
+                    return contended;
+                }
+                contended = true;
+            }
+        }
+    }
+
+    /**
+     * Collects one walker's updates and adds them to the shared weights in batches. Until then, the walker does not see its own updates.
+     */
+    public class Buffer {
+
+        private final Object[] energies = new Object[MAX_BATCH];// The distinct energies updated since the last flush
+        private final double[] logAmounts = new double[MAX_BATCH];
+        private final long[] counts = new long[MAX_BATCH];
+        private int size = 0;// The number of distinct energies buffered
+        private int buffered = 0;// The number of updates buffered
+        private int batchSize = 1;
+
+        private Buffer() {
+        }
+
+        /**
+         * Adds to the log weight of an energy and counts it in the histogram, once the batch is full.
+         *
+         * @param energy          The energy.
+         * @param logUpdateFactor The amount to add to its log weight.
+         */
+        public void update(E energy, double logUpdateFactor) {
+            int i = 0;
+            while (i < size && !energies[i].equals(energy)) {
+                i++;
+            }
+            if (i == size) {
+                energies[size++] = energy;
+            }
+            logAmounts[i] += logUpdateFactor;
+            counts[i]++;
+            if (++buffered >= batchSize) {
+                flush();
+            }
+        }
+
+        /**
+         * Adds the buffered updates to the shared weights, and adapts the batch size to how contended they were.
+         */
+        @SuppressWarnings("unchecked")
+        public void flush() {
+            boolean contended = false;
+            for (int i = 0; i < size; i++) {
+                contended |= getBin((E) energies[i]).add(logAmounts[i], counts[i]);
+                energies[i] = null;
+                logAmounts[i] = 0;
+                counts[i] = 0;
+            }
+            updates.add(buffered);
+            size = 0;
+            buffered = 0;
+            if (contended) {
+                batchSize = Math.min(2 * batchSize, MAX_BATCH);
+            } else if (batchSize > 1) {
+                batchSize--;
+            }
+        }
+
+        /**
+         * @return The number of updates currently collected before they are added.
+         */
+        public int getBatchSize() {
+            return batchSize;
+        }
+    }
+}
@@ -3,10 +3,29 @@ package markovchain.wanglandau;
 import markovchain.MarkovChain;
 import markovchain.MarkovMove;
 import markovchain.MarkovMoveSelector;
+import markovchain.SplitMixRandom;
 import markovchain.metropolishastings.MetropolisHastingsMarkovChain;
 import markovchain.wanglandau.energy.WangLandauEnergy;
+import markovchain.wanglandau.schedule.ConstantSchedule;
+import markovchain.wanglandau.schedule.WangLandauSchedule;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @param <MarkovState> The class which represents the objects in the Markov chain
@@ -15,11 +34,16 @@ import java.util.HashMap;
  */
 public abstract class WangLandauMarkovChain<MarkovState, MM extends MarkovMove<MarkovState>, E extends WangLandauEnergy<MarkovState, MM, E>> extends MetropolisHastingsMarkovChain<WangLandauState<MarkovState, E>, WangLandauMove<MarkovState, MM, E>> {
 
-    //We store and update the log of the Wang-Landau weights to avoid overflows
-    private HashMap<E, Double> logWeights = new HashMap<>();
-    //The histogram stores the counts of each energy found, which may be used for a stopping condition
-    private HashMap<E, Integer> histogram = new HashMap<>();
-    private final MarkovMoveSelector<WangLandauState<MarkovState, E>, WangLandauMove<MarkovState, MM, E>> wangLandauMoveSelector = wangLandauState -> new WangLandauMove<>(wangLandauState, getMarkovStateMoveSelector().getRandomMove(wangLandauState.getState()));
+    private static final int CHECKPOINT_MAGIC = 0x574c434b;// "WLCK", at the start of every checkpoint file
+    private static final int CHECKPOINT_VERSION = 1;
+
+    //We store and update the log of the Wang-Landau weights to avoid overflows, along with the histogram of the counts of each energy found, which may be used for a stopping condition
+    private final WangLandauWeights<E> weights = new WangLandauWeights<>();
+    private SharedWangLandauWeights<E> sharedWeights;// The weights used instead while this chain is a walker of a ParallelWangLandau, or null
+    private final WangLandauMove<MarkovState, MM, E> reusableMove = new WangLandauMove<>(weights);// Set to every proposed move in turn, see MarkovMoveSelector
+    private final MarkovMoveSelector<WangLandauState<MarkovState, E>, WangLandauMove<MarkovState, MM, E>> wangLandauMoveSelector = (wangLandauState, random) -> reusableMove.set(wangLandauState, getMarkovStateMoveSelector().getRandomMove(wangLandauState.getState(), random));
+    private File checkpointFile;// Where training progress is saved, or null to not save it
+    private long checkpointInterval;// The least time between checkpoints, in nanoseconds
 
     /**
      * Trains a set of Wang-Landau weights.
@@ -30,15 +54,220 @@ public abstract class WangLandauMarkovChain<MarkovState, MM extends MarkovMove<M
      * @return A HashMap where the keys are energy values of type {@link E} and the values are log weights, i.e. the ratio of Wang-Landau weights for energies i and j is represented by e^(logWeight[i] - logWeight[j])
      */
     public HashMap<E, Double> train(MarkovState state, int updateFrequency, double logUpdateFactor) {
+        return train(state, updateFrequency, new ConstantSchedule(logUpdateFactor));
+    }
+
+    /**
+     * Trains a set of Wang-Landau weights, changing the update factor as the schedule says and resetting the histogram whenever it starts a new stage.
+     *
+     * @param state           The initial state where the Wang-Landau weight training will begin.
+     * @param updateFrequency The number of steps that will be taken between each weight update. Must be at least 1.
+     * @param schedule        Decides the update factor and when training is over. It should not have been used before.
+     * @return The trained log weights, as for {@link #train(Object, int, double)}.
+     */
+    public HashMap<E, Double> train(MarkovState state, int updateFrequency, WangLandauSchedule schedule) {
+        return continueTraining(startTraining(state), updateFrequency, schedule);
+    }
+
+    /**
+     * Puts the initial state of training within the constraints and records its energy.
+     *
+     * @param state The initial state. It may be modified.
+     * @return The state wrapped with its energy, from which to continue training.
+     */
+    WangLandauState<MarkovState, E> startTraining(MarkovState state) {
+        state = moveIntoConstraints(state);
         WangLandauState<MarkovState, E> wangLandauState = new WangLandauState<>(state, getEnergyFactory().getEnergyFromState(state));
         updateWeight(wangLandauState.getEnergy(), 0);
-        while (!isTrainingOver()) {
-            wangLandauState = run(wangLandauState, updateFrequency);
-            updateWeight(wangLandauState.getEnergy(), logUpdateFactor);
+        return wangLandauState;
+    }
+
+    /**
+     * Trains for a limited number of weight updates, so that something else can happen in between, such as the exchanges of {@link ReplicaExchangeWangLandau}.
+     *
+     * @param wangLandauState The state from {@link #startTraining(Object)} or the previous call.
+     * @param updateFrequency The number of steps that will be taken between each weight update.
+     * @param schedule        Decides the update factor and when training is over.
+     * @param updates         The most weight updates to make. Fewer are made if the schedule finishes.
+     * @return The state reached.
+     */
+    WangLandauState<MarkovState, E> train(WangLandauState<MarkovState, E> wangLandauState, int updateFrequency, WangLandauSchedule schedule, long updates) {
+        for (long i = 0; i < updates && !schedule.isFinished(); i++) {
+            wangLandauState = trainingUpdate(wangLandauState, updateFrequency, schedule);
+        }
+        return wangLandauState;
+    }
+
+    /**
+     * Continues the training saved in the file given to {@link #setCheckpoint(File, long)}, with the same update frequency and schedule.
+     * The weights, histogram, state, random numbers and step counts are all restored, so the training carries on as if it had never stopped.
+     * This should be called on a freshly created chain, like the one that was training.
+     *
+     * @return The trained log weights, as for {@link #train(Object, int, double)}.
+     * @throws IOException If the checkpoint cannot be read.
+     */
+    public HashMap<E, Double> resumeTraining() throws IOException {
+        if (checkpointFile == null) {
+            throw new IllegalStateException("No checkpoint file has been set");
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(checkpointFile)))) {
+            if (in.readInt() != CHECKPOINT_MAGIC) {
+                throw new IOException(checkpointFile + " is not a Wang-Landau checkpoint");
+            }
+            int version = in.readInt();
+            if (version != CHECKPOINT_VERSION) {
+                throw new IOException(checkpointFile + " has unknown checkpoint version " + version);
+            }
+            int updateFrequency = in.readInt();
+            WangLandauSchedule schedule = WangLandauSchedule.read(in);
+            recordSteps(in.readLong(), in.readLong());
+            if (in.readBoolean()) {
+                SplitMixRandom random = new SplitMixRandom();
+                random.setState(in.readLong());
+                setRandom(random);
+            }
+            MarkovState state = readState(in);
+            weights.clear();
+            for (int i = in.readInt(); i > 0; i--) {
+                weights.setLogWeight(getEnergyFactory().readEnergy(in), in.readDouble());
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                weights.setCount(getEnergyFactory().readEnergy(in), in.readLong());
+            }
+            return continueTraining(new WangLandauState<>(state, getEnergyFactory().getEnergyFromState(state)), updateFrequency, schedule);
+        }
+    }
+
+    /**
+     * Makes {@link #train(Object, int, double)} save its progress periodically, and once more when it finishes, so that it can be continued with {@link #resumeTraining()}.
+     * Each checkpoint is written to a temporary file which then replaces the previous checkpoint, so a crash while writing cannot corrupt it.
+     * The state of the chain is saved with {@link #writeState(Object, DataOutput)} and restored with {@link #readState(DataInput)}.
+     *
+     * @param file           Where to save the checkpoints, or null to stop saving them.
+     * @param intervalMillis The least time between checkpoints, in milliseconds.
+     */
+    public void setCheckpoint(File file, long intervalMillis) {
+        this.checkpointFile = file;
+        this.checkpointInterval = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+    }
+
+    /**
+     * @return The file given to {@link #setCheckpoint(File, long)}, or null if there is none.
+     */
+    public File getCheckpointFile() {
+        return checkpointFile;
+    }
+
+    /**
+     * The training loop shared by {@link #train(Object, int, double)} and {@link #resumeTraining()}.
+     */
+    private HashMap<E, Double> continueTraining(WangLandauState<MarkovState, E> wangLandauState, int updateFrequency, WangLandauSchedule schedule) {
+        long lastCheckpoint = System.nanoTime();
+        while (!schedule.isFinished()) {
+            wangLandauState = trainingUpdate(wangLandauState, updateFrequency, schedule);
+            if (checkpointFile != null && System.nanoTime() - lastCheckpoint >= checkpointInterval) {
+                writeCheckpoint(wangLandauState.getState(), updateFrequency, schedule);
+                lastCheckpoint = System.nanoTime();
+            }
+        }
+        if (checkpointFile != null) {
+            writeCheckpoint(wangLandauState.getState(), updateFrequency, schedule);
         }
         return getLogWeights();//TODO this.logweights might be left unclean here.
     }
 
+    /**
+     * Takes the steps between two weight updates, then updates the weight of the state reached and advances the schedule.
+     */
+    private WangLandauState<MarkovState, E> trainingUpdate(WangLandauState<MarkovState, E> wangLandauState, int updateFrequency, WangLandauSchedule schedule) {
+        wangLandauState = run(wangLandauState, updateFrequency);
+        updateWeight(wangLandauState.getEnergy(), schedule.getLogUpdateFactor());
+        if (schedule.advance(isTrainingOver(), weights.getBinCount())) {
+            weights.resetHistogram();
+        }
+        return wangLandauState;
+    }
+
+    /**
+     * Saves everything needed to continue training from this point, replacing the previous checkpoint only once the new one is safely on disk.
+     */
+    private void writeCheckpoint(MarkovState state, int updateFrequency, WangLandauSchedule schedule) {
+        File temporaryFile = new File(checkpointFile.getPath() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(temporaryFile)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+            out.writeInt(CHECKPOINT_MAGIC);
+            out.writeInt(CHECKPOINT_VERSION);
+            out.writeInt(updateFrequency);
+            schedule.write(out);
+            out.writeLong(getStepsTaken());
+            out.writeLong(getMovesAccepted());
+            boolean savableRandom = getRandom() instanceof SplitMixRandom;
+            out.writeBoolean(savableRandom);
+            if (savableRandom) {
+                out.writeLong(((SplitMixRandom) getRandom()).getState());
+            }
+            writeState(state, out);
+            HashMap<E, Double> logWeights = weights.getLogWeightMap();
+            out.writeInt(logWeights.size());
+            for (Map.Entry<E, Double> entry : logWeights.entrySet()) {
+                entry.getKey().write(out);
+                out.writeDouble(entry.getValue());
+            }
+            HashMap<E, Long> histogram = weights.getHistogramMap();
+            out.writeInt(histogram.size());
+            for (Map.Entry<E, Long> entry : histogram.entrySet()) {
+                entry.getKey().write(out);
+                out.writeLong(entry.getValue());
+            }
+            out.flush();
+            fileOut.getFD().sync();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write checkpoint " + temporaryFile, e);
+        }
+        try {
+            Files.move(temporaryFile.toPath(), checkpointFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not replace checkpoint " + checkpointFile, e);
+        }
+    }
+
+    /**
+     * Combines log weights trained by independent chains into a single estimate.
+     * Log weights are only defined up to an additive constant, so each set is first shifted to agree on average with the first set over the energies they share,
+     * then the shifted log weights of each energy are averaged.
+     *
+     * @param logWeightsList The log weights returned by {@link #train(Object, int, double)} for each chain.
+     * @param <E>            The energy type.
+     * @return The averaged log weights, including every energy seen by any of the chains.
+     */
+    public static <E> HashMap<E, Double> mergeLogWeights(List<? extends Map<E, Double>> logWeightsList) {
+        HashMap<E, Double> sums = new HashMap<>();
+        HashMap<E, Integer> counts = new HashMap<>();
+        Map<E, Double> reference = logWeightsList.isEmpty() ? new HashMap<>() : logWeightsList.get(0);
+        for (Map<E, Double> logWeights : logWeightsList) {
+            double offset = 0;
+            int shared = 0;
+            for (Map.Entry<E, Double> entry : logWeights.entrySet()) {
+                Double referenceWeight = reference.get(entry.getKey());
+                if (referenceWeight != null) {
+                    offset += referenceWeight - entry.getValue();
+                    shared++;
+                }
+            }
+            if (shared > 0) {
+                offset /= shared;
+            }
+            for (Map.Entry<E, Double> entry : logWeights.entrySet()) {
+                sums.merge(entry.getKey(), entry.getValue() + offset, Double::sum);
+                counts.merge(entry.getKey(), 1, Integer::sum);
+            }
+        }
+        HashMap<E, Double> merged = new HashMap<>();
+        for (Map.Entry<E, Double> entry : sums.entrySet()) {
+            merged.put(entry.getKey(), entry.getValue() / counts.get(entry.getKey()));
+        }
+        return merged;
+    }
 
     /**
      * Method overridden from {@link super#getAcceptanceProbability(MM)}.
@@ -46,7 +275,14 @@ public abstract class WangLandauMarkovChain<MarkovState, MM extends MarkovMove<M
      */
     @Override
     public final double getAcceptanceProbability(WangLandauMove<MarkovState, MM, E> move) {
-        double logDiff = logWeights.getOrDefault(move.getCurrentEnergy(), 0.0) - logWeights.getOrDefault(move.getNextEnergy(), 0.0);
+        double logDiff;
+        if (sharedWeights != null) {
+            logDiff = sharedWeights.getLogWeight(move.getCurrentEnergy()) - sharedWeights.getLogWeight(move.getNextEnergy());
+        } else if (weights.isDense()) {// Look the proposal up by its coordinates, so that no energy is created unless it is accepted and new
+            logDiff = weights.getLogWeight(move.getCurrentEnergy()) - weights.getLogWeight(move.getNextCoordinates());
+        } else {
+            logDiff = weights.getLogWeight(move.getCurrentEnergy()) - weights.getLogWeight(move.getNextEnergy());
+        }
         logDiff += Math.log(getAcceptanceAdjustment(move.getMarkovMove()));
         if (logDiff >= 0) { //Avoid math overflow errors from trying to exponentiate large numbers
             return 1;
@@ -57,21 +293,57 @@ public abstract class WangLandauMarkovChain<MarkovState, MM extends MarkovMove<M
 
 
     /**
-     * @return The current Wang-Landau log weights used to determine transitions in the Markov chain. This will change while {@link #train(Object, int, double)} is running.
+     * @return A copy of the current Wang-Landau log weights used to determine transitions in the Markov chain. These change while {@link #train(Object, int, double)} is running.
      */
     protected HashMap<E, Double> getLogWeights() {
-        return logWeights;
+        return weights.getLogWeightMap();
     }
 
+    /**
+     * @param newWeights Log weights to start from, e.g. from an earlier training. Energies that are not in it start from 0. The map is copied.
+     */
     public void setLogWeights(HashMap<E, Double> newWeights) {
-        this.logWeights = newWeights;
+        weights.setLogWeights(newWeights);
+    }
+
+    /**
+     * @return The current log weights and the count of times each energy was used to update a weight during training. The counts might be used by {@link #isTrainingOver()}.
+     */
+    protected WangLandauWeights<E> getWeights() {
+        return weights;
+    }
+
+    /**
+     * Trains shared weights alongside other walkers, see {@link ParallelWangLandau}.
+     *
+     * @param state           The initial state of this walker.
+     * @param updateFrequency The number of steps that will be taken between each weight update.
+     * @param shared          The weights shared by all the walkers.
+     * @param training        Holds the current update factor, and whether training is over.
+     */
+    void walk(MarkovState state, int updateFrequency, SharedWangLandauWeights<E> shared, ParallelWangLandau<MarkovState, MM, E, ?> training) {
+        sharedWeights = shared;
+        try {
+            SharedWangLandauWeights<E>.Buffer buffer = shared.newBuffer();
+            WangLandauState<MarkovState, E> wangLandauState = new WangLandauState<>(state, getEnergyFactory().getEnergyFromState(state));
+            buffer.update(wangLandauState.getEnergy(), 0);
+            while (!training.isFinished()) {
+                wangLandauState = run(wangLandauState, updateFrequency);
+                buffer.update(wangLandauState.getEnergy(), training.getLogUpdateFactor());
+            }
+            buffer.flush();
+        } finally {
+            sharedWeights = null;
+        }
     }
 
     /**
-     * @return The current count of times an energy was used to update a weight during training. This might be used by {@link #isTrainingOver()}.
+     * @param shared Weights trained by several walkers.
+     * @return {@link #isTrainingOver()} for a snapshot of the shared weights, which replaces this chain's own weights.
      */
-    protected HashMap<E, Integer> getHistogram() {
-        return histogram;
+    boolean isSharedTrainingOver(SharedWangLandauWeights<E> shared) {
+        shared.copyTo(weights);
+        return isTrainingOver();
     }
 
     /**
@@ -79,8 +351,7 @@ public abstract class WangLandauMarkovChain<MarkovState, MM extends MarkovMove<M
      * @param logUpdateFactor How to update the weight. This would be ln(f) in most Wang-Landau literature.
      */
     private void updateWeight(E energy, double logUpdateFactor) {
-        logWeights.put(energy, logWeights.getOrDefault(energy, 0.0) + logUpdateFactor);
-        histogram.put(energy, histogram.getOrDefault(energy, 0) + 1);
+        weights.update(energy, logUpdateFactor);
     }
 
     /**
@@ -111,6 +382,27 @@ public abstract class WangLandauMarkovChain<MarkovState, MM extends MarkovMove<M
      */
     protected abstract boolean isMarkovMoveMoveWithinConstraints(MM move);
 
+    /**
+     * Whether a state lies within the constraints of {@link #isMarkovMoveMoveWithinConstraints(MM)}, e.g. to check that a state can be handed to this chain by {@link ReplicaExchangeWangLandau}.
+     *
+     * @param state A state.
+     * @return True if the state is within the constraints. By default every state is.
+     */
+    protected boolean isStateWithinConstraints(MarkovState state) {
+        return true;
+    }
+
+    /**
+     * Changes an initial state that lies outside the constraints into one inside them, so that training does not give weights to energies it should not visit.
+     * By default the state is returned unchanged.
+     *
+     * @param state The initial state. It may be modified.
+     * @return A state within the constraints, if possible.
+     */
+    protected MarkovState moveIntoConstraints(MarkovState state) {
+        return state;
+    }
+
     /**
      * In general, this should return (the probability of choosing this move)/(the probability of choosing the inverse of this move from the next state).
      * This value comes from solving detailed balance of Wang-Landau for dynamic-sized systems.
@@ -123,6 +415,22 @@ public abstract class WangLandauMarkovChain<MarkovState, MM extends MarkovMove<M
         return 1.0;
     }
 
+    /**
+     * Writes a state to a checkpoint. See {@link #setCheckpoint(File, long)}.
+     *
+     * @param state The state to write.
+     * @param out   Where to write it.
+     * @throws IOException If out throws one.
+     */
+    protected abstract void writeState(MarkovState state, DataOutput out) throws IOException;
+
+    /**
+     * @param in Where a state was written with {@link #writeState(Object, DataOutput)}.
+     * @return The state that was written.
+     * @throws IOException If in throws one.
+     */
+    protected abstract MarkovState readState(DataInput in) throws IOException;
+
     /**
      * See {@link MarkovChain#getMoveSelector()}.
      */
@@ -134,10 +442,10 @@ public abstract class WangLandauMarkovChain<MarkovState, MM extends MarkovMove<M
     protected abstract WangLandauEnergy.WangLandauEnergyFactory<MarkovState, MM, E> getEnergyFactory();
 
     /**
-     * Determines when to terminate Wang-Landau training.
-     * Traditionally this is a "check for flatness."
+     * Determines when to terminate Wang-Landau training, or a stage of it.
+     * Traditionally this is a "check for flatness." It is checked after every weight update, so it should be quick, see {@link WangLandauWeights}.
      *
-     * @return If it is deemed that {@link #train(Object, int, double)} should terminate, then this returns true, otherwise false.
+     * @return If it is deemed that {@link #train(Object, int, double)} should terminate, or that the {@link WangLandauSchedule} should start its next stage, then this returns true, otherwise false.
      */
     protected abstract boolean isTrainingOver();
 }
@@ -5,6 +5,9 @@ import markovchain.wanglandau.energy.WangLandauEnergy;
 
 /**
  * A wrapper around the MarkovMoves used as transitions in the MarkovChain
+ * <p>
+ * A {@link WangLandauMarkovChain} owns a single WangLandauMove which it {@link #set(WangLandauState, MarkovMove) sets} to each proposed move in turn,
+ * and performing it updates the starting {@link WangLandauState} in place, so that a step does not allocate either of them.
  *
  * @param <MarkovState> The class for the underlying state space.
  * @param <MM>          The MarkovMoves being used to perform transitions.
@@ -13,25 +16,58 @@ import markovchain.wanglandau.energy.WangLandauEnergy;
 public class WangLandauMove<MarkovState, MM extends MarkovMove<MarkovState>, E extends WangLandauEnergy<MarkovState, MM, E>> implements MarkovMove<WangLandauState<MarkovState, E>> {
 
     //The state (with energy) before performing the move
-    private final WangLandauState<MarkovState, E> startingState;
+    private WangLandauState<MarkovState, E> startingState;
     //The wrapped move being proposed
-    private final MM markovMove;
+    private MM markovMove;
     //The energy for the next state
     private E nextEnergy;
+    //The weights whose stored energies are reused for the next state, or null
+    private final WangLandauWeights<E> weights;
+    //The coordinates of the energy for the next state, reused by every move this object is set to
+    private int[] nextCoordinates;
+    private boolean nextCoordinatesAreCurrent;
 
     /**
      * @param wangLandauState The current state, from which the move will be performed.
      * @param markovMove      The proposed MarkovMove.
      */
     WangLandauMove(WangLandauState<MarkovState, E> wangLandauState, MM markovMove) {
+        this.weights = null;
+        set(wangLandauState, markovMove);
+    }
+
+    /**
+     * Creates a move that must be {@link #set(WangLandauState, MarkovMove) set} before it is used.
+     *
+     * @param weights The weights of the chain. When they are {@link WangLandauWeights#isDense() dense}, the energy of the next state is looked up in them by its coordinates,
+     *                so that an energy is only created the first time it is reached.
+     */
+    WangLandauMove(WangLandauWeights<E> weights) {
+        this.weights = weights;
+    }
+
+    /**
+     * Turns this object into a different move.
+     *
+     * @param wangLandauState The current state, from which the move will be performed.
+     * @param markovMove      The proposed MarkovMove.
+     * @return This move.
+     */
+    WangLandauMove<MarkovState, MM, E> set(WangLandauState<MarkovState, E> wangLandauState, MM markovMove) {
         this.startingState = wangLandauState;
         this.markovMove = markovMove;
+        this.nextEnergy = null;
+        this.nextCoordinatesAreCurrent = false;
+        return this;
     }
 
     /**
      * @return The energy of the state that would be obtained by calling {@link #perform()}
      */
     E getNextEnergy() {
+        if (nextEnergy == null && weights != null && weights.isDense()) {
+            nextEnergy = weights.getEnergy(getNextCoordinates());
+        }
         if (nextEnergy == null) {//nextEnergy is only calculated when it is needed, then cached.
             //The fact that both getCurrentEnergy() and markovMove hold intrinsic information about
             //the same MarkovState make this line feel kind of icky. Maybe that's just me.
@@ -40,6 +76,21 @@ public class WangLandauMove<MarkovState, MM extends MarkovMove<MarkovState>, E e
         return nextEnergy;
     }
 
+    /**
+     * @return The coordinates of {@link #getNextEnergy()}, calculated without creating it. The array belongs to this move and is overwritten by the next one.
+     */
+    int[] getNextCoordinates() {
+        if (!nextCoordinatesAreCurrent) {
+            int dimension = getCurrentEnergy().getDimension();
+            if (nextCoordinates == null || nextCoordinates.length != dimension) {
+                nextCoordinates = new int[dimension];
+            }
+            getCurrentEnergy().getNextCoordinatesFromMove(markovMove, nextCoordinates, 0);
+            nextCoordinatesAreCurrent = true;
+        }
+        return nextCoordinates;
+    }
+
     /**
      * @return The energy of the state that this move is being taken from.
      */
@@ -54,9 +105,15 @@ public class WangLandauMove<MarkovState, MM extends MarkovMove<MarkovState>, E e
         return markovMove;
     }
 
+    /**
+     * Performs the wrapped move and updates the starting state to hold the resulting state and its energy.
+     *
+     * @return The starting state, which now represents the state after the move.
+     */
     @Override
     public WangLandauState<MarkovState, E> perform() {
-        return new WangLandauState<>(markovMove.perform(), getNextEnergy());
+        E energy = getNextEnergy();// Before the move changes the state that the energy is computed from
+        return startingState.set(markovMove.perform(), energy);
     }
 
 }
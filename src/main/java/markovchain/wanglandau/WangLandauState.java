@@ -4,20 +4,31 @@ import markovchain.wanglandau.energy.WangLandauEnergy;
 
 /**
  * A wrapper class representing a state in the Markov chain and its corresponding energy value.
+ * It is updated in place by {@link WangLandauMove#perform()}, so it should not be kept across steps; the energies it holds are never modified, though.
  *
  * @param <MarkovState> The class representing states in the Markov Chain
  */
 public class WangLandauState<MarkovState, E extends WangLandauEnergy<MarkovState, ?, E>> {
-    private final MarkovState state;
-    private final E energy;
+    private MarkovState state;
+    private E energy;
 
     /**
      * @param state  The underlying MarkovState represented by this object.
      * @param energy The energy value of the given state.
      */
     WangLandauState(MarkovState state, E energy) {
+        set(state, energy);
+    }
+
+    /**
+     * @param state  The new underlying MarkovState.
+     * @param energy The energy value of the new state.
+     * @return This object.
+     */
+    WangLandauState<MarkovState, E> set(MarkovState state, E energy) {
         this.state = state;
         this.energy = energy;
+        return this;
     }
 
     /**
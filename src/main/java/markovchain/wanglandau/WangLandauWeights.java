@@ -0,0 +1,548 @@
+package markovchain.wanglandau;
+
+import markovchain.wanglandau.energy.WangLandauEnergy;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The Wang-Landau log weights and histogram of a {@link WangLandauMarkovChain}, keyed by energy.
+ * <p>
+ * Energies made of integers (see {@link WangLandauEnergy#getDimension()}) are mapped to an index into primitive arrays, treating their coordinates as the digits of a mixed-radix number.
+ * The arrays cover a box of coordinates that grows, at least doubling along the coordinate that needs it, whenever an energy outside of it is updated,
+ * so that looking up a weight costs a few integer operations and no boxing or hashing.
+ * Other energies, and integer energies spread so widely that the box would be too large, are kept in hash maps instead.
+ * <p>
+ * The total, smallest and mean counts of the histogram, and the number of energies counted fewer times than a {@link #setCountThreshold(long) threshold},
+ * are kept up to date as weights are updated, so that a stopping condition can check them without going through the whole histogram.
+ *
+ * @param <E> The class of energies.
+ */
+public class WangLandauWeights<E extends WangLandauEnergy<?, ?, E>> {
+
+    private static final int MAX_CELLS = 1 << 24;// Beyond this many cells the box is mostly empty, so hash maps are used instead
+
+    // Dense storage, used once the first energy turns out to have integer coordinates
+    private int dimension = -1;// The number of coordinates of the energies, 0 for hash maps, or -1 before the first energy is stored
+    private int[] lowerBounds;// The smallest coordinate covered along each dimension
+    private int[] extents;// The number of coordinates covered along each dimension
+    private int[] strides;// How far apart in the arrays neighbouring coordinates are along each dimension
+    private double[] logWeights;
+    private long[] counts;
+    private boolean[] counted;// Whether each cell is in the histogram, which it stays in even if its count is reset to 0
+    private Object[] energies;// The energy of each cell that has been stored, or null, so that maps can be made. Energies are never modified, so they can be shared.
+
+    // Hash storage
+    private HashMap<E, Double> logWeightMap;
+    private HashMap<E, Long> countMap;
+
+    // Statistics of the histogram, kept up to date by update() and recomputed after anything else changes the counts
+    private boolean statisticsStale = false;
+    private long countThreshold = 0;
+    private long totalCount = 0;
+    private int binCount = 0;// The number of energies with a positive count
+    private long minCount = 0;
+    private int binsAtMinCount = 0;
+    private int binsBelowThreshold = 0;
+
+    /**
+     * @param energy An energy.
+     * @return Its log weight, which is 0 if it has never been updated.
+     */
+    public double getLogWeight(E energy) {
+        if (dimension > 0) {
+            int index = indexOf(energy);
+            return index < 0 ? 0 : logWeights[index];
+        }
+        return dimension == 0 ? logWeightMap.getOrDefault(energy, 0.0) : 0;
+    }
+
+    /**
+     * Looks up a log weight by the coordinates of an energy, so that an energy can be evaluated without being created. Only {@link #isDense() dense} weights can do this.
+     *
+     * @param coordinates The coordinates of an energy, see {@link WangLandauEnergy#getCoordinate(int)}.
+     * @return Its log weight, which is 0 if it has never been updated.
+     */
+    public double getLogWeight(int[] coordinates) {
+        int index = indexOf(coordinates);
+        return index < 0 ? 0 : logWeights[index];
+    }
+
+    /**
+     * @param coordinates The coordinates of an energy.
+     * @return The energy with those coordinates that has been stored, or null if there is none or the weights are not {@link #isDense() dense}.
+     */
+    public E getEnergy(int[] coordinates) {
+        int index = indexOf(coordinates);
+        return index < 0 ? null : energyAt(index);
+    }
+
+    /**
+     * @param energy An energy.
+     * @return The number of times it has been {@link #update(WangLandauEnergy, double) updated} since the histogram was last {@link #resetHistogram() reset}.
+     */
+    public long getCount(E energy) {
+        if (dimension > 0) {
+            int index = indexOf(energy);
+            return index < 0 ? 0 : counts[index];
+        }
+        return dimension == 0 ? countMap.getOrDefault(energy, 0L) : 0;
+    }
+
+    /**
+     * Adds to the log weight of an energy and counts it in the histogram.
+     *
+     * @param energy          The energy.
+     * @param logUpdateFactor The amount to add to its log weight.
+     */
+    public void update(E energy, double logUpdateFactor) {
+        int index = indexForWriting(energy);
+        if (index >= 0) {
+            logWeights[index] += logUpdateFactor;
+            boolean newBin = !counted[index];
+            counted[index] = true;
+            countUpdated(++counts[index], newBin);
+        } else {
+            logWeightMap.merge(energy, logUpdateFactor, Double::sum);
+            Long count = countMap.get(energy);
+            countMap.put(energy, count == null ? 1 : count + 1);
+            countUpdated(count == null ? 1 : count + 1, count == null);
+        }
+    }
+
+    /**
+     * Sets the log weight of an energy, leaving the histogram as it is.
+     *
+     * @param energy    The energy.
+     * @param logWeight Its log weight.
+     */
+    public void setLogWeight(E energy, double logWeight) {
+        int index = indexForWriting(energy);
+        if (index >= 0) {
+            logWeights[index] = logWeight;
+        } else {
+            logWeightMap.put(energy, logWeight);
+        }
+    }
+
+    /**
+     * Sets the histogram count of an energy and puts it in the histogram, e.g. when restoring it from a checkpoint.
+     *
+     * @param energy The energy.
+     * @param count  Its count, which may be 0.
+     */
+    public void setCount(E energy, long count) {
+        int index = indexForWriting(energy);
+        if (index >= 0) {
+            counts[index] = count;
+            counted[index] = true;
+        } else {
+            countMap.put(energy, count);
+        }
+        statisticsStale = true;
+    }
+
+    /**
+     * Sets the count of every energy in the histogram to 0, as between the stages of Wang-Landau training.
+     * The energies stay in the histogram, so that it is not flat until all of them have been visited again.
+     */
+    public void resetHistogram() {
+        if (dimension > 0) {
+            Arrays.fill(counts, 0);
+        } else if (dimension == 0) {
+            countMap.replaceAll((energy, count) -> 0L);
+        }
+        statisticsStale = true;
+    }
+
+    /**
+     * Replaces the log weights, leaving the histogram as it is.
+     *
+     * @param newLogWeights The new log weights. Energies that are not in it get a log weight of 0.
+     */
+    public void setLogWeights(Map<E, Double> newLogWeights) {
+        if (dimension > 0) {
+            Arrays.fill(logWeights, 0);
+        } else if (dimension == 0) {
+            logWeightMap.clear();
+        }
+        for (Map.Entry<E, Double> entry : newLogWeights.entrySet()) {
+            setLogWeight(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * @return A copy of the log weights of every energy that has been stored.
+     */
+    public HashMap<E, Double> getLogWeightMap() {
+        if (dimension == 0) {
+            return new HashMap<>(logWeightMap);
+        }
+        HashMap<E, Double> map = new HashMap<>();
+        for (int i = 0; dimension > 0 && i < energies.length; i++) {
+            if (energies[i] != null) {
+                map.put(energyAt(i), logWeights[i]);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * @return A copy of the histogram, holding every energy that has been counted, including those whose count was reset to 0.
+     */
+    public HashMap<E, Long> getHistogramMap() {
+        if (dimension == 0) {
+            return new HashMap<>(countMap);
+        }
+        HashMap<E, Long> map = new HashMap<>();
+        for (int i = 0; dimension > 0 && i < energies.length; i++) {
+            if (counted[i]) {
+                map.put(energyAt(i), counts[i]);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Forgets every weight and count, keeping the {@link #setCountThreshold(long) count threshold}.
+     */
+    public void clear() {
+        dimension = -1;
+        lowerBounds = null;
+        extents = null;
+        strides = null;
+        logWeights = null;
+        counts = null;
+        energies = null;
+        counted = null;
+        logWeightMap = null;
+        countMap = null;
+        statisticsStale = true;
+    }
+
+    /**
+     * @param countThreshold The count below which {@link #getBinsBelowThreshold()} counts an energy.
+     */
+    public void setCountThreshold(long countThreshold) {
+        this.countThreshold = countThreshold;
+        statisticsStale = true;
+    }
+
+    /**
+     * @return The threshold given to {@link #setCountThreshold(long)}, 0 by default.
+     */
+    public long getCountThreshold() {
+        return countThreshold;
+    }
+
+    /**
+     * @return The number of energies in the histogram whose count is below the {@link #setCountThreshold(long) count threshold}.
+     */
+    public int getBinsBelowThreshold() {
+        updateStatistics();
+        return binsBelowThreshold;
+    }
+
+    /**
+     * @return The smallest count of the energies in the histogram, which is 0 if it is empty or has just been reset.
+     */
+    public long getMinCount() {
+        updateStatistics();
+        return minCount;
+    }
+
+    /**
+     * @return The mean count of the energies in the histogram, or 0 if it is empty.
+     */
+    public double getMeanCount() {
+        updateStatistics();
+        return binCount == 0 ? 0 : (double) totalCount / binCount;
+    }
+
+    /**
+     * @return The sum of the counts in the histogram.
+     */
+    public long getTotalCount() {
+        updateStatistics();
+        return totalCount;
+    }
+
+    /**
+     * @return The number of energies in the histogram.
+     */
+    public int getBinCount() {
+        updateStatistics();
+        return binCount;
+    }
+
+    /**
+     * @return True if the weights are kept in arrays rather than hash maps.
+     */
+    public boolean isDense() {
+        return dimension > 0;
+    }
+
+    /**
+     * Keeps the statistics of the histogram up to date after a count has been incremented, in constant amortized time.
+     * The smallest count is only searched for again once every energy at the old smallest count has been incremented.
+     *
+     * @param count  The new count.
+     * @param newBin Whether the energy was not in the histogram before.
+     */
+    private void countUpdated(long count, boolean newBin) {
+        if (statisticsStale) {
+            return;
+        }
+        totalCount++;
+        if (newBin) {
+            binCount++;
+            if (count < countThreshold) {
+                binsBelowThreshold++;
+            }
+            if (binCount == 1 || count < minCount) {
+                minCount = count;
+                binsAtMinCount = 1;
+            } else if (count == minCount) {
+                binsAtMinCount++;
+            }
+            return;
+        }
+        if (count == countThreshold) {
+            binsBelowThreshold--;
+        }
+        if (count - 1 == minCount && --binsAtMinCount == 0) {
+            findMinCount();
+        }
+    }
+
+    /**
+     * Finds the smallest count in the histogram and how many energies have it.
+     */
+    private void findMinCount() {
+        minCount = Long.MAX_VALUE;
+        binsAtMinCount = 0;
+        if (dimension > 0) {
+            for (int i = 0; i < counts.length; i++) {
+                if (counted[i]) {
+                    countForMin(counts[i]);
+                }
+            }
+        } else if (dimension == 0) {
+            for (long count : countMap.values()) {
+                countForMin(count);
+            }
+        }
+        if (binsAtMinCount == 0) {
+            minCount = 0;
+        }
+    }
+
+    private void countForMin(long count) {
+        if (count < minCount) {
+            minCount = count;
+            binsAtMinCount = 1;
+        } else if (count == minCount) {
+            binsAtMinCount++;
+        }
+    }
+
+    /**
+     * Recomputes the statistics of the histogram if something other than {@link #update(WangLandauEnergy, double)} changed it.
+     */
+    private void updateStatistics() {
+        if (!statisticsStale) {
+            return;
+        }
+        totalCount = 0;
+        binCount = 0;
+        binsBelowThreshold = 0;
+        if (dimension > 0) {
+            for (int i = 0; i < counts.length; i++) {
+                if (counted[i]) {
+                    countForStatistics(counts[i]);
+                }
+            }
+        } else if (dimension == 0) {
+            for (long count : countMap.values()) {
+                countForStatistics(count);
+            }
+        }
+        findMinCount();
+        statisticsStale = false;
+    }
+
+    private void countForStatistics(long count) {
+        totalCount += count;
+        binCount++;
+        if (count < countThreshold) {
+            binsBelowThreshold++;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private E energyAt(int index) {
+        return (E) energies[index];
+    }
+
+    /**
+     * @return The index of the energy in the arrays, or -1 if it is outside the box they cover.
+     */
+    private int indexOf(E energy) {
+        int index = 0;
+        for (int d = 0; d < dimension; d++) {
+            int offset = energy.getCoordinate(d) - lowerBounds[d];
+            if (offset < 0 || offset >= extents[d]) {
+                return -1;
+            }
+            index += offset * strides[d];
+        }
+        return index;
+    }
+
+    /**
+     * @return The index of the energy with the given coordinates in the arrays, or -1 if it is outside the box they cover or there are no arrays.
+     */
+    private int indexOf(int[] coordinates) {
+        if (dimension <= 0 || coordinates.length != dimension) {
+            return -1;
+        }
+        int index = 0;
+        for (int d = 0; d < dimension; d++) {
+            int offset = coordinates[d] - lowerBounds[d];
+            if (offset < 0 || offset >= extents[d]) {
+                return -1;
+            }
+            index += offset * strides[d];
+        }
+        return index;
+    }
+
+    /**
+     * Makes room for the energy, choosing the kind of storage on the first call.
+     *
+     * @return The index of the energy in the arrays, or -1 if hash maps are used.
+     */
+    private int indexForWriting(E energy) {
+        if (dimension < 0) {
+            if (energy.getDimension() > 0) {
+                dimension = energy.getDimension();
+                lowerBounds = new int[dimension];
+                extents = new int[dimension];
+                for (int d = 0; d < dimension; d++) {
+                    lowerBounds[d] = energy.getCoordinate(d);
+                    extents[d] = 1;
+                }
+                allocate();
+            } else {
+                useHashMaps();
+            }
+        }
+        if (dimension == 0) {
+            return -1;
+        }
+        int index = indexOf(energy);
+        if (index < 0) {
+            if (!grow(energy)) {
+                useHashMaps();
+                return -1;
+            }
+            index = indexOf(energy);
+        }
+        if (energies[index] == null) {
+            energies[index] = energy;
+        }
+        return index;
+    }
+
+    /**
+     * Enlarges the box, at least doubling it along every dimension where the energy lies outside, and moves the stored values to their new indices.
+     *
+     * @return False if the box would have more than {@link #MAX_CELLS} cells.
+     */
+    private boolean grow(E energy) {
+        int[] oldLowerBounds = lowerBounds.clone();
+        int[] oldExtents = extents.clone();
+        int[] oldStrides = strides;
+        double[] oldLogWeights = logWeights;
+        long[] oldCounts = counts;
+        boolean[] oldCounted = counted;
+        Object[] oldEnergies = energies;
+        long cells = 1;
+        for (int d = 0; d < dimension; d++) {
+            int coordinate = energy.getCoordinate(d);
+            int lower = lowerBounds[d];
+            int upper = lower + extents[d];// Exclusive
+            if (coordinate < lower) {
+                lower = Math.min(coordinate, upper - 2 * extents[d]);
+            } else if (coordinate >= upper) {
+                upper = Math.max(coordinate + 1, lower + 2 * extents[d]);
+            }
+            lowerBounds[d] = lower;
+            extents[d] = upper - lower;
+            cells = Math.min(cells * extents[d], MAX_CELLS + 1L);// Capped so that it cannot overflow
+        }
+        if (cells > MAX_CELLS) {
+            lowerBounds = oldLowerBounds;
+            extents = oldExtents;
+            return false;
+        }
+        allocate();
+        for (int i = 0; i < oldEnergies.length; i++) {
+            if (oldEnergies[i] != null) {
+                int index = 0;
+                for (int d = 0; d < dimension; d++) {
+                    int coordinate = oldLowerBounds[d] + (i / oldStrides[d]) % oldExtents[d];
+                    index += (coordinate - lowerBounds[d]) * strides[d];
+                }
+                logWeights[index] = oldLogWeights[i];
+                counts[index] = oldCounts[i];
+                counted[index] = oldCounted[i];
+                energies[index] = oldEnergies[i];
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates empty arrays for the current box.
+     */
+    private void allocate() {
+        strides = new int[dimension];
+        int cells = 1;
+        for (int d = dimension - 1; d >= 0; d--) {
+            strides[d] = cells;
+            cells *= extents[d];
+        }
+        logWeights = new double[cells];
+        counts = new long[cells];
+        counted = new boolean[cells];
+        energies = new Object[cells];
+    }
+
+    /**
+     * Switches to hash maps, moving anything already stored in the arrays.
+     */
+    private void useHashMaps() {
+        logWeightMap = new HashMap<>();
+        countMap = new HashMap<>();
+        if (dimension > 0) {
+            for (int i = 0; i < energies.length; i++) {
+                if (energies[i] != null) {
+                    logWeightMap.put(energyAt(i), logWeights[i]);
+                    if (counted[i]) {
+                        countMap.put(energyAt(i), counts[i]);
+                    }
+                }
+            }
+        }
+        dimension = 0;
+        lowerBounds = null;
+        extents = null;
+        strides = null;
+        logWeights = null;
+        counts = null;
+        counted = null;
+        energies = null;
+    }
+}
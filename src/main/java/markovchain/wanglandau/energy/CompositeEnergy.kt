@@ -1,6 +1,8 @@
 package markovchain.wanglandau.energy
 
 import markovchain.MarkovMove
+import java.io.DataInput
+import java.io.DataOutput
 import java.util.*
 
 class CompositeEnergy<MarkovState, MM : MarkovMove<MarkovState>>
@@ -18,13 +20,30 @@ class CompositeEnergy<MarkovState, MM : MarkovMove<MarkovState>>
     /**
      * @param move A proposed MarkovMove
      * @return A CompositeEnergy for the state obtained from moveToNextState that is made of WangLandauEnergy objects of the same types as this object.
+     * A Wang-Landau chain only calls this for energies it has not stored yet, and uses [getNextCoordinatesFromMove] otherwise.
      */
     override fun getNextEnergyFromMove(move: MM): CompositeEnergy<MarkovState, MM> {
-        val newEnergyList: MutableList<WangLandauEnergy<MarkovState, MM, *>> = ArrayList(energyList.size)
-        for (en: WangLandauEnergy<MarkovState, MM, *> in energyList) {
-            newEnergyList.add(en.getNextEnergyFromMove(move) as WangLandauEnergy<MarkovState, MM, *>)
+        var newEnergyList: MutableList<WangLandauEnergy<MarkovState, MM, *>>? = null // Only created once a component changes
+        for (i in energyList.indices) {
+            val next = energyList[i].getNextEnergyFromMove(move) as WangLandauEnergy<MarkovState, MM, *>
+            if (newEnergyList == null && next !== energyList[i]) {
+                newEnergyList = ArrayList(energyList.subList(0, i))
+            }
+            newEnergyList?.add(next)
+        }
+        //Energies are immutable, so if no component changed this one can be used as it is.
+        return if (newEnergyList == null) this else CompositeEnergy(newEnergyList)
+    }
+
+    /**
+     * Writes the next coordinates of each component in turn, so that unlike [getNextEnergyFromMove] nothing is created.
+     */
+    override fun getNextCoordinatesFromMove(move: MM, coordinates: IntArray, offset: Int) {
+        var componentOffset = offset
+        for (componentEnergy in energyList) {
+            componentEnergy.getNextCoordinatesFromMove(move, coordinates, componentOffset)
+            componentOffset += componentEnergy.getDimension()
         }
-        return CompositeEnergy(newEnergyList)
     }
 
     override fun copy(): CompositeEnergy<MarkovState, MM> {
@@ -35,6 +54,45 @@ class CompositeEnergy<MarkovState, MM : MarkovMove<MarkovState>>
         return CompositeEnergy(newEnergy)
     }
 
+    /**
+     * @return The total number of coordinates of the components, or 0 if any of them is not made of integers.
+     */
+    override fun getDimension(): Int {
+        var dimension = 0
+        for (componentEnergy in energyList) {
+            val componentDimension = componentEnergy.getDimension()
+            if (componentDimension == 0) {
+                return 0
+            }
+            dimension += componentDimension
+        }
+        return dimension
+    }
+
+    /**
+     * The coordinates of the components, one after the other.
+     */
+    override fun getCoordinate(index: Int): Int {
+        var remaining = index
+        for (componentEnergy in energyList) {
+            val componentDimension = componentEnergy.getDimension()
+            if (remaining < componentDimension) {
+                return componentEnergy.getCoordinate(remaining)
+            }
+            remaining -= componentDimension
+        }
+        throw IndexOutOfBoundsException("Coordinate $index of a composite energy of dimension ${getDimension()}")
+    }
+
+    /**
+     * Writes each component in turn. The number of components is not written, since the factory knows it.
+     */
+    override fun write(out: DataOutput) {
+        for (componentEnergy in energyList) {
+            componentEnergy.write(out)
+        }
+    }
+
     override fun hashCode(): Int {
         var newHash = 0
         for (componentEnergy in energyList) {
@@ -94,6 +152,14 @@ class CompositeEnergy<MarkovState, MM : MarkovMove<MarkovState>>
             return CompositeEnergy(newEnergy)
         }
 
+        override fun readEnergy(input: DataInput): CompositeEnergy<MarkovState, MM> {
+            val newEnergy: MutableList<WangLandauEnergy<MarkovState, MM, *>> = ArrayList()
+            for (factory in wangLandauEnergyFactories) {
+                newEnergy.add(factory.readEnergy(input) as WangLandauEnergy<MarkovState, MM, *>)
+            }
+            return CompositeEnergy(newEnergy)
+        }
+
     }
 
 }
\ No newline at end of file
@@ -1,6 +1,8 @@
 package markovchain.wanglandau.energy
 
 import markovchain.MarkovMove
+import java.io.DataInput
+import java.io.DataOutput
 
 /**
  *
@@ -20,6 +22,41 @@ abstract class WangLandauEnergy<MarkovState, MM : MarkovMove<MarkovState>, E : W
      */
     abstract fun getNextEnergyFromMove(move: MM): E
 
+    /**
+     * Writes the value of this energy in binary, e.g. for a checkpoint.
+     *
+     * @param out Where to write it. [WangLandauEnergyFactory.readEnergy] reads it back.
+     */
+    abstract fun write(out: DataOutput)
+
+    /**
+     * Energies made of a fixed number of integers should override this and [getCoordinate], which lets [markovchain.wanglandau.WangLandauWeights] keep their weights in arrays.
+     *
+     * @return The number of integer coordinates of this energy, or 0 if it is not made of integers.
+     */
+    open fun getDimension(): Int = 0
+
+    /**
+     * @param index Which coordinate, from 0 to [getDimension] - 1.
+     * @return The value of that coordinate. Equal energies must have equal coordinates.
+     */
+    open fun getCoordinate(index: Int): Int = throw UnsupportedOperationException("${javaClass.simpleName} does not have integer coordinates")
+
+    /**
+     * Writes the coordinates of [getNextEnergyFromMove] into an array instead of creating the energy, so that [markovchain.wanglandau.WangLandauMarkovChain] can evaluate a proposed move without allocating.
+     * Energies with integer coordinates should override this. By default the next energy is created and its coordinates copied.
+     *
+     * @param move        A proposed MarkovMove object.
+     * @param coordinates Where to write the [getDimension] coordinates of the energy of the state that will be obtained by performing the move.
+     * @param offset      The index in coordinates of the first coordinate.
+     */
+    open fun getNextCoordinatesFromMove(move: MM, coordinates: IntArray, offset: Int) {
+        val next = getNextEnergyFromMove(move)
+        for (index in 0 until next.getDimension()) {
+            coordinates[offset + index] = next.getCoordinate(index)
+        }
+    }
+
     abstract override fun hashCode(): Int
     abstract override fun equals(other: Any?): Boolean
     abstract override fun toString(): String
@@ -35,5 +72,11 @@ abstract class WangLandauEnergy<MarkovState, MM : MarkovMove<MarkovState>, E : W
          * @return A WangLandauEnergy object calculated for state.
          */
         abstract fun getEnergyFromState(state: MarkovState): E
+
+        /**
+         * @param input Where an energy of this type was written with [WangLandauEnergy.write].
+         * @return An energy holding the value that was written.
+         */
+        abstract fun readEnergy(input: DataInput): E
     }
 }
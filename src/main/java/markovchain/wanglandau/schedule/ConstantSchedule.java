@@ -0,0 +1,55 @@
+package markovchain.wanglandau.schedule;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Keeps the modification factor fixed and finishes as soon as the histogram is flat. This is a single stage of the original Wang-Landau algorithm.
+ */
+public class ConstantSchedule extends WangLandauSchedule {
+
+    private final double logUpdateFactor;
+    private boolean finished = false;
+
+    /**
+     * @param logUpdateFactor The log of the update factor. Must be greater than 0.
+     */
+    public ConstantSchedule(double logUpdateFactor) {
+        this.logUpdateFactor = logUpdateFactor;
+    }
+
+    @Override
+    public double getLogUpdateFactor() {
+        return logUpdateFactor;
+    }
+
+    @Override
+    public boolean advance(boolean histogramFlat, int energiesFound) {
+        finished = histogramFlat;
+        return false;
+    }
+
+    @Override
+    public boolean isFinished() {
+        return finished;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(CONSTANT);
+        out.writeDouble(logUpdateFactor);
+        out.writeBoolean(finished);
+    }
+
+    static ConstantSchedule readFields(DataInput in) throws IOException {
+        ConstantSchedule schedule = new ConstantSchedule(in.readDouble());
+        schedule.finished = in.readBoolean();
+        return schedule;
+    }
+
+    @Override
+    public String toString() {
+        return "constant ln(f)=" + logUpdateFactor;
+    }
+}
@@ -0,0 +1,95 @@
+package markovchain.wanglandau.schedule;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The 1/t algorithm of Belardinelli and Pereyra: stages as in {@link StagedSchedule} until the modification factor at the end of a stage would drop below N/t,
+ * where N is the number of energies found and t the number of weight updates so far, after which the factor is N/t at every update and the histogram is no longer checked.
+ * Unlike the staged schedule, the error of the weights keeps decreasing like 1/sqrt(t).
+ * <p>
+ * Time is counted in weight updates, rather than steps, since updates are what change the weights.
+ */
+public class OneOverTSchedule extends WangLandauSchedule {
+
+    private final double reduction;
+    private final double finalLogUpdateFactor;
+    private double logUpdateFactor;
+    private long updates = 0;
+    private boolean oneOverT = false;// Whether the staged part is over
+
+    /**
+     * @param initialLogUpdateFactor The log of the update factor in the first stage, traditionally 1.
+     * @param reduction              What the log of the update factor is multiplied by after each stage. Must be between 0 and 1.
+     * @param finalLogUpdateFactor   Training is over once the log of the update factor drops below this.
+     */
+    public OneOverTSchedule(double initialLogUpdateFactor, double reduction, double finalLogUpdateFactor) {
+        if (!(reduction > 0 && reduction < 1)) {
+            throw new IllegalArgumentException("reduction must be between 0 and 1");
+        }
+        this.logUpdateFactor = initialLogUpdateFactor;
+        this.reduction = reduction;
+        this.finalLogUpdateFactor = finalLogUpdateFactor;
+    }
+
+    @Override
+    public double getLogUpdateFactor() {
+        return logUpdateFactor;
+    }
+
+    @Override
+    public boolean advance(boolean histogramFlat, int energiesFound) {
+        updates++;
+        double oneOverTFactor = (double) energiesFound / updates;
+        if (oneOverT) {
+            logUpdateFactor = oneOverTFactor;
+            return false;
+        }
+        if (!histogramFlat) {
+            return false;
+        }
+        logUpdateFactor *= reduction;
+        if (logUpdateFactor <= oneOverTFactor) {// Only checked at the end of a stage, since N/t is large early on
+            logUpdateFactor = oneOverTFactor;
+            oneOverT = true;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isFinished() {
+        return logUpdateFactor < finalLogUpdateFactor;
+    }
+
+    /**
+     * @return Whether the factor has switched to N/t.
+     */
+    public boolean isOneOverT() {
+        return oneOverT;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(ONE_OVER_T);
+        out.writeDouble(reduction);
+        out.writeDouble(finalLogUpdateFactor);
+        out.writeDouble(logUpdateFactor);
+        out.writeLong(updates);
+        out.writeBoolean(oneOverT);
+    }
+
+    static OneOverTSchedule readFields(DataInput in) throws IOException {
+        double reduction = in.readDouble();
+        double finalLogUpdateFactor = in.readDouble();
+        OneOverTSchedule schedule = new OneOverTSchedule(in.readDouble(), reduction, finalLogUpdateFactor);
+        schedule.updates = in.readLong();
+        schedule.oneOverT = in.readBoolean();
+        return schedule;
+    }
+
+    @Override
+    public String toString() {
+        return (oneOverT ? "1/t" : "staged") + " ln(f)=" + logUpdateFactor + " after " + updates + " updates (final " + finalLogUpdateFactor + ")";
+    }
+}
@@ -0,0 +1,82 @@
+package markovchain.wanglandau.schedule;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The schedule of the original Wang-Landau algorithm: whenever the histogram is flat, the modification factor is multiplied by a reduction factor and the histogram is reset,
+ * until the factor drops below a final value. With a reduction of 1/2 this is the usual f -> sqrt(f).
+ * <p>
+ * The error of the weights saturates, since the factor shrinks faster than the statistical error; {@link OneOverTSchedule} avoids this.
+ */
+public class StagedSchedule extends WangLandauSchedule {
+
+    private final double reduction;
+    private final double finalLogUpdateFactor;
+    private double logUpdateFactor;
+    private int stage = 0;
+
+    /**
+     * @param initialLogUpdateFactor The log of the update factor in the first stage, traditionally 1.
+     * @param reduction              What the log of the update factor is multiplied by after each stage. Must be between 0 and 1.
+     * @param finalLogUpdateFactor   Training is over once the log of the update factor drops below this, e.g. 1e-8.
+     */
+    public StagedSchedule(double initialLogUpdateFactor, double reduction, double finalLogUpdateFactor) {
+        if (!(reduction > 0 && reduction < 1)) {
+            throw new IllegalArgumentException("reduction must be between 0 and 1");
+        }
+        this.logUpdateFactor = initialLogUpdateFactor;
+        this.reduction = reduction;
+        this.finalLogUpdateFactor = finalLogUpdateFactor;
+    }
+
+    @Override
+    public double getLogUpdateFactor() {
+        return logUpdateFactor;
+    }
+
+    @Override
+    public boolean advance(boolean histogramFlat, int energiesFound) {
+        if (!histogramFlat) {
+            return false;
+        }
+        logUpdateFactor *= reduction;
+        stage++;
+        return true;
+    }
+
+    @Override
+    public boolean isFinished() {
+        return logUpdateFactor < finalLogUpdateFactor;
+    }
+
+    /**
+     * @return The number of stages completed so far.
+     */
+    public int getStage() {
+        return stage;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(STAGED);
+        out.writeDouble(reduction);
+        out.writeDouble(finalLogUpdateFactor);
+        out.writeDouble(logUpdateFactor);
+        out.writeInt(stage);
+    }
+
+    static StagedSchedule readFields(DataInput in) throws IOException {
+        double reduction = in.readDouble();
+        double finalLogUpdateFactor = in.readDouble();
+        StagedSchedule schedule = new StagedSchedule(in.readDouble(), reduction, finalLogUpdateFactor);
+        schedule.stage = in.readInt();
+        return schedule;
+    }
+
+    @Override
+    public String toString() {
+        return "staged ln(f)=" + logUpdateFactor + " (stage " + stage + ", final " + finalLogUpdateFactor + ")";
+    }
+}
@@ -0,0 +1,69 @@
+package markovchain.wanglandau.schedule;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The gain sequence of stochastic approximation Monte Carlo (SAMC, Liang et al.): the modification factor is gamma0 t0 / max(t0, t) after t weight updates,
+ * so it stays at gamma0 for the first t0 updates and then decreases like 1/t, without ever checking the histogram.
+ * <p>
+ * SAMC also subtracts gamma/N from every weight at each update, which only shifts all of the log weights equally and so is left out.
+ */
+public class StochasticApproximationSchedule extends WangLandauSchedule {
+
+    private final double initialLogUpdateFactor;
+    private final long t0;
+    private final double finalLogUpdateFactor;
+    private long updates = 0;
+
+    /**
+     * @param initialLogUpdateFactor The log of the update factor for the first t0 updates, gamma0.
+     * @param t0                     How many updates to take before the factor starts to decrease. Larger values suit larger numbers of energies. Must be at least 1.
+     * @param finalLogUpdateFactor   Training is over once the log of the update factor drops below this.
+     */
+    public StochasticApproximationSchedule(double initialLogUpdateFactor, long t0, double finalLogUpdateFactor) {
+        if (t0 < 1) {
+            throw new IllegalArgumentException("t0 must be at least 1");
+        }
+        this.initialLogUpdateFactor = initialLogUpdateFactor;
+        this.t0 = t0;
+        this.finalLogUpdateFactor = finalLogUpdateFactor;
+    }
+
+    @Override
+    public double getLogUpdateFactor() {
+        return initialLogUpdateFactor * t0 / Math.max(t0, updates);
+    }
+
+    @Override
+    public boolean advance(boolean histogramFlat, int energiesFound) {
+        updates++;
+        return false;
+    }
+
+    @Override
+    public boolean isFinished() {
+        return getLogUpdateFactor() < finalLogUpdateFactor;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(STOCHASTIC_APPROXIMATION);
+        out.writeDouble(initialLogUpdateFactor);
+        out.writeLong(t0);
+        out.writeDouble(finalLogUpdateFactor);
+        out.writeLong(updates);
+    }
+
+    static StochasticApproximationSchedule readFields(DataInput in) throws IOException {
+        StochasticApproximationSchedule schedule = new StochasticApproximationSchedule(in.readDouble(), in.readLong(), in.readDouble());
+        schedule.updates = in.readLong();
+        return schedule;
+    }
+
+    @Override
+    public String toString() {
+        return "SAMC ln(f)=" + getLogUpdateFactor() + " after " + updates + " updates (final " + finalLogUpdateFactor + ")";
+    }
+}
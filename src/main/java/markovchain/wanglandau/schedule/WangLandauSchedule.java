@@ -0,0 +1,68 @@
+package markovchain.wanglandau.schedule;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Decides how much a Wang-Landau weight is changed at each update, the modification factor ln(f), and when training is over.
+ * <p>
+ * A schedule is told after every weight update whether the histogram is flat, i.e. whether {@link markovchain.wanglandau.WangLandauMarkovChain#isTrainingOver()} holds,
+ * and may then lower the factor and ask for the histogram to be reset, as in the stages of the original Wang-Landau algorithm.
+ * Schedules keep the state of a single training, so each chain needs its own.
+ */
+public abstract class WangLandauSchedule {
+
+    static final byte CONSTANT = 0;
+    static final byte STAGED = 1;
+    static final byte ONE_OVER_T = 2;
+    static final byte STOCHASTIC_APPROXIMATION = 3;
+
+    /**
+     * @return The log of the update factor to use at the next weight update.
+     */
+    public abstract double getLogUpdateFactor();
+
+    /**
+     * Called after every weight update.
+     *
+     * @param histogramFlat Whether the histogram is flat enough to end the current stage.
+     * @param energiesFound The number of energies in the histogram.
+     * @return True if the histogram should be reset, because a new stage begins.
+     */
+    public abstract boolean advance(boolean histogramFlat, int energiesFound);
+
+    /**
+     * @return True once the weights have converged as far as this schedule asks.
+     */
+    public abstract boolean isFinished();
+
+    /**
+     * Saves the schedule, including its progress, for a checkpoint.
+     *
+     * @param out Where to write it.
+     * @throws IOException If out throws one.
+     */
+    public abstract void write(DataOutput out) throws IOException;
+
+    /**
+     * @param in Where a schedule was written with {@link #write(DataOutput)}.
+     * @return The schedule that was written, with the same progress.
+     * @throws IOException If in throws one, or it does not hold a schedule.
+     */
+    public static WangLandauSchedule read(DataInput in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case CONSTANT:
+                return ConstantSchedule.readFields(in);
+            case STAGED:
+                return StagedSchedule.readFields(in);
+            case ONE_OVER_T:
+                return OneOverTSchedule.readFields(in);
+            case STOCHASTIC_APPROXIMATION:
+                return StochasticApproximationSchedule.readFields(in);
+            default:
+                throw new IOException("Unknown Wang-Landau schedule type " + type);
+        }
+    }
+}
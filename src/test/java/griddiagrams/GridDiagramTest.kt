@@ -2,7 +2,14 @@ package griddiagrams
 
 import org.junit.Assert.assertArrayEquals
 import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotEquals
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
 import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
 import java.lang.IllegalArgumentException
 
 class GridDiagramTest{
@@ -29,6 +36,280 @@ class GridDiagramTest{
         assertArrayEquals(intArrayOf(4, 3, 2, 1, 0),oCols)
     }
 
+    @Test
+    fun testStabilizationIsUndoneByDestabilization(){
+        val insertTypes = intArrayOf(GridDiagram.INSERT_XO_COLUMN, GridDiagram.INSERT_OX_COLUMN, GridDiagram.INSERT_XO_ROW, GridDiagram.INSERT_OX_ROW)
+        for (type in insertTypes) {
+            for (rowOrCol in 0 until 5) {
+                for (gridLine in 0..5) {
+                    val gridDiagram = GridDiagram.getGridDiagramFromResource("3_1")
+                    val original = gridDiagram.savableGrid
+                    if (type == GridDiagram.INSERT_XO_COLUMN || type == GridDiagram.INSERT_OX_COLUMN) {
+                        gridDiagram.stabilize(rowOrCol, gridLine, type)
+                        assertTrue(gridDiagram.isRowMatchColumns)
+                        assertTrue(gridDiagram.isDestabilizeColValid(gridLine))
+                        gridDiagram.destabilizeCol(gridLine)
+                    } else {
+                        gridDiagram.stabilize(gridLine, rowOrCol, type)
+                        assertTrue(gridDiagram.isRowMatchColumns)
+                        assertTrue(gridDiagram.isDestabilizeRowValid(gridLine))
+                        gridDiagram.destabilizeRow(gridLine)
+                    }
+                    assertEquals(5, gridDiagram.size)
+                    assertArrayEquals(original[0], gridDiagram.savableGrid[0])
+                    assertArrayEquals(original[1], gridDiagram.savableGrid[1])
+                }
+            }
+        }
+    }
+
+    @Test
+    fun testWritheOfTrefoil(){
+        val gridDiagram = GridDiagram.getGridDiagramFromResource("3_1")
+        assertEquals(3, Math.abs(gridDiagram.calcWrithe()))
+        gridDiagram.mirror()
+        assertTrue(gridDiagram.isRowMatchColumns)
+    }
+
+    @Test
+    fun testCopyIsIndependentOfOriginal(){
+        val gridDiagram = GridDiagram.getGridDiagramFromResource("3_1")
+        val copy = gridDiagram.copy()
+        gridDiagram.stabilize(0, 0, GridDiagram.INSERT_XO_COLUMN)
+        assertEquals(5, copy.size)
+        assertArrayEquals(intArrayOf(1, 0, 4, 3, 2), copy.savableGrid[0])
+        assertArrayEquals(intArrayOf(4, 3, 2, 1, 0), copy.savableGrid[1])
+    }
+
+    @Test
+    fun testCopyIntoSmallerTarget(){
+        val gridDiagram = GridDiagram.getGridDiagramFromResource("8_19")
+        val target = GridDiagram.getGridDiagramFromResource("0_1")
+        assertSame(target, gridDiagram.copyInto(target))
+        assertEquals(gridDiagram.size, target.size)
+        assertArrayEquals(gridDiagram.savableGrid[0], target.savableGrid[0])
+        assertArrayEquals(gridDiagram.savableGrid[1], target.savableGrid[1])
+        assertTrue(target.isRowMatchColumns)
+    }
+
+    @Test
+    fun testCopyIntoReusesOrderStatisticStorage(){
+        val source = GridDiagram.getGridDiagramFromResource("7_4")
+        source.setOrderStatisticStorage(true)
+        val target = GridDiagram.getGridDiagramFromResource("3_1")
+        target.setOrderStatisticStorage(true)
+        val random = java.util.Random(6)
+        for (step in 0 until 300) {
+            val index = random.nextInt(source.size)
+            when (random.nextInt(3)) {
+                0 -> if (source.size < 20) source.stabilize(random.nextInt(source.size + 1), index, GridDiagram.INSERT_XO_ROW)
+                1 -> source.destabilizeIfValid(index, index)
+                2 -> source.translate(random.nextInt(source.size), 1)
+            }
+            source.copyInto(target)
+            assertTrue(target.isOrderStatisticStorage)
+            assertEquals(source, target)
+            assertEquals(source.writhe, target.writhe)
+            target.stabilize(0, 0, GridDiagram.INSERT_OX_COLUMN)// The copy must not share nodes with the source
+            assertTrue(target.isRowMatchColumns)
+            assertTrue(source.isRowMatchColumns)
+            assertEquals(source.size + 1, target.size)
+        }
+    }
+
+    @Test
+    fun testCachedWritheMatchesCalculatedWrithe(){
+        val gridDiagram = GridDiagram.getGridDiagramFromResource("5_2")
+        val random = java.util.Random(0)
+        for (step in 0 until 2000) {
+            val index = random.nextInt(gridDiagram.size)
+            when (random.nextInt(3)) {
+                0 -> if (random.nextBoolean()) gridDiagram.commuteRowIfValid(index) else gridDiagram.commuteColIfValid(index)
+                1 -> if (gridDiagram.size < 20) gridDiagram.stabilize(index, random.nextInt(gridDiagram.size + 1), GridDiagram.INSERT_XO_COLUMN)
+                2 -> gridDiagram.destabilizeIfValid(index, index)
+            }
+            if (step % 100 == 0) {
+                gridDiagram.translate(random.nextInt(gridDiagram.size), random.nextInt(gridDiagram.size))
+                gridDiagram.mirror()
+            }
+            assertEquals(gridDiagram.calcWrithe(), gridDiagram.writhe)
+        }
+    }
+
+    @Test
+    fun testTranslationMovesMatchTranslatedArrays(){
+        val gridDiagram = GridDiagram.getGridDiagramFromResource("6_2")
+        val random = java.util.Random(2)
+        for (step in 0 until 500) {
+            val horizontal = random.nextInt(3) - 1
+            val vertical = if (horizontal == 0) 2 * random.nextInt(2) - 1 else 0
+            val expected = gridDiagram.calcWrithe() + gridDiagram.deltaWrithe(GridDiagram.MOVETYPE_TRANSLATION, intArrayOf(horizontal, vertical))
+            val rebuilt = GridDiagram(gridDiagram.savableGrid[0], gridDiagram.savableGrid[1])
+            gridDiagram.translate(horizontal, vertical)
+            rebuilt.translate(horizontal, vertical)
+            assertEquals(expected, gridDiagram.calcWrithe())
+            assertEquals(rebuilt, gridDiagram)
+            val index = random.nextInt(gridDiagram.size)
+            if (random.nextBoolean()) gridDiagram.commuteRowIfValid(index) else gridDiagram.commuteColIfValid(index)
+            assertTrue(gridDiagram.isRowMatchColumns)
+        }
+    }
+
+    @Test
+    fun testValidMoveIndexMatchesValidityChecks(){
+        val gridDiagram = GridDiagram.getGridDiagramFromResource("7_4")
+        val random = java.util.Random(3)
+        for (step in 0 until 1000) {
+            val index = random.nextInt(gridDiagram.size)
+            when (random.nextInt(4)) {
+                0, 1 -> if (random.nextBoolean()) gridDiagram.commuteRowIfValid(index) else gridDiagram.commuteColIfValid(index)
+                2 -> if (gridDiagram.size < 20) gridDiagram.stabilize(index, random.nextInt(gridDiagram.size + 1), GridDiagram.INSERT_OX_COLUMN) else gridDiagram.destabilizeIfValid(index, index)
+                3 -> gridDiagram.translate(random.nextInt(3) - 1, 0)
+            }
+            val validRowCommutations = (0 until gridDiagram.size).filter { gridDiagram.isCommuteRowValid(it) }
+            val validColDestabilizations = (0 until gridDiagram.size).filter { gridDiagram.isDestabilizeColValid(it) }
+            assertEquals(validRowCommutations.size, gridDiagram.countValidCommutations(GridDiagram.MOVE_SUBTYPE_ROW))
+            assertEquals(validColDestabilizations.size, gridDiagram.countValidDestabilizations(GridDiagram.MOVE_SUBTYPE_COLUMN))
+            assertEquals(validRowCommutations.toSet(), validRowCommutations.indices.map { gridDiagram.getValidCommutation(GridDiagram.MOVE_SUBTYPE_ROW, it) }.toSet())
+            assertEquals(validColDestabilizations.toSet(), validColDestabilizations.indices.map { gridDiagram.getValidDestabilization(GridDiagram.MOVE_SUBTYPE_COLUMN, it) }.toSet())
+        }
+    }
+
+    @Test
+    fun testSweepAgreesWithCalcWrithe(){
+        for (knotName in arrayOf("0_1", "3_1", "4_1", "5_2", "7_7", "8_19", "10_100")) {
+            val gridDiagram = GridDiagram.getGridDiagramFromResource(knotName)
+            assertEquals(gridDiagram.calcWrithe(), gridDiagram.calcWritheAndCrossings()[0])
+        }
+        assertEquals(0, GridDiagram.getGridDiagramFromResource("0_1").calcCrossings())
+        assertEquals(3, GridDiagram.getGridDiagramFromResource("3_1").calcCrossings())
+    }
+
+    @Test
+    fun testOrderStatisticStorageMatchesArrayStorage(){
+        val arrayGrid = GridDiagram.getGridDiagramFromResource("6_2")
+        val treeGrid = arrayGrid.copy()
+        treeGrid.setOrderStatisticStorage(true)
+        val random = java.util.Random(1)
+        for (step in 0 until 2000) {
+            val index = random.nextInt(arrayGrid.size)
+            when (random.nextInt(4)) {
+                0 -> {
+                    assertEquals(arrayGrid.isCommuteRowValid(index), treeGrid.isCommuteRowValid(index))
+                    arrayGrid.commuteRowIfValid(index)
+                    treeGrid.commuteRowIfValid(index)
+                }
+                1 -> {
+                    assertEquals(arrayGrid.isCommuteColValid(index), treeGrid.isCommuteColValid(index))
+                    arrayGrid.commuteColIfValid(index)
+                    treeGrid.commuteColIfValid(index)
+                }
+                2 -> if (arrayGrid.size < 30) {
+                    val gridLine = random.nextInt(arrayGrid.size + 1)
+                    val type = random.nextInt(4)
+                    if (type == GridDiagram.INSERT_XO_COLUMN || type == GridDiagram.INSERT_OX_COLUMN) {
+                        arrayGrid.stabilize(index, gridLine, type)
+                        treeGrid.stabilize(index, gridLine, type)
+                    } else {
+                        arrayGrid.stabilize(gridLine, index, type)
+                        treeGrid.stabilize(gridLine, index, type)
+                    }
+                }
+                3 -> {
+                    assertEquals(arrayGrid.destabilizeIfValid(index, index), treeGrid.destabilizeIfValid(index, index))
+                }
+            }
+            assertArrayEquals(arrayGrid.savableGrid[0], treeGrid.savableGrid[0])
+            assertArrayEquals(arrayGrid.savableGrid[1], treeGrid.savableGrid[1])
+            assertEquals(arrayGrid.writhe, treeGrid.writhe)
+        }
+        assertTrue(treeGrid.isOrderStatisticStorage)
+        assertTrue(treeGrid.isRowMatchColumns)
+    }
+
+    @Test
+    fun testEqualsAndHashAfterMoves(){
+        val gridDiagram = GridDiagram.getGridDiagramFromResource("4_1")
+        val original = gridDiagram.copy()
+        assertEquals(original, gridDiagram)
+        assertEquals(original.longHashCode(), gridDiagram.longHashCode())
+        gridDiagram.commuteCol(0)
+        gridDiagram.commuteRow(2)
+        assertNotEquals(original, gridDiagram)
+        val rebuilt = GridDiagram(gridDiagram.savableGrid[0], gridDiagram.savableGrid[1])
+        assertEquals(rebuilt.longHashCode(), gridDiagram.longHashCode())
+        gridDiagram.commuteRow(2)
+        gridDiagram.commuteCol(0)
+        assertEquals(original, gridDiagram)
+        assertEquals(original.hashCode(), gridDiagram.hashCode())
+        gridDiagram.translate(1, 2)
+        gridDiagram.translate(gridDiagram.size - 1, gridDiagram.size - 2)
+        assertEquals(original, gridDiagram)
+        assertEquals(original.longHashCode(), gridDiagram.longHashCode())
+    }
+
+    @Test
+    fun testCanonicalFormIsTranslationInvariant(){
+        val gridDiagram = GridDiagram.getGridDiagramFromResource("7_3")
+        val canonical = gridDiagram.canonicalForm()
+        for (horizontal in 0 until gridDiagram.size) {
+            for (vertical in 0 until gridDiagram.size step 3) {
+                val translated = gridDiagram.copy()
+                translated.translate(horizontal, vertical)
+                assertEquals(canonical, translated.canonicalForm())
+            }
+        }
+        assertEquals(0, canonical.savableGrid[0][0])
+    }
+
+    @Test
+    fun testWritheStaysCurrentAcrossTranslations(){
+        val gridDiagram = GridDiagram.getGridDiagramFromResource("8_19")
+        val random = java.util.Random(5)
+        for (step in 0 until 200) {
+            val translation = when (random.nextInt(3)) {
+                0 -> intArrayOf(random.nextInt(gridDiagram.size), random.nextInt(gridDiagram.size))
+                1 -> intArrayOf(random.nextInt(2) * 2 - 1, 0)
+                else -> intArrayOf(0, random.nextInt(2) * 2 - 1)
+            }
+            if (random.nextBoolean()) {
+                gridDiagram.translate(translation[0], translation[1])
+            } else {
+                val before = gridDiagram.copy()
+                val deltaWrithe = gridDiagram.deltaWrithe(GridDiagram.MOVETYPE_TRANSLATION, translation)
+                assertEquals(before, gridDiagram)
+                gridDiagram.translate(translation[0], translation[1], deltaWrithe)
+                assertEquals(before.writhe + deltaWrithe, gridDiagram.writhe)
+            }
+            assertEquals(gridDiagram.calcWrithe(), gridDiagram.writhe)
+        }
+    }
+
+    @Test
+    fun testCanonicalFormWithSymmetriesIdentifiesMirrorImages(){
+        val gridDiagram = GridDiagram.getGridDiagramFromResource("3_1")
+        val mirrored = gridDiagram.copy().mirror()
+        mirrored.translate(2, 1)
+        assertNotEquals(gridDiagram.canonicalForm(), mirrored.canonicalForm())
+        assertEquals(gridDiagram.canonicalForm(true), mirrored.canonicalForm(true))
+    }
+
+    @Test
+    fun testWriteAndReadRoundTrip(){
+        for (tree in listOf(false, true)) {
+            val gridDiagram = GridDiagram.getGridDiagramFromResource("5_2")
+            gridDiagram.setOrderStatisticStorage(tree)
+            gridDiagram.translate(2, 3)
+            gridDiagram.stabilize(1, 2, GridDiagram.INSERT_XO_COLUMN)
+            val bytes = ByteArrayOutputStream()
+            DataOutputStream(bytes).use { gridDiagram.write(it) }
+            val read = GridDiagram.read(DataInputStream(ByteArrayInputStream(bytes.toByteArray())))
+            assertEquals(gridDiagram, read)
+            assertEquals(gridDiagram.writhe, read.writhe)
+            assertEquals(tree, read.isOrderStatisticStorage)
+        }
+    }
+
     @Test(expected = IllegalArgumentException::class)
     fun testInvalidKnotName(){
         GridDiagram.getGridDiagramFromResource("not actually a link name")
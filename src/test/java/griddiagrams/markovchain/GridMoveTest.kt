@@ -1,6 +1,10 @@
 package griddiagrams.markovchain
 
 import griddiagrams.GridDiagram
+import markovchain.SplitMixRandom
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
 import org.junit.Test
 import java.lang.IllegalArgumentException
 import java.lang.Integer.max
@@ -10,8 +14,8 @@ class GridMoveTest{
     @Test(expected = IllegalArgumentException::class)
     fun invalidMoveTypeThrowsException(){
         val gridDiagram = GridDiagram.getGridDiagramFromResource("3_1")
-        GridMove(gridDiagram, max(max(max(GridDiagram.MOVETYPE_COMMUTATION, GridDiagram.MOVETYPE_DESTABILIZATION),
-                GridDiagram.MOVETYPE_NONE), GridDiagram.MOVETYPE_STABILIZATION)+1, 1, 0)
+        GridMove(gridDiagram, max(max(max(max(GridDiagram.MOVETYPE_COMMUTATION, GridDiagram.MOVETYPE_DESTABILIZATION),
+                GridDiagram.MOVETYPE_NONE), GridDiagram.MOVETYPE_STABILIZATION), GridDiagram.MOVETYPE_TRANSLATION)+1, 1, 0)
     }
 
     @Test(expected = IllegalArgumentException::class)
@@ -57,6 +61,28 @@ class GridMoveTest{
         GridMove(gridDiagram, GridDiagram.MOVETYPE_STABILIZATION, 0, gridDiagram.size+1)
     }
 
+    @Test
+    fun reusedMovesMatchNewMoves(){
+        val reusingSelector = GridMoveSelector(0.1, true)
+        val newSelector = GridMoveSelector(0.1)
+        val reusingRandom = SplitMixRandom(6)
+        val newRandom = SplitMixRandom(6)
+        val reusingGrid = GridDiagram.getGridDiagramFromResource("5_2")
+        val newGrid = GridDiagram.getGridDiagramFromResource("5_2")
+        val firstMove = reusingSelector.getRandomMove(reusingGrid, reusingRandom)
+        newSelector.getRandomMove(newGrid, newRandom)
+        repeat(10000) {
+            val reusedMove = reusingSelector.getRandomMove(reusingGrid, reusingRandom)
+            val newMove = newSelector.getRandomMove(newGrid, newRandom)
+            assertSame(firstMove, reusedMove)
+            assertEquals(newMove.moveType, reusedMove.moveType)
+            assertArrayEquals(newMove.moveArguments, reusedMove.moveArguments)
+            reusedMove.perform()
+            newMove.perform()
+            assertEquals(newGrid, reusingGrid)
+        }
+    }
+
 
 
 
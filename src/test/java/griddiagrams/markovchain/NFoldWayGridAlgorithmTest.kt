@@ -0,0 +1,38 @@
+package griddiagrams.markovchain
+
+import griddiagrams.GridDiagram
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class NFoldWayGridAlgorithmTest{
+
+    @Test
+    fun everyStepChangesTheGrid(){
+        val algorithm = NFoldWayGridAlgorithm(0.3, 0.1)
+        var gridDiagram = GridDiagram.getGridDiagramFromResource("4_1")
+        for (step in 0 until 2000) {
+            val before = gridDiagram.copy()
+            gridDiagram = algorithm.step(gridDiagram)
+            assertNotEquals(before, gridDiagram)
+            assertTrue(gridDiagram.isRowMatchColumns)
+            assertTrue(algorithm.lastResidenceTime >= 1.0)
+        }
+    }
+
+    @Test
+    fun sampleJumpsRecordsAWeightPerSample(){
+        val algorithm = NFoldWayGridAlgorithm(0.2)
+        val residenceTimes = DoubleArray(100)
+        val samples = algorithm.sampleJumps(GridDiagram.getGridDiagramFromResource("3_1"), residenceTimes.size, residenceTimes)
+        assertEquals(residenceTimes.size, samples.size)
+        assertTrue(residenceTimes.all { it >= 1.0 })
+    }
+
+    @Test
+    fun runningNoStepsLeavesTheGridAlone(){
+        val gridDiagram = GridDiagram.getGridDiagramFromResource("3_1")
+        assertEquals(GridDiagram.getGridDiagramFromResource("3_1"), NFoldWayGridAlgorithm(0.2).run(gridDiagram, 0))
+    }
+}
@@ -0,0 +1,30 @@
+package griddiagrams.markovchain.canonicalalgorithm
+
+import griddiagrams.GridDiagram
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class CanonicalGridAlgorithmTest{
+
+    @Test
+    fun specializedRunTakesTheSameStepsAsGenericSteps(){
+        for (translationProbability in listOf(0.0, 0.1)) {
+            for (z in listOf(0.05, 0.2, 1.0)) {
+                val fast = CanonicalGridAlgorithm(z, translationProbability)
+                fast.setSeed(11)
+                // Subclasses fall back to the generic run, which takes one step at a time through GridMove
+                val generic = object : CanonicalGridAlgorithm(z, translationProbability) {}
+                generic.setSeed(11)
+                var fastGrid = GridDiagram.getGridDiagramFromResource("5_2")
+                var genericGrid = GridDiagram.getGridDiagramFromResource("5_2")
+                repeat(50) {
+                    fastGrid = fast.run(fastGrid, 1000)
+                    genericGrid = generic.run(genericGrid, 1000)
+                    assertEquals(genericGrid, fastGrid)
+                }
+                assertEquals(generic.stepsTaken, fast.stepsTaken)
+                assertEquals(generic.movesAccepted, fast.movesAccepted)
+            }
+        }
+    }
+}
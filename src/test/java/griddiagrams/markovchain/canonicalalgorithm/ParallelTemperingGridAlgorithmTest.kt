@@ -0,0 +1,37 @@
+package griddiagrams.markovchain.canonicalalgorithm
+
+import griddiagrams.GridDiagram
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class ParallelTemperingGridAlgorithmTest{
+
+    private fun samplesWithThreads(threads: Int): Pair<List<Any>, DoubleArray> {
+        val algorithm = ParallelTemperingGridAlgorithm(doubleArrayOf(0.1, 0.15, 0.2), threads)
+        algorithm.setSeed(3)
+        algorithm.initialize(GridDiagram.getGridDiagramFromResource("3_1"))
+        val samples = algorithm.sample(1, 2, 100, 20)
+        algorithm.shutdown()
+        return Pair(samples, algorithm.swapRates)
+    }
+
+    @Test
+    fun resultsDoNotDependOnTheNumberOfThreads(){
+        val serial = samplesWithThreads(1)
+        val parallel = samplesWithThreads(3)
+        assertEquals(serial.first, parallel.first)
+        assertEquals(serial.second.toList(), parallel.second.toList())
+        assertEquals(2, parallel.second.size)
+        assertTrue(parallel.second.all { it in 0.0..1.0 })
+    }
+
+    @Test
+    fun equalZValuesAlwaysSwap(){
+        val algorithm = ParallelTemperingGridAlgorithm(doubleArrayOf(0.2, 0.2), 2)
+        algorithm.initialize(GridDiagram.getGridDiagramFromResource("3_1"))
+        algorithm.run(10, 50)
+        algorithm.shutdown()
+        assertEquals(1.0, algorithm.swapRates[0], 0.0)
+    }
+}
@@ -0,0 +1,39 @@
+package markovchain
+
+import griddiagrams.GridDiagram
+import griddiagrams.markovchain.canonicalalgorithm.CanonicalGridAlgorithm
+import markovchain.wanglandau.WangLandauMarkovChain
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.util.function.Supplier
+
+class ChainFarmTest{
+
+    private fun sampleWithThreads(threads: Int): List<ChainFarm.ChainResult<List<Any>>> {
+        val farm = ChainFarm(Supplier { CanonicalGridAlgorithm(0.2) }, threads)
+        farm.setSeed(11)
+        return farm.run(4) { algorithm -> algorithm.sample(GridDiagram.getGridDiagramFromResource("3_1"), 50, 10) }
+    }
+
+    @Test
+    fun resultsDoNotDependOnTheNumberOfThreads(){
+        val serial = sampleWithThreads(1)
+        val parallel = sampleWithThreads(4)
+        assertEquals(ChainFarm.mergeSamples(serial), ChainFarm.mergeSamples(parallel))
+        assertEquals(40, ChainFarm.mergeSamples(parallel).size)
+        for (result in parallel) {
+            assertEquals(500L, result.stepsTaken)
+            assertEquals(result.movesAccepted, serial[result.chainIndex].movesAccepted)
+        }
+    }
+
+    @Test
+    fun mergedLogWeightsIgnoreConstantOffsets(){
+        val first = hashMapOf("a" to 0.0, "b" to 1.0)
+        val second = hashMapOf("a" to 5.0, "b" to 6.0, "c" to 9.0)
+        val merged = WangLandauMarkovChain.mergeLogWeights(listOf(first, second))
+        assertEquals(0.0, merged["a"]!!, 1e-12)
+        assertEquals(1.0, merged["b"]!!, 1e-12)
+        assertEquals(4.0, merged["c"]!!, 1e-12)
+    }
+}
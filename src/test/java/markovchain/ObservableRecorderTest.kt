@@ -0,0 +1,48 @@
+package markovchain
+
+import griddiagrams.GridDiagram
+import griddiagrams.markovchain.GridObservables
+import griddiagrams.markovchain.canonicalalgorithm.CanonicalGridAlgorithm
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.io.StringWriter
+
+class ObservableRecorderTest{
+
+    @Test
+    fun recordsTheSameValuesAsTheSampledGrids(){
+        val listAlgorithm = CanonicalGridAlgorithm(0.2)
+        listAlgorithm.setSeed(8)
+        val samples = listAlgorithm.sample(GridDiagram.getGridDiagramFromResource("3_1"), 100, 2000).map { it as GridDiagram }
+
+        val recordingAlgorithm = CanonicalGridAlgorithm(0.2)
+        recordingAlgorithm.setSeed(8)
+        val recorder = ObservableRecorder<GridDiagram>()
+                .addIntObservable("size", GridObservables.SIZE)
+                .addIntObservable("writhe", GridObservables.WRITHE)
+                .addDoubleObservable("half size") { it.size / 2.0 }
+        recordingAlgorithm.sampleObservables(GridDiagram.getGridDiagramFromResource("3_1"), 100, 2000, recorder)
+
+        assertEquals(2000, recorder.size())
+        assertArrayEquals(samples.map { it.size }.toIntArray(), recorder.getIntColumn("size"))
+        assertArrayEquals(samples.map { it.writhe }.toIntArray(), recorder.getIntColumn("writhe"))
+        assertArrayEquals(samples.map { it.size / 2.0 }.toDoubleArray(), recorder.getDoubleColumn("half size"), 0.0)
+    }
+
+    @Test
+    fun writesRowsInChunks(){
+        val out = StringWriter()
+        val recorder = ObservableRecorder<Int>(out, 2)
+                .addIntObservable("x") { it }
+                .addLongObservable("square") { it.toLong() * it }
+        recorder.record(1)
+        assertEquals("", out.toString())
+        recorder.record(2)
+        assertEquals(0, recorder.size())
+        recorder.record(3)
+        recorder.close()
+        assertEquals("x\tsquare\n1\t1\n2\t4\n3\t9\n", out.toString())
+        assertEquals(3L, recorder.getRowsRecorded())
+    }
+}
@@ -0,0 +1,29 @@
+package markovchain
+
+import griddiagrams.GridDiagram
+import griddiagrams.markovchain.GridObservables
+import griddiagrams.markovchain.canonicalalgorithm.CanonicalGridAlgorithm
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class PilotRunTest{
+
+    @Test
+    fun picksAWholeNumberOfIntervalsCoveringTwiceTheAutocorrelationTime(){
+        val algorithm = CanonicalGridAlgorithm(0.2)
+        algorithm.setSeed(5)
+        val pilot = PilotRun<GridDiagram>()
+                .setInterval(10)
+                .addObservable("size") { GridObservables.SIZE.applyAsInt(it).toDouble() }
+                .addObservable("writhe") { GridObservables.WRITHE.applyAsInt(it).toDouble() }
+        pilot.run(algorithm, GridDiagram.getGridDiagramFromResource("3_1"))
+
+        assertTrue(pilot.isReliable)
+        assertEquals(algorithm.stepsTaken, pilot.burnIn)
+        assertTrue(pilot.burnIn >= 50 * pilot.autocorrelationTime)
+        assertEquals(0, pilot.sampleFrequency % 10)
+        assertTrue(pilot.sampleFrequency >= 2 * pilot.autocorrelationTime)
+        assertTrue(pilot.sampleFrequency < 2 * pilot.autocorrelationTime + 10)
+    }
+}
@@ -0,0 +1,37 @@
+package markovchain
+
+import griddiagrams.GridDiagram
+import griddiagrams.markovchain.canonicalalgorithm.CanonicalGridAlgorithm
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.io.PrintStream
+
+class SamplePrinterTest{
+
+    @Test
+    fun printsTheSameAsTheSampleList(){
+        val listAlgorithm = CanonicalGridAlgorithm(0.2)
+        listAlgorithm.setSeed(5)
+        val samples = listAlgorithm.sample(GridDiagram.getGridDiagramFromResource("3_1"), 100, 20)
+
+        val streamingAlgorithm = CanonicalGridAlgorithm(0.2)
+        streamingAlgorithm.setSeed(5)
+        val bytes = ByteArrayOutputStream()
+        val out = PrintStream(bytes, true)
+        SamplePrinter(out).use { printer ->
+            streamingAlgorithm.sample(GridDiagram.getGridDiagramFromResource("3_1"), 100, 20, printer)
+        }
+        out.flush()
+
+        assertEquals(samples.toString() + System.lineSeparator(), bytes.toString())
+    }
+
+    @Test
+    fun printsAnEmptyListWhenThereAreNoSamples(){
+        val bytes = ByteArrayOutputStream()
+        val out = PrintStream(bytes, true)
+        SamplePrinter(out).close()
+        assertEquals("[]" + System.lineSeparator(), bytes.toString())
+    }
+}
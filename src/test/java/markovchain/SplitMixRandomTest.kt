@@ -0,0 +1,47 @@
+package markovchain
+
+import griddiagrams.GridDiagram
+import griddiagrams.markovchain.canonicalalgorithm.CanonicalGridAlgorithm
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class SplitMixRandomTest{
+
+    @Test
+    fun nextIntStaysInRange(){
+        val random = SplitMixRandom(0)
+        for (bound in intArrayOf(1, 2, 3, 7, 64, 1000, Int.MAX_VALUE)) {
+            for (i in 0 until 1000) {
+                val value = random.nextInt(bound)
+                assertTrue(value in 0 until bound)
+            }
+        }
+        for (i in 0 until 1000) {
+            val value = random.nextDouble()
+            assertTrue(value >= 0.0 && value < 1.0)
+        }
+    }
+
+    @Test
+    fun restoringTheStateRepeatsTheSequence(){
+        val random = SplitMixRandom(42)
+        random.nextLong()
+        val state = random.state
+        val first = LongArray(10) { random.nextLong() }
+        random.state = state
+        assertEquals(first.toList(), LongArray(10) { random.nextLong() }.toList())
+        assertNotEquals(random.nextLong(), random.split().nextLong())
+    }
+
+    @Test
+    fun seededChainsAreReproducible(){
+        val samples = (0 until 2).map {
+            val algorithm = CanonicalGridAlgorithm(0.2)
+            algorithm.setSeed(7)
+            algorithm.sample(GridDiagram.getGridDiagramFromResource("3_1"), 100, 20)
+        }
+        assertEquals(samples[0], samples[1])
+    }
+}
@@ -0,0 +1,40 @@
+package markovchain.statistics
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.util.Random
+
+class AutocorrelationEstimatorTest{
+
+    @Test
+    fun independentValuesHaveHalfAStepAutocorrelationTime(){
+        val random = Random(3)
+        val estimator = AutocorrelationEstimator()
+        repeat(1 shl 16) { estimator.add(random.nextGaussian()) }
+        assertEquals(0.5, estimator.autocorrelationTime, 0.1)
+        assertEquals((1 shl 16).toLong(), estimator.count)
+    }
+
+    @Test
+    fun matchesTheAutocorrelationTimeOfAnAutoregressiveProcess(){
+        // x_t = phi x_(t-1) + noise has rho(t) = phi^t, so tau = 1/2 + sum_t phi^t = (1 + phi) / (2 (1 - phi))
+        val phi = 0.8
+        val random = Random(4)
+        val estimator = AutocorrelationEstimator()
+        var x = 0.0
+        repeat(1 shl 18) {
+            x = phi * x + random.nextGaussian()
+            estimator.add(x)
+        }
+        val tau = (1 + phi) / (2 * (1 - phi))
+        assertEquals(tau, estimator.autocorrelationTime, 0.15 * tau)
+        assertEquals(estimator.count / (2 * estimator.autocorrelationTime), estimator.effectiveSampleSize, 1e-9)
+    }
+
+    @Test
+    fun constantValuesGiveTheMinimumEstimate(){
+        val estimator = AutocorrelationEstimator()
+        repeat(1000) { estimator.add(7.0) }
+        assertEquals(0.5, estimator.autocorrelationTime, 0.0)
+    }
+}
@@ -0,0 +1,41 @@
+package markovchain.statistics
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class IntHistogramTest{
+
+    @Test
+    fun countsValuesOnBothSidesOfTheFirstOne(){
+        val histogram = IntHistogram()
+        val values = listOf(5, 3, 5, -40, 100, 5, 3, 0)
+        values.forEach { histogram.add(it) }
+        assertEquals(values.groupingBy { it }.eachCount().mapValues { it.value.toLong() }.toSortedMap(), histogram.toMap())
+        assertEquals(values.size.toLong(), histogram.total)
+        assertEquals(-40, histogram.minValue)
+        assertEquals(100, histogram.maxValue)
+        assertEquals(0L, histogram.getCount(1000))
+    }
+
+    @Test
+    fun mergingAddsCounts(){
+        val first = IntHistogram()
+        val second = IntHistogram()
+        first.add(2)
+        first.add(4)
+        second.add(4)
+        second.add(-1)
+        first.merge(second)
+        assertEquals(sortedMapOf(-1 to 1L, 2 to 1L, 4 to 2L), first.toMap())
+    }
+
+    @Test
+    fun fixedBinHistogramCountsOutOfRangeValuesSeparately(){
+        val histogram = Histogram(0.0, 1.0, 4)
+        listOf(-0.5, 0.0, 0.3, 0.99, 1.0, 0.26).forEach { histogram.add(it) }
+        assertEquals(listOf(1L, 2L, 0L, 1L), histogram.counts.toList())
+        assertEquals(1L, histogram.underflow)
+        assertEquals(1L, histogram.overflow)
+        assertEquals(0.25, histogram.getBinLowerBound(1), 0.0)
+    }
+}
@@ -0,0 +1,58 @@
+package markovchain.statistics
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.util.Random
+
+class RunningStatisticsTest{
+
+    private val values = Random(1).let { random -> DoubleArray(1000) { 1e6 + random.nextGaussian() } }
+    private val otherValues = Random(2).let { random -> DoubleArray(1000) { 3 * values[it] + random.nextGaussian() } }
+
+    @Test
+    fun matchesTwoPassStatistics(){
+        val statistics = RunningStatistics()
+        values.forEach { statistics.add(it) }
+        val mean = values.average()
+        val variance = values.sumByDouble { (it - mean) * (it - mean) } / (values.size - 1)
+        assertEquals(values.size.toLong(), statistics.count)
+        assertEquals(mean, statistics.mean, 1e-9)
+        assertEquals(variance, statistics.variance, 1e-9)
+        assertEquals(values.min()!!, statistics.min, 0.0)
+        assertEquals(values.max()!!, statistics.max, 0.0)
+    }
+
+    @Test
+    fun mergingIsTheSameAsAddingEverything(){
+        val all = RunningStatistics()
+        values.forEach { all.add(it) }
+        val first = RunningStatistics()
+        val second = RunningStatistics()
+        values.forEachIndexed { i, x -> if (i < 300) first.add(x) else second.add(x) }
+        first.merge(second)
+        first.merge(RunningStatistics())
+        assertEquals(all.count, first.count)
+        assertEquals(all.mean, first.mean, 1e-9)
+        assertEquals(all.variance, first.variance, 1e-9)
+        assertEquals(all.min, first.min, 0.0)
+        assertEquals(all.max, first.max, 0.0)
+    }
+
+    @Test
+    fun covarianceMatchesTwoPassCovariance(){
+        val covariance = RunningCovariance()
+        val first = RunningCovariance()
+        val second = RunningCovariance()
+        for (i in values.indices) {
+            covariance.add(values[i], otherValues[i])
+            (if (i % 3 == 0) first else second).add(values[i], otherValues[i])
+        }
+        first.merge(second)
+        val meanX = values.average()
+        val meanY = otherValues.average()
+        val expected = values.indices.sumByDouble { (values[it] - meanX) * (otherValues[it] - meanY) } / (values.size - 1)
+        assertEquals(expected, covariance.covariance, 1e-6)
+        assertEquals(expected, first.covariance, 1e-6)
+        assertEquals(1.0, covariance.correlation, 0.1)
+    }
+}
@@ -0,0 +1,47 @@
+package markovchain.wanglandau
+
+import griddiagrams.GridDiagram
+import griddiagrams.markovchain.GridMove
+import griddiagrams.markovchain.wanglandau.GridDiagramWangLandau
+import griddiagrams.markovchain.wanglandau.SizeEnergy
+import markovchain.wanglandau.schedule.StagedSchedule
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.function.Supplier
+
+class ParallelWangLandauTest{
+
+    @Test
+    fun walkersTrainSharedWeightsForEverySize(){
+        val training = ParallelWangLandau<GridDiagram, GridMove, SizeEnergy, GridDiagramWangLandau<SizeEnergy>>(Supplier {
+            val algorithm = GridDiagramWangLandau(SizeEnergy.SizeEnergyFactory(), 6)
+            algorithm.setMinCount(100)
+            algorithm
+        }, 3)
+        training.setSeed(1)
+        training.setCheckInterval(5)
+        val logWeights = training.train(Supplier { GridDiagram(intArrayOf(0, 1), intArrayOf(1, 0)) }, 10, StagedSchedule(1.0, 0.5, 0.1))
+        assertEquals(5, logWeights.size)// Sizes 2 to 6
+        assertEquals(3, training.walkerResults.size)
+        assertTrue(training.walkerResults.all { it.stepsTaken > 0 })
+    }
+
+    @Test
+    fun buffersAddEveryUpdate(){
+        val shared = SharedWangLandauWeights<SizeEnergy>()
+        val factory = SizeEnergy.SizeEnergyFactory()
+        val small = factory.getEnergyFromState(GridDiagram(intArrayOf(0, 1), intArrayOf(1, 0)))
+        val threads = (1..4).map {
+            Thread {
+                val buffer = shared.newBuffer()
+                repeat(10000) { buffer.update(small, 0.5) }
+                buffer.flush()
+            }
+        }
+        threads.forEach { it.start() }
+        threads.forEach { it.join() }
+        assertEquals(40000L, shared.updates)
+        assertEquals(20000.0, shared.getLogWeight(small), 0.0)
+    }
+}
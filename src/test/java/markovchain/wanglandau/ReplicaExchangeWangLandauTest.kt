@@ -0,0 +1,57 @@
+package markovchain.wanglandau
+
+import griddiagrams.GridDiagram
+import griddiagrams.markovchain.GridMove
+import griddiagrams.markovchain.wanglandau.GridDiagramWangLandau
+import griddiagrams.markovchain.wanglandau.SizeEnergy
+import markovchain.wanglandau.schedule.StagedSchedule
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.function.Supplier
+
+class ReplicaExchangeWangLandauTest{
+
+    @Test
+    fun windowsCoverTheRangeAndOverlap(){
+        val windows = ReplicaExchangeWangLandau.overlappingWindows(4, 60, 8, 0.75)
+        assertEquals(8, windows.size)
+        assertEquals(4, windows.first()[0])
+        assertEquals(60, windows.last()[1])
+        for (i in 1 until windows.size) {
+            assertTrue(windows[i][0] > windows[i - 1][0])
+            assertTrue(windows[i - 1][1] > windows[i][0])
+        }
+        assertArrayEquals(arrayOf(intArrayOf(2, 9)), ReplicaExchangeWangLandau.overlappingWindows(2, 9, 1, 0.5))
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun tooManyWindowsDoNotOverlap(){
+        ReplicaExchangeWangLandau.overlappingWindows(0, 10, 10, 0.0)
+    }
+
+    @Test
+    fun stitchingShiftsWindowsToAgreeOnSharedEnergies(){
+        val stitched = ReplicaExchangeWangLandau.stitchLogWeights(listOf(
+                mapOf(0 to 0.0, 1 to 1.0, 2 to 2.0),
+                mapOf(1 to 10.0, 2 to 11.0, 3 to 12.0),
+                mapOf(3 to -5.0, 4 to -4.0)))
+        assertEquals(mapOf(0 to 0.0, 1 to 1.0, 2 to 2.0, 3 to 3.0, 4 to 4.0), stitched)
+    }
+
+    @Test
+    fun windowsTrainTheWholeRange(){
+        val training = ReplicaExchangeWangLandau<GridDiagram, GridMove, SizeEnergy, GridDiagramWangLandau<SizeEnergy>>(
+                ReplicaExchangeWangLandau.overlappingWindows(2, 8, 2, 0.5).map { (lower, upper) ->
+                    val algorithm = GridDiagramWangLandau(SizeEnergy.SizeEnergyFactory(), lower, upper)
+                    algorithm.setMinCount(100)
+                    algorithm
+                }, 2)
+        training.setSeed(1)
+        training.setExchangeInterval(10)
+        val logWeights = training.train(Supplier { GridDiagram(intArrayOf(0, 1), intArrayOf(1, 0)) }, 10, Supplier { StagedSchedule(1.0, 0.5, 0.1) })
+        assertEquals(7, logWeights.size)// Sizes 2 to 8
+        assertTrue(training.exchangeRates.all { it > 0 })
+    }
+}
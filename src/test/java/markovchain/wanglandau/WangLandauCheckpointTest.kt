@@ -0,0 +1,62 @@
+package markovchain.wanglandau
+
+import griddiagrams.GridDiagram
+import griddiagrams.markovchain.wanglandau.GridDiagramWangLandau
+import griddiagrams.markovchain.wanglandau.SizeEnergy
+import markovchain.wanglandau.schedule.StagedSchedule
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.File
+
+class WangLandauCheckpointTest{
+
+    /**
+     * A staged schedule that throws once it has been advanced a number of times, as if training had been killed.
+     */
+    private class AbortingSchedule(private var advancesLeft: Int) : StagedSchedule(1.0, 0.5, 0.1) {
+        override fun advance(histogramFlat: Boolean, energiesFound: Int): Boolean {
+            if (advancesLeft-- == 0) {
+                throw IllegalStateException("Aborted")
+            }
+            return super.advance(histogramFlat, energiesFound)
+        }
+    }
+
+    private fun createAlgorithm(checkpoint: File?): GridDiagramWangLandau<SizeEnergy> {
+        val algorithm = GridDiagramWangLandau(SizeEnergy.SizeEnergyFactory(), 6)
+        algorithm.setMinCount(100)
+        algorithm.setOrderStatisticStorage(true)
+        algorithm.setSeed(7)
+        algorithm.setCheckpoint(checkpoint, 0)
+        return algorithm
+    }
+
+    private fun createGridDiagram(): GridDiagram {
+        val gridDiagram = GridDiagram(intArrayOf(0, 1), intArrayOf(1, 0))
+        gridDiagram.setOrderStatisticStorage(true)
+        return gridDiagram
+    }
+
+    @Test
+    fun resumedTrainingMatchesUninterruptedTraining(){
+        val uninterrupted = createAlgorithm(null)
+        val expected = uninterrupted.train(createGridDiagram(), 10, StagedSchedule(1.0, 0.5, 0.1))
+
+        val checkpoint = File.createTempFile("wang-landau", ".checkpoint")
+        checkpoint.deleteOnExit()
+        val aborted = createAlgorithm(checkpoint)
+        var abortedEarly = false
+        try {
+            aborted.train(createGridDiagram(), 10, AbortingSchedule(1000))
+        } catch (e: IllegalStateException) {
+            abortedEarly = true
+        }
+        assertTrue(abortedEarly)
+
+        val resumed = createAlgorithm(checkpoint)
+        assertEquals(expected, resumed.resumeTraining())
+        assertEquals(uninterrupted.stepsTaken, resumed.stepsTaken)
+        checkpoint.delete()
+    }
+}
@@ -0,0 +1,131 @@
+package markovchain.wanglandau
+
+import markovchain.MarkovMove
+import markovchain.wanglandau.energy.WangLandauEnergy
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.DataOutput
+import java.util.Random
+
+class WangLandauWeightsTest{
+
+    private data class PairEnergy(val first: Int, val second: Int, val integer: Boolean = true) : WangLandauEnergy<Any, MarkovMove<Any>, PairEnergy>() {
+        override fun copy() = this
+        override fun getNextEnergyFromMove(move: MarkovMove<Any>) = this
+        override fun write(out: DataOutput) {}
+        override fun getDimension() = if (integer) 2 else 0
+        override fun getCoordinate(index: Int) = if (index == 0) first else second
+    }
+
+    @Test
+    fun denseWeightsMatchHashedWeights(){
+        val random = Random(1)
+        val dense = WangLandauWeights<PairEnergy>()
+        val hashed = WangLandauWeights<PairEnergy>()
+        repeat(10000) {
+            val first = random.nextInt(60) - 30
+            val second = random.nextInt(9) * random.nextInt(9) - 20
+            val factor = random.nextDouble()
+            dense.update(PairEnergy(first, second), factor)
+            hashed.update(PairEnergy(first, second, false), factor)
+        }
+        assertTrue(dense.isDense)
+        assertFalse(hashed.isDense)
+        assertEquals(hashed.logWeightMap.mapKeys { it.key.copy(integer = true) }, dense.logWeightMap)
+        assertEquals(hashed.histogramMap.mapKeys { it.key.copy(integer = true) }, dense.histogramMap)
+        assertEquals(hashed.minCount, dense.minCount)
+    }
+
+    @Test
+    fun growsInBothDirections(){
+        val weights = WangLandauWeights<PairEnergy>()
+        weights.update(PairEnergy(0, 0), 1.0)
+        weights.update(PairEnergy(-5, 3), 2.0)
+        weights.update(PairEnergy(7, -2), 3.0)
+        weights.update(PairEnergy(-5, 3), 2.0)
+        assertEquals(1.0, weights.getLogWeight(PairEnergy(0, 0)), 0.0)
+        assertEquals(4.0, weights.getLogWeight(PairEnergy(-5, 3)), 0.0)
+        assertEquals(3.0, weights.getLogWeight(PairEnergy(7, -2)), 0.0)
+        assertEquals(0.0, weights.getLogWeight(PairEnergy(100, 100)), 0.0)
+        assertEquals(2L, weights.getCount(PairEnergy(-5, 3)))
+        assertEquals(1L, weights.minCount)
+    }
+
+    @Test
+    fun fallsBackToHashMapsForWidelySpreadEnergies(){
+        val weights = WangLandauWeights<PairEnergy>()
+        weights.update(PairEnergy(0, 0), 1.0)
+        weights.update(PairEnergy(1 shl 20, 1 shl 10), 2.0)
+        assertFalse(weights.isDense)
+        assertEquals(mapOf(PairEnergy(0, 0) to 1.0, PairEnergy(1 shl 20, 1 shl 10) to 2.0), weights.logWeightMap)
+    }
+
+    @Test
+    fun coordinatesFindStoredEnergies(){
+        val weights = WangLandauWeights<PairEnergy>()
+        val stored = PairEnergy(2, -3)
+        weights.update(stored, 1.5)
+        weights.update(PairEnergy(-4, 6), 1.0)// Grows the box, which moves the stored energy
+        assertEquals(1.5, weights.getLogWeight(intArrayOf(2, -3)), 0.0)
+        assertSame(stored, weights.getEnergy(intArrayOf(2, -3)))
+        assertEquals(0.0, weights.getLogWeight(intArrayOf(0, 0)), 0.0)
+        assertNull(weights.getEnergy(intArrayOf(0, 0)))
+        assertNull(weights.getEnergy(intArrayOf(100, 0)))
+    }
+
+    @Test
+    fun settingLogWeightsKeepsTheHistogram(){
+        val weights = WangLandauWeights<PairEnergy>()
+        weights.update(PairEnergy(1, 1), 1.0)
+        weights.setLogWeights(mapOf(PairEnergy(2, 2) to 5.0))
+        assertEquals(0.0, weights.getLogWeight(PairEnergy(1, 1)), 0.0)
+        assertEquals(5.0, weights.getLogWeight(PairEnergy(2, 2)), 0.0)
+        assertEquals(mapOf(PairEnergy(1, 1) to 1L), weights.histogramMap)
+    }
+
+    @Test
+    fun histogramStatisticsMatchTheCounts(){
+        val random = Random(2)
+        val weights = WangLandauWeights<PairEnergy>()
+        weights.countThreshold = 50
+        val counts = HashMap<PairEnergy, Long>()
+        repeat(20000) { i ->
+            val energy = PairEnergy(random.nextInt(random.nextInt(40) + 1), random.nextInt(3))
+            weights.update(energy, 0.1)
+            counts.merge(energy, 1L, Long::plus)
+            if (i % 97 == 0) {
+                assertEquals(counts.values.min(), weights.minCount)
+                assertEquals(counts.values.count { it < 50 }, weights.binsBelowThreshold)
+                assertEquals(counts.values.sum(), weights.totalCount)
+                assertEquals(counts.values.average(), weights.meanCount, 1e-9)
+            }
+        }
+        weights.setCount(PairEnergy(0, 0), 3)
+        counts[PairEnergy(0, 0)] = 3
+        assertEquals(counts.values.min(), weights.minCount)
+        assertEquals(counts.values.count { it < 50 }, weights.binsBelowThreshold)
+    }
+
+    @Test
+    fun resetEnergiesStayInTheHistogram(){
+        val weights = WangLandauWeights<PairEnergy>()
+        weights.countThreshold = 2
+        weights.update(PairEnergy(0, 0), 1.0)
+        weights.update(PairEnergy(1, 0), 1.0)
+        weights.update(PairEnergy(1, 0), 1.0)
+        weights.resetHistogram()
+        assertEquals(0L, weights.minCount)
+        assertEquals(2, weights.binCount)
+        assertEquals(2, weights.binsBelowThreshold)
+        weights.update(PairEnergy(1, 0), 1.0)
+        weights.update(PairEnergy(1, 0), 1.0)
+        assertEquals(0L, weights.minCount)
+        assertEquals(1, weights.binsBelowThreshold)
+        assertEquals(mapOf(PairEnergy(0, 0) to 0L, PairEnergy(1, 0) to 2L), weights.histogramMap)
+        assertEquals(3.0, weights.getLogWeight(PairEnergy(1, 0)) - weights.getLogWeight(PairEnergy(0, 0)), 0.0)
+    }
+}
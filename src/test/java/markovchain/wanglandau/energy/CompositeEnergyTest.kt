@@ -0,0 +1,32 @@
+package markovchain.wanglandau.energy
+
+import griddiagrams.GridDiagram
+import griddiagrams.markovchain.GridMove
+import griddiagrams.markovchain.GridMoveSelector
+import griddiagrams.markovchain.wanglandau.SizeEnergy
+import griddiagrams.markovchain.wanglandau.WritheEnergy
+import markovchain.SplitMixRandom
+import org.junit.Assert.assertArrayEquals
+import org.junit.Test
+
+class CompositeEnergyTest{
+
+    @Test
+    fun nextCoordinatesMatchTheNextEnergy(){
+        val factory = CompositeEnergy.CompositeEnergyFactory<GridDiagram, GridMove>(listOf(SizeEnergy.SizeEnergyFactory(), WritheEnergy.WritheEnergyFactory()))
+        val selector = GridMoveSelector(0.2, true)
+        val random = SplitMixRandom(3)
+        var gridDiagram = GridDiagram.getGridDiagramFromResource("5_2")
+        val coordinates = IntArray(2)
+        repeat(2000) {
+            val energy = factory.getEnergyFromState(gridDiagram)
+            val move = selector.getRandomMove(gridDiagram, random)
+            energy.getNextCoordinatesFromMove(move, coordinates, 0)
+            val next = energy.getNextEnergyFromMove(move)
+            assertArrayEquals(intArrayOf(next.getCoordinate(0), next.getCoordinate(1)), coordinates)
+            if (gridDiagram.size < 15 || move.moveType != GridDiagram.MOVETYPE_STABILIZATION) {
+                gridDiagram = move.perform()
+            }
+        }
+    }
+}
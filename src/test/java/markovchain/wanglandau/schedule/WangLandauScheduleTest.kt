@@ -0,0 +1,70 @@
+package markovchain.wanglandau.schedule
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+
+class WangLandauScheduleTest{
+
+    @Test
+    fun stagedScheduleReducesTheFactorWhenTheHistogramIsFlat(){
+        val schedule = StagedSchedule(1.0, 0.5, 0.2)
+        assertFalse(schedule.advance(false, 10))
+        assertEquals(1.0, schedule.logUpdateFactor, 0.0)
+        assertTrue(schedule.advance(true, 10))
+        assertEquals(0.5, schedule.logUpdateFactor, 0.0)
+        assertTrue(schedule.advance(true, 10))
+        assertFalse(schedule.isFinished)
+        assertTrue(schedule.advance(true, 10))
+        assertTrue(schedule.isFinished)
+        assertEquals(3, schedule.stage)
+    }
+
+    @Test
+    fun oneOverTScheduleSwitchesOnceTheFactorReachesOneOverT(){
+        val schedule = OneOverTSchedule(1.0, 0.5, 0.01)
+        repeat(9) { schedule.advance(false, 4) }
+        assertFalse(schedule.isOneOverT)
+        assertTrue(schedule.advance(true, 4))// 0.5 > 4/10
+        assertFalse(schedule.isOneOverT)
+        schedule.advance(true, 4)// 0.25 < 4/11
+        assertTrue(schedule.isOneOverT)
+        assertEquals(4.0 / 11, schedule.logUpdateFactor, 1e-12)
+        assertFalse(schedule.advance(true, 4))
+        assertEquals(4.0 / 12, schedule.logUpdateFactor, 1e-12)
+        repeat(400) { schedule.advance(false, 4) }
+        assertTrue(schedule.isFinished)
+    }
+
+    @Test
+    fun stochasticApproximationScheduleDecreasesAfterT0(){
+        val schedule = StochasticApproximationSchedule(2.0, 10, 0.5)
+        repeat(10) { assertFalse(schedule.advance(true, 5)) }
+        assertEquals(2.0, schedule.logUpdateFactor, 0.0)
+        repeat(10) { schedule.advance(false, 5) }
+        assertEquals(1.0, schedule.logUpdateFactor, 0.0)
+        repeat(20) { schedule.advance(false, 5) }
+        assertFalse(schedule.isFinished)
+        schedule.advance(false, 5)
+        assertTrue(schedule.isFinished)
+    }
+
+    @Test
+    fun schedulesSurviveACheckpoint(){
+        val schedules = listOf(ConstantSchedule(0.1), StagedSchedule(1.0, 0.5, 1e-8), OneOverTSchedule(1.0, 0.5, 1e-8), StochasticApproximationSchedule(1.0, 100, 1e-8))
+        for (schedule in schedules) {
+            repeat(7) { i -> schedule.advance(i % 3 == 0, 5) }
+            val bytes = ByteArrayOutputStream()
+            schedule.write(DataOutputStream(bytes))
+            val copy = WangLandauSchedule.read(DataInputStream(ByteArrayInputStream(bytes.toByteArray())))
+            assertEquals(schedule.toString(), copy.toString())
+            assertEquals(schedule.advance(true, 5), copy.advance(true, 5))
+            assertEquals(schedule.logUpdateFactor, copy.logUpdateFactor, 0.0)
+        }
+    }
+}